@@ -0,0 +1,68 @@
+package ru.taptima.phalyfusion.benchmark;
+
+import com.intellij.openapi.application.ReadAction;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.psi.PsiFile;
+import com.intellij.psi.PsiManager;
+import com.intellij.testFramework.EdtTestUtil;
+import com.intellij.testFramework.LightProjectDescriptor;
+import com.intellij.testFramework.fixtures.CodeInsightTestFixture;
+import com.intellij.testFramework.fixtures.IdeaTestFixtureFactory;
+import com.intellij.testFramework.fixtures.impl.LightTempDirTestFixtureImpl;
+import com.jetbrains.php.tools.quality.QualityToolAnnotatorInfo;
+import ru.taptima.phalyfusion.PhalyfusionValidationInspection;
+import ru.taptima.phalyfusion.configuration.PhalyfusionConfiguration;
+
+/**
+ * Headless IDE with a light project of generated PHP files, so benchmarks run the plugin code itself
+ */
+public class BenchmarkProject {
+    private final CodeInsightTestFixture myFixture;
+    private final VirtualFile[] myFiles;
+    private final String myBasePath;
+
+    private BenchmarkProject(CodeInsightTestFixture fixture, VirtualFile[] files, String basePath) {
+        myFixture = fixture;
+        myFiles = files;
+        myBasePath = basePath;
+    }
+
+    public static BenchmarkProject create(int filesCount, int linesPerFile) {
+        var builder = IdeaTestFixtureFactory.getFixtureFactory().createLightFixtureBuilder(LightProjectDescriptor.EMPTY_PROJECT_DESCRIPTOR);
+        var fixture = IdeaTestFixtureFactory.getFixtureFactory().createCodeInsightFixture(builder.getFixture(), new LightTempDirTestFixtureImpl(true));
+        var files = new VirtualFile[filesCount];
+        String content = CheckstyleReportGenerator.getFileContent(linesPerFile);
+        EdtTestUtil.runInEdtAndWait(() -> {
+            fixture.setUp();
+            for (int i = 0; i < filesCount; i++) {
+                files[i] = fixture.getTempDirFixture().createFile(CheckstyleReportGenerator.getRelativePath(i), content);
+            }
+        });
+
+        String firstPath = files[0].getPath();
+        String basePath = firstPath.substring(0, firstPath.length() - CheckstyleReportGenerator.getRelativePath(0).length() - 1);
+        return new BenchmarkProject(fixture, files, basePath);
+    }
+
+    public Project getProject() {
+        return myFixture.getProject();
+    }
+
+    public VirtualFile[] getFiles() {
+        return myFiles;
+    }
+
+    public String getBasePath() {
+        return myBasePath;
+    }
+
+    public QualityToolAnnotatorInfo<PhalyfusionValidationInspection> createAnnotatorInfo() {
+        PsiFile psiFile = ReadAction.compute(() -> PsiManager.getInstance(getProject()).findFile(myFiles[0]));
+        return new QualityToolAnnotatorInfo<>(psiFile, new PhalyfusionValidationInspection(), getProject(), new PhalyfusionConfiguration(), false);
+    }
+
+    public void dispose() {
+        EdtTestUtil.runInEdtAndWait(myFixture::tearDown);
+    }
+}
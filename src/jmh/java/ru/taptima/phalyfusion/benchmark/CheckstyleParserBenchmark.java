@@ -0,0 +1,64 @@
+package ru.taptima.phalyfusion.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import ru.taptima.phalyfusion.PhalyfusionMessageProcessor;
+import ru.taptima.phalyfusion.store.PhalyfusionMessagePool;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parsing of the tool output by PhalyfusionMessageProcessor running in a headless IDE: paths are resolved to project files,
+ * messages are deduplicated, limited per file, folded and kept as objects or as packed records of a batch run
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+@State(Scope.Benchmark)
+public class CheckstyleParserBenchmark {
+    private static final int FILES_COUNT = 10_000;
+
+    @Param({"1000", "100000", "1000000"})
+    public int errorsCount;
+
+    @Param({"UNIX", "WINDOWS_SEPARATORS"})
+    public CheckstyleReportGenerator.PathStyle pathStyle;
+
+    @Param({"false", "true"})
+    public boolean isPacked;
+
+    @Param({"0", "20"})
+    public int maxMessagesPerFile;
+
+    private BenchmarkProject myProject;
+    private String[] myLines;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        myProject = BenchmarkProject.create(FILES_COUNT, CheckstyleReportGenerator.getMaxLine(errorsCount, FILES_COUNT));
+        myLines = CheckstyleReportGenerator.generate(errorsCount, FILES_COUNT, myProject.getBasePath(), pathStyle, false);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        myLines = null;
+        myProject.dispose();
+    }
+
+    @Benchmark
+    public void parseReport(Blackhole blackhole) {
+        var processor = new PhalyfusionMessageProcessor(myProject.createAnnotatorInfo(), myProject.getFiles());
+        processor.setMaxMessagesPerFile(maxMessagesPerFile);
+        if (isPacked) {
+            processor.setMessagePool(new PhalyfusionMessagePool());
+        }
+
+        for (String line : myLines) {
+            processor.parseLine(line);
+        }
+        processor.done();
+        blackhole.consume(processor.getMessagesCount());
+    }
+}
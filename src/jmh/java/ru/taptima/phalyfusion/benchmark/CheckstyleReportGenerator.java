@@ -0,0 +1,93 @@
+package ru.taptima.phalyfusion.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Generates synthetic Phalyfusion "checkstyle" reports split in output lines
+ */
+public class CheckstyleReportGenerator {
+    // Messages 3 and 4 are the same issue reported by different analysers, they are folded when reported on the same line
+    private static final String[] MESSAGES = {
+            "phpstan: Undefined variable: $td",
+            "psalm: Argument 1 of Foo::bar expects &quot;string&quot;, int provided",
+            "phan: Call to undeclared method \\App\\Foo::baz()",
+            "phpstan: Undefined variable: $item",
+            "psalm: UndefinedVariable: Cannot find referenced variable $item",
+    };
+
+    public enum PathStyle {
+        UNIX,
+        WINDOWS_SEPARATORS
+    }
+
+    private CheckstyleReportGenerator() {
+    }
+
+    /**
+     * Path of the file relative to the project root
+     */
+    public static String getRelativePath(int fileIdx) {
+        return "src/Module" + (fileIdx % 100) + "/Service/Generated" + fileIdx + "Service.php";
+    }
+
+    public static int getMaxLine(int errorsCount, int filesCount) {
+        int reportedFiles = Math.max(1, Math.min(errorsCount, filesCount));
+        return errorsCount / reportedFiles + 1;
+    }
+
+    /**
+     * Content of a file with the given number of lines, so every reported line exists
+     */
+    public static String getFileContent(int linesCount) {
+        var content = new StringBuilder("<?php\n");
+        for (int i = 1; i < linesCount; i++) {
+            content.append("    $value").append(i).append(" = $this->compute($argument, ").append(i).append(");\n");
+        }
+        return content.toString();
+    }
+
+    /**
+     * @param basePath absolute path of the project root as it is known by the IDE
+     */
+    public static String[] generate(int errorsCount, int filesCount, String basePath, PathStyle pathStyle, boolean wrapNames) {
+        List<String> lines = new ArrayList<>();
+        lines.add("<?xml version=\"1.0\" encoding=\"UTF-8\"?>");
+        lines.add("<checkstyle>");
+
+        int reportedFiles = Math.min(errorsCount, filesCount);
+        int errorIdx = 0;
+        for (int fileIdx = 0; fileIdx < reportedFiles; fileIdx++) {
+            String name = getReportedPath(basePath, fileIdx, pathStyle);
+            if (wrapNames) {
+                int wrapAt = name.length() / 2;
+                lines.add("  <file name=\"" + name.substring(0, wrapAt));
+                lines.add(name.substring(wrapAt) + "\">");
+            } else {
+                lines.add("  <file name=\"" + name + "\">");
+            }
+
+            int fileErrors = errorsCount / reportedFiles + (fileIdx < errorsCount % reportedFiles ? 1 : 0);
+            for (int i = 0; i < fileErrors; i++, errorIdx++) {
+                // Every fifth message is reported on the line of the previous one
+                int line = 1 + i - (i % 5 == 4 ? 1 : 0);
+                String severity = errorIdx % 3 == 0 ? "warning" : "error";
+                lines.add("    <" + severity + " line=\"" + line + "\" column=\"" + (1 + i % 40) + "\" severity=\"" + severity
+                        + "\" message=\"" + MESSAGES[i % MESSAGES.length] + "\" />");
+            }
+
+            lines.add("  </file>");
+        }
+
+        lines.add("</checkstyle>");
+        return lines.toArray(String[]::new);
+    }
+
+    private static String getReportedPath(String basePath, int fileIdx, PathStyle pathStyle) {
+        String path = basePath + "/" + getRelativePath(fileIdx);
+        if (pathStyle == PathStyle.WINDOWS_SEPARATORS) {
+            return path.replace('/', '\\');
+        }
+        return path;
+    }
+}
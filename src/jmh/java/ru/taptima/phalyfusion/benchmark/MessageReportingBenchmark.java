@@ -0,0 +1,87 @@
+package ru.taptima.phalyfusion.benchmark;
+
+import com.intellij.codeInspection.CommonProblemDescriptor;
+import com.intellij.codeInspection.GlobalInspectionContext;
+import com.intellij.codeInspection.InspectionManager;
+import com.intellij.codeInspection.ProblemDescriptionsProcessor;
+import com.intellij.codeInspection.ex.InspectionManagerEx;
+import com.intellij.codeInspection.reference.RefEntity;
+import com.intellij.openapi.application.ReadAction;
+import com.jetbrains.php.tools.quality.QualityToolAnnotatorInfo;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import ru.taptima.phalyfusion.PhalyfusionGlobalInspection;
+import ru.taptima.phalyfusion.PhalyfusionMessageProcessor;
+import ru.taptima.phalyfusion.PhalyfusionValidationInspection;
+import ru.taptima.phalyfusion.store.PhalyfusionMessagePool;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reporting of parsed messages by PhalyfusionGlobalInspection.processMessages: ranges are computed from line tables,
+ * PSI of files is resolved and problem descriptors are created. Every invocation reports a freshly parsed processor,
+ * so line tables are built again as during a real run
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+@State(Scope.Benchmark)
+public class MessageReportingBenchmark {
+    private static final int FILES_COUNT = 10_000;
+
+    @Param({"1000", "100000", "1000000"})
+    public int errorsCount;
+
+    @Param({"false", "true"})
+    public boolean isPacked;
+
+    private BenchmarkProject myProject;
+    private String[] myLines;
+    private QualityToolAnnotatorInfo<PhalyfusionValidationInspection> myAnnotatorInfo;
+    private GlobalInspectionContext myGlobalContext;
+    private PhalyfusionMessageProcessor myProcessor;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        myProject = BenchmarkProject.create(FILES_COUNT, CheckstyleReportGenerator.getMaxLine(errorsCount, FILES_COUNT));
+        myLines = CheckstyleReportGenerator.generate(errorsCount, FILES_COUNT, myProject.getBasePath(),
+                CheckstyleReportGenerator.PathStyle.UNIX, false);
+        myAnnotatorInfo = myProject.createAnnotatorInfo();
+        myGlobalContext = ((InspectionManagerEx) InspectionManager.getInstance(myProject.getProject())).createNewGlobalContext();
+    }
+
+    @Setup(Level.Invocation)
+    public void parseReport() {
+        myProcessor = new PhalyfusionMessageProcessor(myAnnotatorInfo, myProject.getFiles());
+        if (isPacked) {
+            myProcessor.setMessagePool(new PhalyfusionMessagePool());
+        }
+        for (String line : myLines) {
+            myProcessor.parseLine(line);
+        }
+        myProcessor.done();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        myProcessor = null;
+        myLines = null;
+        myProject.dispose();
+    }
+
+    @Benchmark
+    public void processMessages(Blackhole blackhole) {
+        var problemsProcessor = new ProblemDescriptionsProcessor() {
+            @Override
+            public void addProblemElement(@Nullable RefEntity refEntity, @NotNull CommonProblemDescriptor... descriptors) {
+                blackhole.consume(descriptors);
+            }
+        };
+        ReadAction.run(() -> new PhalyfusionGlobalInspection().processMessages(myGlobalContext, myAnnotatorInfo, myProcessor,
+                null, null, problemsProcessor));
+    }
+}
@@ -0,0 +1,436 @@
+package ru.taptima.phalyfusion;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Incremental single pass parser of "checkstyle" report.
+ * Output of the tool may be fed in chunks of any size, tags are reported to the listener as soon as they are complete.
+ * Only the markup of the current tag is buffered, attributes are decoded on demand.
+ *
+ * Line breaks inside of the file name attribute are dropped, because long file names are wrapped by the tool
+ */
+public class CheckstyleStreamParser {
+    private static final int MAX_UNRECOGNIZED_OUTPUT = 4096;
+
+    public interface Listener {
+        void fileStarted(@NotNull Tag tag);
+
+        void fileFinished();
+
+        void messageFound(@NotNull Tag tag);
+    }
+
+    private final Listener myListener;
+    private final StringBuilder myMarkup = new StringBuilder();
+    private final StringBuilder myUnrecognizedOutput = new StringBuilder();
+    private final Tag myTag = new Tag(myMarkup);
+    private boolean isInMarkup = false;
+    private boolean isInDeclaration = false;
+    private boolean isRootFound = false;
+    private char myQuote = 0;
+    private long myCharsCount = 0;
+
+    public CheckstyleStreamParser(@NotNull Listener listener) {
+        myListener = listener;
+    }
+
+    public void feed(@NotNull CharSequence chunk) {
+        int length = chunk.length();
+        myCharsCount += length;
+
+        for (int i = 0; i < length; i++) {
+            char c = chunk.charAt(i);
+            if (!isInMarkup) {
+                if (c == '<') {
+                    isInMarkup = true;
+                    isInDeclaration = false;
+                    myQuote = 0;
+                    myMarkup.setLength(0);
+                    myMarkup.append(c);
+                } else {
+                    collectUnrecognized(c);
+                }
+                continue;
+            }
+
+            myMarkup.append(c);
+            if (myMarkup.length() == 2) {
+                isInDeclaration = c == '!' || c == '?';
+            }
+
+            if (isInDeclaration) {
+                // Comments may contain '>', all other declarations end with it
+                if (c == '>' && (!startsWith(myMarkup, "<!--") || endsWith(myMarkup, "-->"))) {
+                    isInMarkup = false;
+                }
+            } else if (myQuote != 0) {
+                if (c == myQuote) {
+                    myQuote = 0;
+                }
+            } else if (c == '"' || c == '\'') {
+                myQuote = c;
+            } else if (c == '>') {
+                isInMarkup = false;
+                processMarkup();
+            }
+        }
+    }
+
+    /**
+     * @return true if root "checkstyle" tag was found, i.e. output of the tool is a report
+     */
+    public boolean isRootFound() {
+        return isRootFound;
+    }
+
+    /**
+     * @return beginning of the text found out of tags, e.g. PHP errors
+     */
+    @NotNull
+    public String getUnrecognizedOutput() {
+        return myUnrecognizedOutput.toString().trim();
+    }
+
+    public long getCharsCount() {
+        return myCharsCount;
+    }
+
+    private void processMarkup() {
+        if (myMarkup.length() < 3) {
+            return;
+        }
+
+        if (myMarkup.charAt(1) == '/') {
+            myTag.parse(2);
+            if (myTag.nameEquals("file")) {
+                myListener.fileFinished();
+            }
+            return;
+        }
+
+        myTag.parse(1);
+        if (myTag.nameEquals("checkstyle")) {
+            isRootFound = true;
+        } else if (myTag.nameEquals("file")) {
+            myListener.fileStarted(myTag);
+            if (myTag.isEmptyElement()) {
+                myListener.fileFinished();
+            }
+        } else {
+            myListener.messageFound(myTag);
+        }
+    }
+
+    private void collectUnrecognized(char c) {
+        if (myUnrecognizedOutput.length() >= MAX_UNRECOGNIZED_OUTPUT) {
+            return;
+        }
+
+        if (myUnrecognizedOutput.length() > 0 || !Character.isWhitespace(c)) {
+            myUnrecognizedOutput.append(c);
+        }
+    }
+
+    private static boolean startsWith(@NotNull CharSequence text, @NotNull String prefix) {
+        if (text.length() < prefix.length()) {
+            return false;
+        }
+
+        for (int i = 0; i < prefix.length(); i++) {
+            if (text.charAt(i) != prefix.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean endsWith(@NotNull CharSequence text, @NotNull String suffix) {
+        int offset = text.length() - suffix.length();
+        if (offset < 0) {
+            return false;
+        }
+
+        for (int i = 0; i < suffix.length(); i++) {
+            if (text.charAt(offset + i) != suffix.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Flyweight view of the last parsed tag. It is valid only during the listener call
+     */
+    public static class Tag {
+        private static final int MAX_ATTRIBUTES = 16;
+
+        private final CharSequence myText;
+        private final int[] myAttributes = new int[MAX_ATTRIBUTES * 4];
+        private int myAttributesCount;
+        private int myNameStart;
+        private int myNameEnd;
+        private boolean isEmptyElement;
+
+        private Tag(@NotNull CharSequence text) {
+            myText = text;
+        }
+
+        private void parse(int nameStart) {
+            int end = myText.length() - 1;
+            isEmptyElement = end > 0 && myText.charAt(end - 1) == '/';
+            if (isEmptyElement) {
+                end--;
+            }
+
+            int i = nameStart;
+            while (i < end && !Character.isWhitespace(myText.charAt(i))) {
+                i++;
+            }
+            myNameStart = nameStart;
+            myNameEnd = i;
+
+            myAttributesCount = 0;
+            while (i < end) {
+                i = skipWhitespaces(i, end);
+                int attributeNameStart = i;
+                while (i < end && myText.charAt(i) != '=' && !Character.isWhitespace(myText.charAt(i))) {
+                    i++;
+                }
+                int attributeNameEnd = i;
+
+                i = skipWhitespaces(i, end);
+                if (i >= end || myText.charAt(i) != '=') {
+                    continue;
+                }
+
+                i = skipWhitespaces(i + 1, end);
+                if (i >= end) {
+                    break;
+                }
+
+                char quote = myText.charAt(i);
+                if (quote != '"' && quote != '\'') {
+                    continue;
+                }
+
+                int valueStart = ++i;
+                while (i < end && myText.charAt(i) != quote) {
+                    i++;
+                }
+
+                if (myAttributesCount < MAX_ATTRIBUTES) {
+                    int idx = myAttributesCount++ * 4;
+                    myAttributes[idx] = attributeNameStart;
+                    myAttributes[idx + 1] = attributeNameEnd;
+                    myAttributes[idx + 2] = valueStart;
+                    myAttributes[idx + 3] = i;
+                }
+                i++;
+            }
+        }
+
+        private int skipWhitespaces(int i, int end) {
+            while (i < end && Character.isWhitespace(myText.charAt(i))) {
+                i++;
+            }
+            return i;
+        }
+
+        public boolean nameEquals(@NotNull String name) {
+            return regionEquals(myNameStart, myNameEnd, name);
+        }
+
+        public boolean isEmptyElement() {
+            return isEmptyElement;
+        }
+
+        public boolean hasAttribute(@NotNull String name) {
+            return findAttribute(name) >= 0;
+        }
+
+        /**
+         * @return attribute value with line breaks replaced by spaces
+         */
+        @Nullable
+        public String getAttribute(@NotNull String name) {
+            int idx = findAttribute(name);
+            return idx < 0 ? null : decode(myAttributes[idx + 2], myAttributes[idx + 3], true);
+        }
+
+        /**
+         * @return attribute value with line breaks removed
+         */
+        @Nullable
+        public String getJoinedAttribute(@NotNull String name) {
+            int idx = findAttribute(name);
+            return idx < 0 ? null : decode(myAttributes[idx + 2], myAttributes[idx + 3], false);
+        }
+
+        /**
+         * Appends attribute value with line breaks removed without intermediate strings
+         *
+         * @return false if there is no such attribute
+         */
+        public boolean appendJoinedAttribute(@NotNull String name, @NotNull StringBuilder result) {
+            int idx = findAttribute(name);
+            if (idx < 0) {
+                return false;
+            }
+
+            decodeTo(myAttributes[idx + 2], myAttributes[idx + 3], false, result);
+            return true;
+        }
+
+        public int getIntAttribute(@NotNull String name, int defaultValue) {
+            int idx = findAttribute(name);
+            if (idx < 0) {
+                return defaultValue;
+            }
+
+            int start = skipWhitespaces(myAttributes[idx + 2], myAttributes[idx + 3]);
+            int end = myAttributes[idx + 3];
+            boolean isNegative = start < end && myText.charAt(start) == '-';
+            if (isNegative) {
+                start++;
+            }
+
+            if (start >= end) {
+                return defaultValue;
+            }
+
+            long value = 0;
+            for (int i = start; i < end; i++) {
+                char c = myText.charAt(i);
+                if (c < '0' || c > '9') {
+                    return Character.isWhitespace(c) && i > start ? (int) (isNegative ? -value : value) : defaultValue;
+                }
+
+                value = value * 10 + (c - '0');
+                if (value > Integer.MAX_VALUE) {
+                    return defaultValue;
+                }
+            }
+
+            return (int) (isNegative ? -value : value);
+        }
+
+        private int findAttribute(@NotNull String name) {
+            for (int i = 0; i < myAttributesCount; i++) {
+                int idx = i * 4;
+                if (regionEquals(myAttributes[idx], myAttributes[idx + 1], name)) {
+                    return idx;
+                }
+            }
+            return -1;
+        }
+
+        private boolean regionEquals(int start, int end, @NotNull String value) {
+            if (end - start != value.length()) {
+                return false;
+            }
+
+            for (int i = 0; i < value.length(); i++) {
+                if (myText.charAt(start + i) != value.charAt(i)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @NotNull
+        private String decode(int start, int end, boolean keepLineBreaks) {
+            boolean isPlain = true;
+            for (int i = start; i < end && isPlain; i++) {
+                char c = myText.charAt(i);
+                isPlain = c != '&' && c != '\n' && c != '\r';
+            }
+
+            if (isPlain) {
+                return myText.subSequence(start, end).toString();
+            }
+
+            StringBuilder result = new StringBuilder(end - start);
+            decodeTo(start, end, keepLineBreaks, result);
+            return result.toString();
+        }
+
+        private void decodeTo(int start, int end, boolean keepLineBreaks, @NotNull StringBuilder result) {
+            int i = start;
+            while (i < end) {
+                char c = myText.charAt(i);
+                if (c == '\r' || c == '\n') {
+                    // \r\n is a single line break
+                    if (keepLineBreaks && !(c == '\n' && i > start && myText.charAt(i - 1) == '\r')) {
+                        result.append(' ');
+                    }
+                    i++;
+                } else if (c == '&') {
+                    i = decodeEntity(i, end, result);
+                } else {
+                    result.append(c);
+                    i++;
+                }
+            }
+        }
+
+        private int decodeEntity(int start, int end, @NotNull StringBuilder result) {
+            int semicolon = start + 1;
+            while (semicolon < end && semicolon - start <= 10 && myText.charAt(semicolon) != ';') {
+                semicolon++;
+            }
+
+            if (semicolon >= end || myText.charAt(semicolon) != ';') {
+                result.append('&');
+                return start + 1;
+            }
+
+            int nameStart = start + 1;
+            if (regionEquals(nameStart, semicolon, "lt")) {
+                result.append('<');
+            } else if (regionEquals(nameStart, semicolon, "gt")) {
+                result.append('>');
+            } else if (regionEquals(nameStart, semicolon, "amp")) {
+                result.append('&');
+            } else if (regionEquals(nameStart, semicolon, "quot")) {
+                result.append('"');
+            } else if (regionEquals(nameStart, semicolon, "apos")) {
+                result.append('\'');
+            } else if (myText.charAt(nameStart) == '#' && appendCodePoint(nameStart + 1, semicolon, result)) {
+                return semicolon + 1;
+            } else {
+                result.append('&');
+                return start + 1;
+            }
+
+            return semicolon + 1;
+        }
+
+        private boolean appendCodePoint(int start, int end, @NotNull StringBuilder result) {
+            int radix = 10;
+            if (start < end && (myText.charAt(start) == 'x' || myText.charAt(start) == 'X')) {
+                radix = 16;
+                start++;
+            }
+
+            if (start >= end) {
+                return false;
+            }
+
+            int codePoint = 0;
+            for (int i = start; i < end; i++) {
+                int digit = Character.digit(myText.charAt(i), radix);
+                if (digit < 0) {
+                    return false;
+                }
+                codePoint = codePoint * radix + digit;
+                if (codePoint > Character.MAX_CODE_POINT) {
+                    return false;
+                }
+            }
+
+            result.appendCodePoint(codePoint);
+            return true;
+        }
+    }
+}
@@ -2,27 +2,51 @@ package ru.taptima.phalyfusion;
 
 import com.intellij.codeInspection.LocalInspectionTool;
 import com.intellij.execution.ExecutionException;
+import com.intellij.execution.configurations.GeneralCommandLine;
+import com.intellij.openapi.application.ReadAction;
+import com.intellij.openapi.editor.Document;
+import com.intellij.openapi.fileEditor.FileDocumentManager;
 import com.intellij.openapi.project.Project;
+import com.intellij.openapi.util.text.StringUtil;
+import com.intellij.openapi.fileTypes.FileTypeRegistry;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.psi.PsiDocumentManager;
 import com.intellij.psi.PsiFile;
 import com.jetbrains.php.config.interpreters.PhpSdkFileTransfer;
+import com.jetbrains.php.lang.PhpFileType;
 import com.jetbrains.php.lang.PhpLanguage;
 import com.jetbrains.php.lang.psi.PhpFile;
 import com.jetbrains.php.tools.quality.*;
+import ru.taptima.phalyfusion.baseline.PhalyfusionBaseline;
 import ru.taptima.phalyfusion.blacklist.PhalyfusionBlackList;
+import ru.taptima.phalyfusion.blacklist.PhalyfusionBlackListMatcher;
 import ru.taptima.phalyfusion.configuration.PhalyfusionConfiguration;
 import ru.taptima.phalyfusion.configuration.PhalyfusionConfigurationManager;
 import ru.taptima.phalyfusion.configuration.PhalyfusionProjectConfiguration;
+import ru.taptima.phalyfusion.process.PhalyfusionMemoryFiles;
+import ru.taptima.phalyfusion.process.PhalyfusionProcessRunner;
+import ru.taptima.phalyfusion.remote.PhalyfusionRemoteSync;
+import ru.taptima.phalyfusion.worker.PhalyfusionWorkerPool;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 import java.io.*;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.UUID;
 
 public class PhalyfusionAnnotator extends QualityToolAnnotator<PhalyfusionValidationInspection> {
     public static final PhalyfusionAnnotator INSTANCE = new PhalyfusionAnnotator();
 
+    private static final String FILE_LIST_OPTION = "--file-list";
+    private static final String STDIN_PATH_OPTION = "--stdin-path";
+    private static final String FILE_LIST_FOLDER = "phalyfusion_temp";
+    // Shards and bisected halves are launched concurrently, so every launch writes its own list
+    private static final String FILE_LIST_PREFIX = "phalyfusion_files_";
+    private static final String FILE_LIST_EXTENSION = ".lst";
+
     @NotNull
     @Override
     protected String getTemporaryFilesFolder() {
@@ -34,36 +58,111 @@ public class PhalyfusionAnnotator extends QualityToolAnnotator<PhalyfusionValida
         return null;
     }
 
+    /**
+     * On-fly content is passed to the tool over stdin or as a RAM-backed copy,
+     * so the document is not written to the temporary file of the base annotator
+     */
+    @Override
+    public @Nullable QualityToolMessageProcessor doAnnotate(QualityToolAnnotatorInfo collectedInfo) {
+        if (collectedInfo == null || !collectedInfo.isOnTheFly()) {
+            return super.doAnnotate(collectedInfo);
+        }
+
+        var messageProcessor = createMessageProcessor(collectedInfo);
+        try {
+            runTool(messageProcessor, collectedInfo, QualityToolUtil.getSdkFileTransfer(collectedInfo));
+        } catch (ExecutionException e) {
+            logWarning(collectedInfo, "Failed to run Phalyfusion", e);
+            return null;
+        }
+        return messageProcessor;
+    }
+
     @Override
     protected QualityToolMessageProcessor createMessageProcessor(@NotNull QualityToolAnnotatorInfo qualityToolAnnotatorInfo) {
-        return new PhalyfusionMessageProcessor(qualityToolAnnotatorInfo);
+        var messageProcessor = new PhalyfusionMessageProcessor(qualityToolAnnotatorInfo);
+        messageProcessor.setBaseline(PhalyfusionBaseline.getInstance(qualityToolAnnotatorInfo.getProject()).getFingerprints(), false);
+        var configuration = (PhalyfusionConfiguration) getConfiguration(qualityToolAnnotatorInfo.getProject(), qualityToolAnnotatorInfo.getInspection());
+        if (configuration != null) {
+            messageProcessor.setMaxMessagesPerFile(configuration.getMaxMessagesPerFile());
+        }
+        return messageProcessor;
     }
 
     public static void launchQualityTool(@NotNull PsiFile[] files, @NotNull QualityToolAnnotatorInfo annotatorInfo, @NotNull QualityToolMessageProcessor messageProcessor,
                                          @NotNull PhpSdkFileTransfer transfer) throws ExecutionException {
         PhalyfusionBlackList blackList = PhalyfusionBlackList.getInstance(annotatorInfo.getProject());
-        String[] filesPaths = Arrays.stream(files).filter(psiFile -> isFileSuitable(psiFile, blackList))
-                .map(psiFile -> psiFile.getVirtualFile().getPath()).toArray(String[]::new);
+        launchQualityTool(getSuitableFilesPaths(files, blackList), blackList, annotatorInfo, messageProcessor, transfer);
+    }
+
+    /**
+     * Batch mode entry point, PSI of the files is not needed
+     */
+    public static void launchQualityTool(@NotNull VirtualFile[] files, @NotNull QualityToolAnnotatorInfo annotatorInfo, @NotNull QualityToolMessageProcessor messageProcessor,
+                                         @NotNull PhpSdkFileTransfer transfer) throws ExecutionException {
+        PhalyfusionBlackList blackList = PhalyfusionBlackList.getInstance(annotatorInfo.getProject());
+        PhalyfusionBlackListMatcher matcher = blackList.getMatcher();
+        String[] filesPaths = Arrays.stream(files).filter(file -> isFileSuitable(file, matcher))
+                .map(VirtualFile::getPath).toArray(String[]::new);
+        launchQualityTool(filesPaths, blackList, annotatorInfo, messageProcessor, transfer);
+    }
 
+    private static void launchQualityTool(@NotNull String[] filesPaths, @NotNull PhalyfusionBlackList blackList, @NotNull QualityToolAnnotatorInfo annotatorInfo,
+                                          @NotNull QualityToolMessageProcessor messageProcessor, @NotNull PhpSdkFileTransfer transfer) throws ExecutionException {
         if (filesPaths.length == 0) {
             return;
         }
 
-        List<String> params = getCommandLineOptions(filesPaths);
         String workingDir = QualityToolUtil.getWorkingDirectoryFromAnnotator(annotatorInfo);
-        var configurationManager = PhalyfusionConfigurationManager.getInstance(annotatorInfo.getProject());
+        checkNeonConfiguration(annotatorInfo);
+
+        PhpSdkFileTransfer listTransfer = null;
+        List<String> params;
+        if (filesPaths.length > 1 && isFileListSupported(annotatorInfo, transfer)) {
+            listTransfer = QualityToolUtil.getSdkFileTransfer(annotatorInfo);
+            params = getFileListCommandLineOptions(createFileList(annotatorInfo, listTransfer, filesPaths));
+        } else if (PhalyfusionRemoteSync.getInstance(annotatorInfo.getProject()).getSyncRoot(annotatorInfo.getInterpreterId()) != null) {
+            params = getCommandLineOptions(QualityToolUtil.toInterpreterPaths(annotatorInfo.getProject(), annotatorInfo.getInterpreterId(), filesPaths));
+        } else {
+            params = getCommandLineOptions(filesPaths);
+        }
 
         try {
-            configurationManager.checkNeonConfiguration();
-        } catch (IOException e) {
-            logWarning(annotatorInfo, "Failed to create phalyfusion configuration file", e);
+            if (StringUtil.isEmpty(annotatorInfo.getInterpreterId())) {
+                GeneralCommandLine commandLine = new GeneralCommandLine(annotatorInfo.getToolPath())
+                        .withParameters(params)
+                        .withWorkDirectory(workingDir);
+                PhalyfusionProcessRunner.run(commandLine, messageProcessor, annotatorInfo.getTimeout());
+            } else {
+                // Remote process is not available here, so it can not be killed on cancel and runs until it finishes or times out
+                // 2021.1 API
+                //QualityToolProcessCreator.runToolProcess(annotatorInfo, blackList, messageProcessor, workingDir, transfer, params);
+
+                QualityToolProcessCreator.runToolProcess(annotatorInfo, blackList, messageProcessor, workingDir, transfer, null, params);
+            }
+        } finally {
+            if (listTransfer != null) {
+                listTransfer.delete(annotatorInfo.getProject(), annotatorInfo.getTimeout() / 2, false);
+            }
         }
 
-        // 2021.1 API
-        //QualityToolProcessCreator.runToolProcess(annotatorInfo, blackList, messageProcessor, workingDir, transfer, params);
+        checkInternalError(annotatorInfo, messageProcessor);
+    }
 
-        QualityToolProcessCreator.runToolProcess(annotatorInfo, blackList, messageProcessor, workingDir, transfer, null, params);
+    /**
+     * Analyses unsaved content of the file passed over stdin, local interpreter only
+     */
+    private static void launchQualityTool(@NotNull String filePath, @NotNull String content, @NotNull QualityToolAnnotatorInfo annotatorInfo,
+                                          @NotNull QualityToolMessageProcessor messageProcessor) throws ExecutionException {
+        checkNeonConfiguration(annotatorInfo);
+        GeneralCommandLine commandLine = new GeneralCommandLine(annotatorInfo.getToolPath())
+                .withParameters(getStdinCommandLineOptions(filePath))
+                .withWorkDirectory(QualityToolUtil.getWorkingDirectoryFromAnnotator(annotatorInfo));
+        PhalyfusionProcessRunner.run(commandLine, messageProcessor, annotatorInfo.getTimeout(), content.getBytes(StandardCharsets.UTF_8));
+        checkInternalError(annotatorInfo, messageProcessor);
+    }
 
+    private static void checkInternalError(@NotNull QualityToolAnnotatorInfo annotatorInfo, @NotNull QualityToolMessageProcessor messageProcessor) {
         if (messageProcessor.getInternalErrorMessage() != null) {
             if (annotatorInfo.isOnTheFly()) {
                 String message = messageProcessor.getInternalErrorMessage().getMessageText();
@@ -74,10 +173,70 @@ public class PhalyfusionAnnotator extends QualityToolAnnotator<PhalyfusionValida
         }
     }
 
-    private static boolean isFileSuitable(@NotNull PsiFile file, @NotNull PhalyfusionBlackList blackList) {
+    /**
+     * Checks whether the tool accepts list of files to analyse in a file.
+     * Older Phalyfusion versions accept files as command line arguments only
+     */
+    public static boolean isFileListSupported(@NotNull QualityToolAnnotatorInfo annotatorInfo, @NotNull PhpSdkFileTransfer transfer) {
+        return PhalyfusionToolOptions.getHelpOutput(annotatorInfo, transfer).contains(FILE_LIST_OPTION);
+    }
+
+    /**
+     * Checks whether the tool reads content of a single file from stdin, the path is used to report messages and to apply analysers config.
+     * Highlighting does not wait for the tool to be asked, the content is passed as a copy until the answer is known
+     */
+    private static boolean isStdinSupported(@NotNull QualityToolAnnotatorInfo annotatorInfo, @NotNull PhpSdkFileTransfer transfer) {
+        String helpOutput = PhalyfusionToolOptions.getKnownHelpOutput(annotatorInfo, transfer);
+        return helpOutput != null && helpOutput.contains(STDIN_PATH_OPTION);
+    }
+
+    /**
+     * Writes paths of the files to analyse to a temporary file on the interpreter host
+     *
+     * @return path of the list file on the interpreter host
+     */
+    @NotNull
+    private static String createFileList(@NotNull QualityToolAnnotatorInfo annotatorInfo, @NotNull PhpSdkFileTransfer listTransfer,
+                                         @NotNull String[] filesPaths) throws ExecutionException {
+        String[] interpreterPaths = QualityToolUtil.toInterpreterPaths(annotatorInfo.getProject(), annotatorInfo.getInterpreterId(), filesPaths);
+        String listFile = listTransfer.transferTempFile(annotatorInfo.getProject(), FILE_LIST_FOLDER,
+                FILE_LIST_PREFIX + UUID.randomUUID() + FILE_LIST_EXTENSION,
+                String.join("\n", interpreterPaths), annotatorInfo.getTimeout() / 2);
+
+        if (listFile == null) {
+            throw new ExecutionException("Can not create Phalyfusion file list");
+        }
+
+        return listFile;
+    }
+
+    @NotNull
+    private static String[] getSuitableFilesPaths(@NotNull PsiFile[] files, @NotNull PhalyfusionBlackList blackList) {
+        // Batch inspection launches the tool from pooled threads
+        PhalyfusionBlackListMatcher matcher = blackList.getMatcher();
+        return ReadAction.compute(() -> Arrays.stream(files).filter(psiFile -> isFileSuitable(psiFile, matcher))
+                .map(psiFile -> psiFile.getVirtualFile().getPath()).toArray(String[]::new));
+    }
+
+    private static void checkNeonConfiguration(@NotNull QualityToolAnnotatorInfo annotatorInfo) {
+        var configurationManager = PhalyfusionConfigurationManager.getInstance(annotatorInfo.getProject());
+
+        try {
+            configurationManager.checkNeonConfiguration();
+        } catch (IOException e) {
+            logWarning(annotatorInfo, "Failed to create phalyfusion configuration file", e);
+        }
+    }
+
+    public static boolean isFileSuitable(@NotNull VirtualFile file, @NotNull PhalyfusionBlackListMatcher matcher) {
+        return file.isValid() && !file.isDirectory() && FileTypeRegistry.getInstance().isFileOfType(file, PhpFileType.INSTANCE)
+                && !matcher.isExcluded(file);
+    }
+
+    private static boolean isFileSuitable(@NotNull PsiFile file, @NotNull PhalyfusionBlackListMatcher matcher) {
         return file instanceof PhpFile && file.getViewProvider().getBaseLanguage() == PhpLanguage.INSTANCE
-                && file.getContext() == null && !blackList.containsFile(file.getVirtualFile())
-                && file.getVirtualFile().isValid();
+                && file.getContext() == null && file.getVirtualFile() != null && file.getVirtualFile().isValid()
+                && !matcher.isExcluded(file.getVirtualFile());
     }
 
     private static List<String> getCommandLineOptions(String[] filePaths) {
@@ -88,6 +247,22 @@ public class PhalyfusionAnnotator extends QualityToolAnnotator<PhalyfusionValida
         return options;
     }
 
+    private static List<String> getStdinCommandLineOptions(String filePath) {
+        ArrayList<String> options = new ArrayList<>();
+        options.add("analyse");
+        options.add("--format=checkstyle");
+        options.add(STDIN_PATH_OPTION + "=" + filePath);
+        return options;
+    }
+
+    private static List<String> getFileListCommandLineOptions(String fileListPath) {
+        ArrayList<String> options = new ArrayList<>();
+        options.add("analyse");
+        options.add("--format=checkstyle");
+        options.add(FILE_LIST_OPTION + "=" + fileListPath);
+        return options;
+    }
+
     @Override
     protected void runTool(@NotNull QualityToolMessageProcessor messageProcessor, @NotNull QualityToolAnnotatorInfo annotatorInfo,
                            @NotNull PhpSdkFileTransfer transfer) throws ExecutionException {
@@ -98,7 +273,84 @@ public class PhalyfusionAnnotator extends QualityToolAnnotator<PhalyfusionValida
             return;
         }
 
-        launchQualityTool(new PsiFile[] { annotatorInfo.getPsiFile() }, annotatorInfo, messageProcessor, transfer);
+        PsiFile[] files = new PsiFile[] { annotatorInfo.getPsiFile() };
+        boolean isLocal = StringUtil.isEmpty(annotatorInfo.getInterpreterId());
+        if (isLocal) {
+            // Options are known by the time the file is edited
+            PhalyfusionToolOptions.getKnownHelpOutput(annotatorInfo, transfer);
+        }
+        String unsavedContent = isLocal ? getUnsavedContent(annotatorInfo.getPsiFile()) : null;
+        if (unsavedContent != null) {
+            String[] filesPaths = getSuitableFilesPaths(files, PhalyfusionBlackList.getInstance(annotatorInfo.getProject()));
+            if (filesPaths.length == 0) {
+                return;
+            }
+
+            if (!configuration.getWorkerMode() && isStdinSupported(annotatorInfo, transfer)) {
+                launchQualityTool(filesPaths[0], unsavedContent, annotatorInfo, messageProcessor);
+                return;
+            }
+
+            // Messages reported for the copy are attributed to the analysed file by the message processor
+            File copy;
+            try {
+                copy = PhalyfusionMemoryFiles.create(annotatorInfo.getPsiFile().getName(), unsavedContent);
+            } catch (IOException e) {
+                logWarning(annotatorInfo, "Failed to create copy of unsaved file", e);
+                return;
+            }
+
+            try {
+                String[] copyPaths = new String[] { copy.getPath() };
+                checkNeonConfiguration(annotatorInfo);
+                if (!configuration.getWorkerMode() || !PhalyfusionWorkerPool.getInstance(annotatorInfo.getProject())
+                        .analyse(configuration, copyPaths, messageProcessor, annotatorInfo.getTimeout())) {
+                    launchQualityTool(copyPaths, PhalyfusionBlackList.getInstance(annotatorInfo.getProject()), annotatorInfo, messageProcessor, transfer);
+                }
+            } finally {
+                PhalyfusionMemoryFiles.delete(copy);
+            }
+            return;
+        }
+
+        if (configuration.getWorkerMode() && isLocal) {
+            String[] filesPaths = getSuitableFilesPaths(files, PhalyfusionBlackList.getInstance(annotatorInfo.getProject()));
+            if (filesPaths.length == 0) {
+                return;
+            }
+
+            checkNeonConfiguration(annotatorInfo);
+            if (PhalyfusionWorkerPool.getInstance(annotatorInfo.getProject())
+                    .analyse(configuration, filesPaths, messageProcessor, annotatorInfo.getTimeout())) {
+                return;
+            }
+        }
+
+        try {
+            // Batch runs sync the whole project before launch, on-fly run needs only the current file
+            PhalyfusionRemoteSync.getInstance(annotatorInfo.getProject())
+                    .sync(annotatorInfo, configuration, () -> List.of(annotatorInfo.getPsiFile().getVirtualFile()), false);
+        } catch (ExecutionException e) {
+            logWarning(annotatorInfo, "Failed to sync project to the interpreter host", e);
+            return;
+        }
+
+        launchQualityTool(files, annotatorInfo, messageProcessor, transfer);
+    }
+
+    /**
+     * @return text of the document if it differs from the file on disk
+     */
+    @Nullable
+    private static String getUnsavedContent(@Nullable PsiFile file) {
+        if (file == null) {
+            return null;
+        }
+
+        return ReadAction.compute(() -> {
+            Document document = PsiDocumentManager.getInstance(file.getProject()).getDocument(file);
+            return document != null && FileDocumentManager.getInstance().isDocumentUnsaved(document) ? document.getText() : null;
+        });
     }
 
     @Nullable
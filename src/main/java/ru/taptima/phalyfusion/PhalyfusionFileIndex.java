@@ -0,0 +1,156 @@
+package ru.taptima.phalyfusion;
+
+import com.intellij.openapi.vfs.VirtualFile;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Arrays;
+
+/**
+ * Compact index of analysed files. Files get dense int ids, paths are not retained:
+ * every file is stored as 64-bit hash and length of its path in an open addressing table.
+ * Lookup by path does not allocate. Paths with the same hash and length are verified by comparison of strings.
+ */
+public class PhalyfusionFileIndex {
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private VirtualFile[] myFiles;
+    private long[] myHashes;
+    private int[] myLengths;
+    private boolean[] isAmbiguous;
+    private int myCount = 0;
+    // Slots contain id + 1, 0 is an empty slot
+    private int[] myTable;
+    // Built on demand for files with messages
+    private PhalyfusionLineTable[] myLineTables = new PhalyfusionLineTable[0];
+
+    public PhalyfusionFileIndex(int expectedSize) {
+        int capacity = Math.max(4, expectedSize);
+        myFiles = new VirtualFile[capacity];
+        myHashes = new long[capacity];
+        myLengths = new int[capacity];
+        isAmbiguous = new boolean[capacity];
+        myTable = new int[tableSizeFor(capacity)];
+    }
+
+    /**
+     * @return id of the file, the file is added if it is not indexed yet
+     */
+    public int add(@NotNull VirtualFile file) {
+        if (myCount == myFiles.length) {
+            grow();
+        }
+
+        String path = file.getPath();
+        long hash = hash(path);
+        int mask = myTable.length - 1;
+        int slot = slotOf(hash, mask);
+        boolean isCollision = false;
+
+        // Linear probing visits all files with the same hash
+        while (myTable[slot] != 0) {
+            int id = myTable[slot] - 1;
+            if (myHashes[id] == hash && myLengths[id] == path.length()) {
+                if (myFiles[id].equals(file)) {
+                    return id;
+                }
+                isAmbiguous[id] = true;
+                isCollision = true;
+            }
+            slot = (slot + 1) & mask;
+        }
+
+        int id = myCount++;
+        myFiles[id] = file;
+        myHashes[id] = hash;
+        myLengths[id] = path.length();
+        isAmbiguous[id] = isCollision;
+        myTable[slot] = id + 1;
+        return id;
+    }
+
+    /**
+     * @return id of the file with the given path or -1
+     */
+    public int find(@NotNull CharSequence path) {
+        long hash = hash(path);
+        int mask = myTable.length - 1;
+        int slot = slotOf(hash, mask);
+
+        while (myTable[slot] != 0) {
+            int id = myTable[slot] - 1;
+            if (myHashes[id] == hash && myLengths[id] == path.length()
+                    && (!isAmbiguous[id] || myFiles[id].getPath().contentEquals(path))) {
+                return id;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    @Nullable
+    public VirtualFile getFile(int id) {
+        return id >= 0 && id < myCount ? myFiles[id] : null;
+    }
+
+    /**
+     * Table is built once and shared by all messages of the file
+     */
+    @Nullable
+    public synchronized PhalyfusionLineTable getLineTable(int id) {
+        VirtualFile file = getFile(id);
+        if (file == null) {
+            return null;
+        }
+
+        if (id >= myLineTables.length) {
+            myLineTables = Arrays.copyOf(myLineTables, Math.max(id + 1, myCount));
+        }
+        if (myLineTables[id] == null) {
+            myLineTables[id] = PhalyfusionLineTable.build(file);
+        }
+        return myLineTables[id];
+    }
+
+    public int size() {
+        return myCount;
+    }
+
+    private void grow() {
+        int capacity = myFiles.length * 2;
+        myFiles = Arrays.copyOf(myFiles, capacity);
+        myHashes = Arrays.copyOf(myHashes, capacity);
+        myLengths = Arrays.copyOf(myLengths, capacity);
+        isAmbiguous = Arrays.copyOf(isAmbiguous, capacity);
+
+        myTable = new int[tableSizeFor(capacity)];
+        int mask = myTable.length - 1;
+        for (int id = 0; id < myCount; id++) {
+            int slot = slotOf(myHashes[id], mask);
+            while (myTable[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            myTable[slot] = id + 1;
+        }
+    }
+
+    /**
+     * Table is kept at most half full
+     */
+    private static int tableSizeFor(int capacity) {
+        return Integer.highestOneBit(capacity * 2 - 1) << 1;
+    }
+
+    private static int slotOf(long hash, int mask) {
+        return (int) (hash ^ (hash >>> 32)) & mask;
+    }
+
+    private static long hash(@NotNull CharSequence path) {
+        long hash = FNV_OFFSET_BASIS;
+        for (int i = 0; i < path.length(); i++) {
+            hash = (hash ^ path.charAt(i)) * FNV_PRIME;
+        }
+        return hash;
+    }
+}
@@ -11,27 +11,54 @@ import com.intellij.execution.ExecutionException;
 import com.intellij.notification.Notification;
 import com.intellij.notification.NotificationType;
 import com.intellij.notification.Notifications;
+import com.intellij.openapi.application.ReadAction;
 import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.project.Project;
 import com.intellij.openapi.util.SystemInfo;
+import com.intellij.openapi.util.TextRange;
 import com.intellij.openapi.util.text.StringUtil;
 import com.intellij.openapi.vfs.VirtualFile;
 import com.intellij.profile.codeInspection.InspectionProjectProfileManager;
-import com.intellij.psi.PsiCompiledElement;
-import com.intellij.psi.PsiElementVisitor;
 import com.intellij.psi.PsiFile;
+import com.intellij.psi.PsiManager;
 import com.jetbrains.php.config.interpreters.*;
 import com.jetbrains.php.run.remote.PhpRemoteInterpreterManager;
 import com.jetbrains.php.tools.quality.*;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
+import ru.taptima.phalyfusion.baseline.PhalyfusionBaseline;
+import ru.taptima.phalyfusion.baseline.PhalyfusionLongHashSet;
+import ru.taptima.phalyfusion.batch.PhalyfusionBisectingLauncher;
+import ru.taptima.phalyfusion.batch.PhalyfusionCostTable;
+import ru.taptima.phalyfusion.batch.PhalyfusionQuarantine;
+import ru.taptima.phalyfusion.batch.PhalyfusionScopeCollector;
+import ru.taptima.phalyfusion.batch.PhalyfusionShardedExecutor;
+import ru.taptima.phalyfusion.blacklist.PhalyfusionBlackList;
+import ru.taptima.phalyfusion.blacklist.PhalyfusionBlackListMatcher;
+import ru.taptima.phalyfusion.cache.PhalyfusionResultCache;
 import ru.taptima.phalyfusion.configuration.PhalyfusionConfiguration;
 import ru.taptima.phalyfusion.configuration.PhalyfusionProjectConfiguration;
-
+import ru.taptima.phalyfusion.dependency.PhalyfusionDependencyIndex;
+import ru.taptima.phalyfusion.export.PhalyfusionReportWriter;
+import ru.taptima.phalyfusion.remote.PhalyfusionPathMapperCache;
+import ru.taptima.phalyfusion.remote.PhalyfusionRemoteSync;
+import ru.taptima.phalyfusion.statistics.PhalyfusionRunStatistics;
+import ru.taptima.phalyfusion.statistics.PhalyfusionStatistics;
+import ru.taptima.phalyfusion.store.PhalyfusionMessagePool;
+import ru.taptima.phalyfusion.vcs.PhalyfusionChangedLines;
+import ru.taptima.phalyfusion.vcs.PhalyfusionDiffScopes;
+
+import java.io.File;
+import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.Function;
 
 public class PhalyfusionGlobalInspection extends GlobalInspectionTool {
     private static final int MAX_WINDOWS_CMD_LENGTH = 8192;
+    private static final int ISOLATED_TIMEOUT_FACTOR = 4;
+    private static final int MAX_LISTED_FILES = 10;
 
     private static final String GROUP_ID = "PHP External Quality Tools";
     private static final Logger LOG = Logger.getInstance(PhalyfusionGlobalInspection.class);
@@ -46,22 +73,25 @@ public class PhalyfusionGlobalInspection extends GlobalInspectionTool {
     @Override
     public void runInspection(@NotNull AnalysisScope scope, @NotNull InspectionManager manager, @NotNull GlobalInspectionContext globalContext,
                               @NotNull ProblemDescriptionsProcessor problemDescriptionsProcessor) {
-        Set<PsiFile> filesSet = new HashSet<>();
-        scope.accept(new PsiElementVisitor() {
-            @Override
-            public void visitFile(@NotNull PsiFile file) {
-                if (!(file instanceof PsiCompiledElement)) {
-                    final VirtualFile virtualFile = file.getVirtualFile();
-                    if (virtualFile != null && virtualFile.isValid()) {
-                        filesSet.add(file);
-                    }
-                }
-            }
-        });
+        var statistics = new PhalyfusionRunStatistics();
+        try {
+            runInspection(scope, globalContext, problemDescriptionsProcessor, statistics);
+        } finally {
+            statistics.finish();
+            PhalyfusionStatistics.getInstance(scope.getProject()).addRun(statistics);
+        }
+    }
 
-        PsiFile[] psiFiles = filesSet.toArray(PsiFile[]::new);
+    private void runInspection(@NotNull AnalysisScope scope, @NotNull GlobalInspectionContext globalContext,
+                               @NotNull ProblemDescriptionsProcessor problemDescriptionsProcessor, @NotNull PhalyfusionRunStatistics statistics) {
+        long phaseStart = statistics.startPhase();
+        VirtualFile[] files = PhalyfusionScopeCollector.collect(scope);
+        PsiFile firstPsiFile = files.length == 0 ? null
+                : ReadAction.compute(() -> PsiManager.getInstance(scope.getProject()).findFile(files[0]));
+        statistics.endPhase(PhalyfusionRunStatistics.PHASE_SCOPE, phaseStart);
+        statistics.setScopeFilesCount(files.length);
 
-        if (psiFiles.length == 0) {
+        if (firstPsiFile == null) {
             showInfo(getDisplayName(), "Phalyfusion did not run", "No files to analyse",
                     NotificationType.INFORMATION, null);
             return;
@@ -77,16 +107,24 @@ public class PhalyfusionGlobalInspection extends GlobalInspectionTool {
                 throw new QualityToolExecutionException("Phalyfusion path is incorrect");
             }
 
-            QualityToolAnnotatorInfo<PhalyfusionValidationInspection> annotatorInfo = collectAnnotatorInfo(psiFiles[0], configuration);
+            QualityToolAnnotatorInfo<PhalyfusionValidationInspection> annotatorInfo = collectAnnotatorInfo(firstPsiFile, configuration);
 
             if (annotatorInfo == null) {
                 logError("Phalyfusion execution exception", "Problems during collection of annotator info", null);
                 throw new QualityToolExecutionException("Problems during collection of annotator info");
             }
 
-            QualityToolMessageProcessor messageProcessor = new PhalyfusionMessageProcessor(annotatorInfo, psiFiles);
-            splitRunTool(psiFiles, messageProcessor, annotatorInfo);
-            processMessages(globalContext, annotatorInfo, messageProcessor, psiFiles, problemDescriptionsProcessor);
+            try (PhalyfusionReportWriter reportWriter = createReportWriter(scope.getProject(), configuration)) {
+                runAnalysis(scope, globalContext, problemDescriptionsProcessor, statistics, files, configuration, annotatorInfo, reportWriter);
+                if (reportWriter != null) {
+                    reportWriter.complete();
+                }
+            } catch (IOException e) {
+                showInfo(getDisplayName(), "Can not export Phalyfusion results", e.getMessage(), NotificationType.ERROR, annotatorInfo);
+            } finally {
+                // Cached results are not kept in memory between runs
+                PhalyfusionResultCache.getInstance(scope.getProject()).release();
+            }
         } catch (QualityToolExecutionException | QualityToolValidationException e) {
             showInfo(getDisplayName(), "Exception during Phalyfusion run", e.getMessage(), NotificationType.ERROR, null);
             problemDescriptionsProcessor.addProblemElement(globalContext.getRefManager().getRefProject(),
@@ -94,67 +132,383 @@ public class PhalyfusionGlobalInspection extends GlobalInspectionTool {
         }
     }
 
-    private void processMessages(@NotNull GlobalInspectionContext globalContext, @NotNull QualityToolAnnotatorInfo<PhalyfusionValidationInspection> annotatorInfo,
-                                 @NotNull QualityToolMessageProcessor messageProcessor, @NotNull PsiFile[] psiFiles,
-                                 @NotNull ProblemDescriptionsProcessor problemDescriptionsProcessor) {
-        var messageMap = new HashMap<PsiFile, List<QualityToolMessage>>();
+    private void runAnalysis(@NotNull AnalysisScope scope, @NotNull GlobalInspectionContext globalContext,
+                             @NotNull ProblemDescriptionsProcessor problemDescriptionsProcessor, @NotNull PhalyfusionRunStatistics statistics,
+                             @NotNull VirtualFile[] files, @NotNull PhalyfusionConfiguration configuration,
+                             @NotNull QualityToolAnnotatorInfo<PhalyfusionValidationInspection> annotatorInfo,
+                             @Nullable PhalyfusionReportWriter reportWriter) throws QualityToolExecutionException {
+        // Mappings of the interpreter may have been edited since the previous run
+        PhalyfusionPathMapperCache.getInstance(scope.getProject()).invalidate();
+        // Messages of all processors of the run are packed with texts interned in the shared pool
+        var messagePool = new PhalyfusionMessagePool();
+        PhalyfusionMessageProcessor messageProcessor = new PhalyfusionMessageProcessor(annotatorInfo, files);
+        messageProcessor.setMessagePool(messagePool);
+        messageProcessor.setMaxMessagesPerFile(configuration.getMaxMessagesPerFile());
+        var baseline = PhalyfusionBaseline.getInstance(scope.getProject());
+        PhalyfusionLongHashSet baselineFingerprints = baseline.getFingerprints();
+        boolean isRecording = baseline.isSnapshotRequested();
+        messageProcessor.setBaseline(baselineFingerprints, isRecording);
+        PhalyfusionLongHashSet runFingerprints = messageProcessor.getRecordedFingerprints();
+        var cache = PhalyfusionResultCache.getInstance(scope.getProject());
+        Map<VirtualFile, String> missedFiles = new LinkedHashMap<>();
+        // Set when the scope was created by the diff action to report only messages on changed lines
+        PhalyfusionChangedLines changedLines = PhalyfusionDiffScopes.getInstance(scope.getProject()).getChangedLines(scope);
+
+        long phaseStart = statistics.startPhase();
+        String configurationHash = PhalyfusionResultCache.getConfigurationHash(scope.getProject(), configuration);
+        Map<VirtualFile, List<PhalyfusionResultCache.CachedMessage>> cachedFiles = new LinkedHashMap<>();
+
+        for (VirtualFile file : files) {
+            String key = PhalyfusionResultCache.getKey(file, configurationHash);
+            var cachedMessages = key == null ? null : cache.get(key);
+            if (cachedMessages == null) {
+                missedFiles.put(file, key);
+            } else {
+                cachedFiles.put(file, cachedMessages);
+            }
+        }
+        statistics.endPhase(PhalyfusionRunStatistics.PHASE_CACHE_LOOKUP, phaseStart);
+
+        phaseStart = statistics.startPhase();
+        addDependents(scope.getProject(), configuration, configurationHash, missedFiles, changedLines);
+        statistics.endPhase(PhalyfusionRunStatistics.PHASE_DEPENDENCIES, phaseStart);
+
+        int replayedFiles = 0;
+        for (var entry : cachedFiles.entrySet()) {
+            if (missedFiles.containsKey(entry.getKey())) {
+                continue;
+            }
+
+            replayedFiles++;
+            for (var cachedMessage : entry.getValue()) {
+                messageProcessor.replayMessage(entry.getKey(), cachedMessage.getLineNum(), cachedMessage.getColumn(),
+                        cachedMessage.getSeverity(), cachedMessage.getMessageText());
+            }
+        }
+        cachedFiles.clear();
+        int cachedMessagesCount = messageProcessor.getMessagesCount();
+        statistics.setCachedFiles(replayedFiles, cachedMessagesCount);
+        statistics.setAnalysedFilesCount(missedFiles.size());
+        // Replayed messages are retained till the end of the run
+        statistics.messagesRetained(cachedMessagesCount);
+
+        // Cached results are shown right away, results of analysed files are shown as soon as their shard is finished
+        phaseStart = statistics.startPhase();
+        processMessages(globalContext, annotatorInfo, messageProcessor, changedLines, reportWriter, problemDescriptionsProcessor);
+        statistics.endPhase(PhalyfusionRunStatistics.PHASE_REPORT, phaseStart);
+
+        if (!missedFiles.isEmpty()) {
+            phaseStart = statistics.startPhase();
+            try {
+                PhalyfusionRemoteSync.getInstance(scope.getProject()).sync(annotatorInfo, configuration,
+                        () -> PhalyfusionScopeCollector.collectProjectContent(scope.getProject()), true);
+            } catch (ExecutionException e) {
+                throw new QualityToolExecutionException("Can not sync project to the interpreter host: " + e.getMessage());
+            } finally {
+                statistics.endPhase(PhalyfusionRunStatistics.PHASE_REMOTE_SYNC, phaseStart);
+            }
+
+            var quarantine = PhalyfusionQuarantine.getInstance(scope.getProject());
+            var regularFiles = new ArrayList<VirtualFile>();
+            var isolatedFiles = new ArrayList<VirtualFile>();
+            var skippedFiles = new ArrayList<VirtualFile>();
+            for (VirtualFile file : missedFiles.keySet()) {
+                switch (quarantine.getState(file)) {
+                    case ISOLATED:
+                        isolatedFiles.add(file);
+                        break;
+                    case SKIPPED:
+                        skippedFiles.add(file);
+                        break;
+                    default:
+                        regularFiles.add(file);
+                }
+            }
+            // Files without results are not cached
+            Set<VirtualFile> failedFiles = ConcurrentHashMap.newKeySet();
+            failedFiles.addAll(skippedFiles);
+            Queue<VirtualFile> newlyIsolatedFiles = new ConcurrentLinkedQueue<>();
+            Queue<VirtualFile> newlySkippedFiles = new ConcurrentLinkedQueue<>();
+
+            var costTable = PhalyfusionCostTable.getInstance(scope.getProject());
+            var executor = new PhalyfusionShardedExecutor(configuration);
+            Function<VirtualFile[], PhalyfusionMessageProcessor> shardProcessorFactory = shard -> {
+                var shardProcessor = new PhalyfusionMessageProcessor(annotatorInfo, shard);
+                shardProcessor.setMessagePool(messagePool);
+                shardProcessor.setMaxMessagesPerFile(configuration.getMaxMessagesPerFile());
+                shardProcessor.setStatistics(statistics.createShard(shard.length));
+                shardProcessor.setBaseline(baselineFingerprints, isRecording);
+                return shardProcessor;
+            };
+            // Separate launches of a shard are moved into the shard processor as they are, so they filter messages the same way
+            Function<VirtualFile[], PhalyfusionMessageProcessor> launchProcessorFactory = launchFiles -> {
+                var launchProcessor = new PhalyfusionMessageProcessor(annotatorInfo, launchFiles);
+                launchProcessor.setMessagePool(messagePool);
+                launchProcessor.setMaxMessagesPerFile(configuration.getMaxMessagesPerFile());
+                launchProcessor.setBaseline(baselineFingerprints, isRecording);
+                return launchProcessor;
+            };
+            var listener = new PhalyfusionShardedExecutor.ShardListener() {
+                @Override
+                public void shardFinished(@NotNull VirtualFile[] shard, @NotNull PhalyfusionMessageProcessor shardProcessor) {
+                    long reportStart = statistics.startPhase();
+                    processMessages(globalContext, annotatorInfo, shardProcessor, changedLines, reportWriter, problemDescriptionsProcessor);
+                    statistics.endPhase(PhalyfusionRunStatistics.PHASE_REPORT, reportStart);
+
+                    long storeStart = statistics.startPhase();
+                    storeInCache(cache, shardProcessor, messagePool, shard, missedFiles, failedFiles);
+                    statistics.endPhase(PhalyfusionRunStatistics.PHASE_CACHE_STORE, storeStart);
+                    statistics.messagesReleased(shardProcessor.getMessagesCount());
+                    if (runFingerprints != null) {
+                        runFingerprints.addAll(Objects.requireNonNull(shardProcessor.getRecordedFingerprints()));
+                    }
+                    // Failed launches tell nothing about the cost of files, bisected shards include the time spent on timeouts
+                    if (shardProcessor.getInternalErrorMessage() == null && !shardProcessor.getStatistics().isBisected()
+                            && Collections.disjoint(failedFiles, Arrays.asList(shard))) {
+                        costTable.record(shard, shardProcessor.getStatistics().getDurationNanos());
+                    }
+                }
+
+                @Override
+                public void shardFailed(@NotNull VirtualFile[] shard, @NotNull Throwable error) {
+                    // Files of the shard have no results, so nothing is cached for them
+                    Collections.addAll(failedFiles, shard);
+                    showInfo(getDisplayName(), "Phalyfusion shard failed", String.valueOf(error.getMessage()), NotificationType.ERROR, annotatorInfo);
+                }
+            };
+
+            long analysisStart = statistics.startPhase();
+            try {
+                VirtualFile[] filesToAnalyse = regularFiles.toArray(VirtualFile[]::new);
+                executor.run(executor.plan(filesToAnalyse, costTable::predict), shardProcessorFactory,
+                        new PhalyfusionBisectingLauncher((launchFiles, launchProcessor) -> splitRunTool(launchFiles, launchProcessor, annotatorInfo),
+                                launchProcessorFactory, new PhalyfusionBisectingLauncher.FailureListener() {
+                            @Override
+                            public void fileIsolated(@NotNull VirtualFile file, @NotNull String error) {
+                                quarantine.setState(file, PhalyfusionQuarantine.State.ISOLATED);
+                                // The file has no results till its separate run succeeds
+                                failedFiles.add(file);
+                                newlyIsolatedFiles.add(file);
+                            }
+
+                            @Override
+                            public void filesFailed(@NotNull VirtualFile[] failed, @NotNull String error) {
+                                Collections.addAll(failedFiles, failed);
+                                showInfo(getDisplayName(), "Can not execute quality tool", error, NotificationType.ERROR, annotatorInfo);
+                            }
+                        }),
+                        listener);
+
+                // Isolated files are analysed alone with a longer timeout, so they do not hold up other files
+                isolatedFiles.addAll(newlyIsolatedFiles);
+                failedFiles.removeAll(newlyIsolatedFiles);
+                if (!isolatedFiles.isEmpty()) {
+                    PhalyfusionConfiguration isolatedConfiguration = configuration.clone();
+                    isolatedConfiguration.setTimeout(configuration.getTimeout() * ISOLATED_TIMEOUT_FACTOR);
+                    var isolatedAnnotatorInfo = new QualityToolAnnotatorInfo<>(annotatorInfo.getPsiFile(), annotatorInfo.getInspection(),
+                            scope.getProject(), isolatedConfiguration, false);
+                    executor.run(executor.planSeparately(isolatedFiles.toArray(VirtualFile[]::new), costTable::predict), shardProcessorFactory,
+                            new PhalyfusionBisectingLauncher((launchFiles, launchProcessor) -> splitRunTool(launchFiles, launchProcessor, isolatedAnnotatorInfo),
+                                    launchProcessorFactory, new PhalyfusionBisectingLauncher.FailureListener() {
+                                @Override
+                                public void fileIsolated(@NotNull VirtualFile file, @NotNull String error) {
+                                    quarantine.setState(file, PhalyfusionQuarantine.State.SKIPPED);
+                                    failedFiles.add(file);
+                                    newlySkippedFiles.add(file);
+                                }
+
+                                @Override
+                                public void filesFailed(@NotNull VirtualFile[] failed, @NotNull String error) {
+                                    // Crash of a single file may be caused by the environment, the file is tried again next time
+                                    Collections.addAll(failedFiles, failed);
+                                    showInfo(getDisplayName(), "Can not execute quality tool", error, NotificationType.ERROR, annotatorInfo);
+                                }
+                            }),
+                            listener);
+                }
+            } finally {
+                statistics.endPhase(PhalyfusionRunStatistics.PHASE_ANALYSIS, analysisStart);
+                long storeStart = statistics.startPhase();
+                cache.save();
+                costTable.save();
+                quarantine.save();
+                statistics.endPhase(PhalyfusionRunStatistics.PHASE_CACHE_STORE, storeStart);
+            }
+
+            skippedFiles.addAll(newlySkippedFiles);
+            if (!newlyIsolatedFiles.isEmpty() || !skippedFiles.isEmpty()) {
+                showQuarantineInfo(scope.getProject(), new ArrayList<>(newlyIsolatedFiles), skippedFiles, annotatorInfo);
+            }
+        }
+
+        if (runFingerprints == null) {
+            return;
+        }
+        // Messages of replayed files matched by the baseline were dropped before they were cached
+        if (replayedFiles > 0 && baselineFingerprints != null) {
+            runFingerprints.addAll(baselineFingerprints);
+        }
+        baseline.setLastRun(runFingerprints, scope.getScopeType() == AnalysisScope.PROJECT && changedLines == null);
+    }
 
+    /**
+     * Reports messages of the processor as problems, public for benchmarks
+     */
+    public void processMessages(@NotNull GlobalInspectionContext globalContext, @NotNull QualityToolAnnotatorInfo<PhalyfusionValidationInspection> annotatorInfo,
+                                 @NotNull PhalyfusionMessageProcessor messageProcessor, @Nullable PhalyfusionChangedLines changedLines,
+                                 @Nullable PhalyfusionReportWriter reportWriter, @NotNull ProblemDescriptionsProcessor problemDescriptionsProcessor) {
         for (QualityToolMessage message : messageProcessor.getMessages()) {
-            HighlightInfoType highlightInfoType = HighlightInfoType.WARNING;
             if (message.getSeverity() == QualityToolMessage.Severity.INTERNAL_ERROR) {
                 showInfo(getDisplayName(), "Internal error", message.getMessageText(), NotificationType.ERROR, annotatorInfo);
                 problemDescriptionsProcessor.addProblemElement(globalContext.getRefManager().getRefProject(),
                         new CommonProblemDescriptorImpl(null, message.getMessageText()));
-                continue;
             }
+        }
+
+        // PSI is resolved only for files with messages
+        var psiFiles = new HashMap<VirtualFile, PsiFile>();
+        var psiManager = PsiManager.getInstance(annotatorInfo.getProject());
+        var inspectionManager = InspectionManager.getInstance(annotatorInfo.getProject());
 
-            PhalyfusionMessage phalyfusionMessage = (PhalyfusionMessage)message;
-            var psiFile = phalyfusionMessage.getFile();
+        // Packed messages are built one by one and dropped as soon as their problem is created
+        messageProcessor.forEachFileMessage(phalyfusionMessage -> {
+            var virtualFile = phalyfusionMessage.getFile();
+            if (virtualFile == null || changedLines != null && !changedLines.contains(virtualFile, phalyfusionMessage.getLineNum())) {
+                return;
+            }
+            if (reportWriter != null) {
+                reportWriter.write(toReportPath(annotatorInfo.getProject(), virtualFile), phalyfusionMessage.getLineNum(),
+                        phalyfusionMessage.getSeverity(), phalyfusionMessage.getPlainMessageText(), phalyfusionMessage.getFoldedAnalyzers());
+            }
 
-            if (!messageMap.containsKey(psiFile)) {
-                messageMap.put(psiFile, new ArrayList<>());
+            var psiFile = psiFiles.computeIfAbsent(virtualFile,
+                    file -> file.isValid() ? ReadAction.compute(() -> psiManager.findFile(file)) : null);
+            if (psiFile == null) {
+                return;
             }
-            messageMap.get(psiFile).add(phalyfusionMessage);
 
-            HighlightInfo highlightInfo = HighlightInfo.newHighlightInfo(highlightInfoType).description(phalyfusionMessage.getMessageText())
-                    .range(phalyfusionMessage.getTextRange()).create();
+            TextRange textRange = phalyfusionMessage.getTextRange();
+            HighlightInfo highlightInfo = HighlightInfo.newHighlightInfo(HighlightInfoType.WARNING).description(phalyfusionMessage.getMessageText())
+                    .range(textRange).create();
 
             GlobalInspectionUtil.createProblem(psiFile,
-                    Objects.requireNonNull(highlightInfo), phalyfusionMessage.getTextRange(), () -> "Quality Tool Error",
-                    InspectionManager.getInstance(annotatorInfo.getProject()), problemDescriptionsProcessor, globalContext);
+                    Objects.requireNonNull(highlightInfo), textRange, () -> "Quality Tool Error",
+                    inspectionManager, problemDescriptionsProcessor, globalContext);
+        });
+    }
+
+    /**
+     * @return writer of the report configured for batch runs or null if the export is disabled
+     */
+    @Nullable
+    private static PhalyfusionReportWriter createReportWriter(@NotNull Project project, @NotNull PhalyfusionConfiguration configuration) throws IOException {
+        String reportPath = configuration.getReportPath().trim();
+        if (reportPath.isEmpty()) {
+            return null;
+        }
+
+        File target = new File(reportPath);
+        if (!target.isAbsolute() && project.getBasePath() != null) {
+            target = new File(project.getBasePath(), reportPath);
+        }
+        return PhalyfusionReportWriter.create(target);
+    }
+
+    @NotNull
+    private static String toReportPath(@NotNull Project project, @NotNull VirtualFile file) {
+        String basePath = project.getBasePath();
+        String path = file.getPath();
+        return basePath != null && path.startsWith(basePath + "/") ? path.substring(basePath.length() + 1) : path;
+    }
+
+    /**
+     * Results of files depending on changed files may change too, so dependents are analysed again even if they are cached
+     * or out of the scope. Dependents are reported entirely when only changed lines are reported.
+     */
+    private static void addDependents(@NotNull Project project, @NotNull PhalyfusionConfiguration configuration,
+                                      @NotNull String configurationHash, @NotNull Map<VirtualFile, String> missedFiles,
+                                      @Nullable PhalyfusionChangedLines changedLines) {
+        var dependents = PhalyfusionDependencyIndex.getInstance(project).getDependents(missedFiles.keySet(), configuration.getDependencyDepth());
+        if (dependents.isEmpty()) {
+            return;
+        }
+
+        PhalyfusionBlackListMatcher matcher = PhalyfusionBlackList.getInstance(project).getMatcher();
+        for (VirtualFile dependent : dependents) {
+            if (!ReadAction.compute(() -> PhalyfusionAnnotator.isFileSuitable(dependent, matcher))) {
+                continue;
+            }
+
+            missedFiles.put(dependent, PhalyfusionResultCache.getKey(dependent, configurationHash));
+            if (changedLines != null && !changedLines.getFiles().contains(dependent)) {
+                changedLines.addFile(dependent);
+            }
+        }
+    }
+
+    /**
+     * Remembers results of analysed shard. Nothing is stored for failed files, because their results are missing
+     */
+    private static void storeInCache(@NotNull PhalyfusionResultCache cache, @NotNull PhalyfusionMessageProcessor messageProcessor,
+                                     @NotNull PhalyfusionMessagePool messagePool, @NotNull VirtualFile[] shard, @NotNull Map<VirtualFile, String> fileKeys,
+                                     @NotNull Set<VirtualFile> failedFiles) {
+        if (messageProcessor.getInternalErrorMessage() != null) {
+            return;
+        }
+
+        for (QualityToolMessage message : messageProcessor.getMessages()) {
+            if (message.getSeverity() == QualityToolMessage.Severity.INTERNAL_ERROR) {
+                return;
+            }
+        }
+
+        // Cached texts repeat as often as the messages, so they share instances
+        var fileMessages = new HashMap<VirtualFile, List<PhalyfusionResultCache.CachedMessage>>();
+        messageProcessor.forEachFileMessage(message -> {
+            var file = message.getFile();
+            if (fileKeys.containsKey(file)) {
+                fileMessages.computeIfAbsent(file, it -> new ArrayList<>()).add(new PhalyfusionResultCache.CachedMessage(
+                        message.getLineNum(), message.getColumn(), message.getSeverity(), messagePool.intern(message.getMessageText())));
+            }
+        });
+
+        for (VirtualFile file : shard) {
+            String key = fileKeys.get(file);
+            if (key != null && !failedFiles.contains(file)) {
+                cache.put(key, fileMessages.getOrDefault(file, Collections.emptyList()));
+            }
         }
     }
 
-    private void splitRunTool(@NotNull PsiFile[] psiFiles, @NotNull QualityToolMessageProcessor messageProcessor, @NotNull QualityToolAnnotatorInfo<PhalyfusionValidationInspection> annotatorInfo) {
-        PhpSdkFileTransfer transfer = getPhpSdkFileTransfer(annotatorInfo);
+    private void splitRunTool(@NotNull VirtualFile[] files, @NotNull QualityToolMessageProcessor messageProcessor,
+                              @NotNull QualityToolAnnotatorInfo<PhalyfusionValidationInspection> annotatorInfo) throws ExecutionException {
+        PhpSdkFileTransfer transfer = QualityToolUtil.getSdkFileTransfer(annotatorInfo);
 
-        if (!SystemInfo.isWindows) {
-            tryRunTool(annotatorInfo, messageProcessor, transfer, psiFiles);
+        if (!SystemInfo.isWindows || PhalyfusionAnnotator.isFileListSupported(annotatorInfo, transfer)) {
+            tryRunTool(annotatorInfo, messageProcessor, transfer, files);
             return;
         }
 
         int curFileIdx = 0;
-        while (curFileIdx < psiFiles.length) {
-            var curFilesList = new ArrayList<PsiFile>();
+        while (curFileIdx < files.length) {
+            var curFilesList = new ArrayList<VirtualFile>();
             int totalLen = 0;
-            while (curFileIdx < psiFiles.length
-                    && totalLen + psiFiles[curFileIdx].getVirtualFile().getPath().length() < MAX_WINDOWS_CMD_LENGTH - 300) {
-                curFilesList.add(psiFiles[curFileIdx]);
-                totalLen += psiFiles[curFileIdx].getVirtualFile().getPath().length();
+            while (curFileIdx < files.length
+                    && totalLen + files[curFileIdx].getPath().length() < MAX_WINDOWS_CMD_LENGTH - 300) {
+                curFilesList.add(files[curFileIdx]);
+                totalLen += files[curFileIdx].getPath().length();
                 curFileIdx++;
             }
 
-            tryRunTool(annotatorInfo, messageProcessor, transfer, curFilesList.toArray(PsiFile[]::new));
+            tryRunTool(annotatorInfo, messageProcessor, transfer, curFilesList.toArray(VirtualFile[]::new));
         }
 
     }
 
     private void tryRunTool(@NotNull QualityToolAnnotatorInfo<PhalyfusionValidationInspection> annotatorInfo, @NotNull QualityToolMessageProcessor messageProcessor,
-                               @NotNull PhpSdkFileTransfer transfer, @NotNull PsiFile[] files) {
+                            @NotNull PhpSdkFileTransfer transfer, @NotNull VirtualFile[] files) throws ExecutionException {
         try {
             PhalyfusionAnnotator.launchQualityTool(files, annotatorInfo, messageProcessor, transfer);
-        } catch (ExecutionException e) {
-            showInfo(getDisplayName(), "Can not execute quality tool", e.getMessage(), NotificationType.ERROR, annotatorInfo);
         } finally {
             try {
                 removeTempFile(annotatorInfo, transfer);
@@ -164,13 +518,6 @@ public class PhalyfusionGlobalInspection extends GlobalInspectionTool {
         }
     }
 
-    private PhpSdkFileTransfer getPhpSdkFileTransfer(@NotNull QualityToolAnnotatorInfo<PhalyfusionValidationInspection> annotatorInfo) {
-        String id = annotatorInfo.getInterpreterId();
-        PhpSdkAdditionalData sdkData
-                = StringUtil.isEmpty(id) ? null : PhpInterpretersManagerImpl.getInstance(annotatorInfo.getProject()).findInterpreterDataById(id);
-        return PhpSdkFileTransfer.getSdkFileTransfer(sdkData);
-    }
-
     private static void removeTempFile(@NotNull QualityToolAnnotatorInfo<PhalyfusionValidationInspection> collectedInfo, @NotNull PhpSdkFileTransfer transfer) throws ExecutionException {
         String tempFile = collectedInfo.getTempFile();
         if (tempFile != null) {
@@ -266,6 +613,38 @@ public class PhalyfusionGlobalInspection extends GlobalInspectionTool {
         LOG.error(formattedPrefix + ": " + message);
     }
 
+    /**
+     * Lists files isolated by this run and files which are not analysed until they are changed
+     */
+    private void showQuarantineInfo(@NotNull Project project, @NotNull List<VirtualFile> isolatedFiles, @NotNull List<VirtualFile> skippedFiles,
+                                    @NotNull QualityToolAnnotatorInfo<PhalyfusionValidationInspection> annotatorInfo) {
+        var message = new StringBuilder();
+        if (!isolatedFiles.isEmpty()) {
+            message.append("analysed alone with a longer timeout: ");
+            appendFiles(message, project, isolatedFiles);
+        }
+        if (!skippedFiles.isEmpty()) {
+            if (message.length() > 0) {
+                message.append("; ");
+            }
+            message.append("skipped until changed: ");
+            appendFiles(message, project, skippedFiles);
+        }
+        showInfo(getDisplayName(), "Files make Phalyfusion time out or crash", message.toString(), NotificationType.WARNING, annotatorInfo);
+    }
+
+    private static void appendFiles(@NotNull StringBuilder builder, @NotNull Project project, @NotNull List<VirtualFile> files) {
+        for (int i = 0; i < files.size() && i < MAX_LISTED_FILES; i++) {
+            if (i > 0) {
+                builder.append(", ");
+            }
+            builder.append(toReportPath(project, files.get(i)));
+        }
+        if (files.size() > MAX_LISTED_FILES) {
+            builder.append(" and ").append(files.size() - MAX_LISTED_FILES).append(" more");
+        }
+    }
+
     private static void showInfo(@NotNull String title, @NotNull String prefix, @NotNull String message,
                                  @NotNull NotificationType type, @Nullable QualityToolAnnotatorInfo<PhalyfusionValidationInspection> annotatorInfo) {
         Notifications.Bus.notify(new Notification(GROUP_ID, title, prefix + ": " + message, type, null));
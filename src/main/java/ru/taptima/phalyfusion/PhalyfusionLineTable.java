@@ -0,0 +1,101 @@
+package ru.taptima.phalyfusion;
+
+import com.intellij.openapi.editor.Document;
+import com.intellij.openapi.fileEditor.FileDocumentManager;
+import com.intellij.openapi.fileEditor.impl.LoadTextUtil;
+import com.intellij.openapi.util.TextRange;
+import com.intellij.openapi.vfs.VirtualFile;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Arrays;
+
+/**
+ * Offsets of lines of a file built in a single pass over its text, so ranges of all messages of the file
+ * are computed without the document. Every line takes three ints: start of the line and start and end of its content
+ * without leading and trailing whitespace. Offsets are the document ones, line separators are counted as a single char
+ */
+public class PhalyfusionLineTable {
+    private final int[] myOffsets;
+    private final int myLineCount;
+
+    private PhalyfusionLineTable(int[] offsets, int lineCount) {
+        myOffsets = offsets;
+        myLineCount = lineCount;
+    }
+
+    /**
+     * Unsaved changes are highlighted by on-the-fly runs, so the document wins over the file content
+     */
+    @Nullable
+    public static PhalyfusionLineTable build(@NotNull VirtualFile file) {
+        if (!file.isValid()) {
+            return null;
+        }
+
+        Document document = FileDocumentManager.getInstance().getCachedDocument(file);
+        return build(document != null ? document.getImmutableCharSequence() : LoadTextUtil.loadText(file));
+    }
+
+    @NotNull
+    public static PhalyfusionLineTable build(@NotNull CharSequence text) {
+        int[] offsets = new int[3 * 64];
+        int lineCount = 0;
+        int lineStart = 0;
+        int length = text.length();
+        for (int i = 0; i <= length; i++) {
+            if (i < length && text.charAt(i) != '\n') {
+                continue;
+            }
+
+            // Separators loaded from disk are converted, a stray '\r' is trimmed as whitespace
+            int contentStart = lineStart;
+            int contentEnd = i;
+            while (contentStart < contentEnd && Character.isWhitespace(text.charAt(contentStart))) {
+                contentStart++;
+            }
+            while (contentEnd > contentStart && Character.isWhitespace(text.charAt(contentEnd - 1))) {
+                contentEnd--;
+            }
+
+            if (3 * lineCount + 3 > offsets.length) {
+                offsets = Arrays.copyOf(offsets, offsets.length * 2);
+            }
+            offsets[3 * lineCount] = lineStart;
+            offsets[3 * lineCount + 1] = contentStart;
+            offsets[3 * lineCount + 2] = contentEnd;
+            lineCount++;
+            lineStart = i + 1;
+        }
+        return new PhalyfusionLineTable(offsets, lineCount);
+    }
+
+    public int getLineCount() {
+        return myLineCount;
+    }
+
+    /**
+     * Content of the line from the reported column, the whole content when the column is unknown or the first one
+     *
+     * @param line   one-based line number as reported by the tool
+     * @param column one-based column, 0 if unknown
+     * @return null for the line out of the file
+     */
+    @Nullable
+    public TextRange getRange(int line, int column) {
+        if (line < 1 || line > myLineCount) {
+            return null;
+        }
+
+        int base = 3 * (line - 1);
+        int start = myOffsets[base + 1];
+        int end = myOffsets[base + 2];
+        if (column > 1) {
+            int columnStart = myOffsets[base] + column - 1;
+            if (columnStart > start && columnStart < end) {
+                start = columnStart;
+            }
+        }
+        return new TextRange(start, end);
+    }
+}
@@ -1,20 +1,138 @@
 package ru.taptima.phalyfusion;
 
 import com.intellij.codeInsight.intention.IntentionAction;
-import com.intellij.psi.PsiFile;
+import com.intellij.openapi.util.TextRange;
+import com.intellij.openapi.vfs.VirtualFile;
 import com.jetbrains.php.tools.quality.QualityToolMessage;
 import com.jetbrains.php.tools.quality.QualityToolMessageProcessor;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
+import java.util.Arrays;
+
+/**
+ * Message keeps only id of the file in the index of its processor, PSI is resolved on demand.
+ * Range is computed from the line table of the file shared by all its messages and narrowed by the reported column.
+ * Equivalent messages of other analysers are folded into the message, their analysers are listed in its text
+ */
 public class PhalyfusionMessage extends QualityToolMessage {
-    private final PsiFile myFile;
+    private static final String FOLDED_PREFIX = " (also reported by ";
+    private static final String FOLDED_SEPARATOR = ", ";
+
+    private final PhalyfusionFileIndex myFileIndex;
+    private final int myFileId;
+    // One-based, 0 if unknown
+    private final int myColumn;
+    private String[] myFoldedAnalyzers;
 
     public PhalyfusionMessage(QualityToolMessageProcessor messageProcessor, int lineNum, Severity severity,
-                              String messageText, PsiFile file, IntentionAction... quickFix) {
+                              String messageText, PhalyfusionFileIndex fileIndex, int fileId, IntentionAction... quickFix) {
+        this(messageProcessor, lineNum, 0, severity, messageText, fileIndex, fileId, quickFix);
+    }
+
+    public PhalyfusionMessage(QualityToolMessageProcessor messageProcessor, int lineNum, int column, Severity severity,
+                              String messageText, PhalyfusionFileIndex fileIndex, int fileId, IntentionAction... quickFix) {
         super(messageProcessor, lineNum, severity, messageText, quickFix);
-        myFile = file;
+        myFileIndex = fileIndex;
+        myFileId = fileId;
+        myColumn = Math.max(0, column);
+    }
+
+    public int getFileId() {
+        return myFileId;
+    }
+
+    public VirtualFile getFile() {
+        return myFileIndex.getFile(myFileId);
+    }
+
+    public int getColumn() {
+        return myColumn;
+    }
+
+    @Override
+    public TextRange getTextRange() {
+        PhalyfusionLineTable lineTable = myFileIndex.getLineTable(myFileId);
+        TextRange range = lineTable != null ? lineTable.getRange(getLineNum(), myColumn) : null;
+        return range != null ? range : super.getTextRange();
+    }
+
+    /**
+     * @return false for the message without analyser prefix
+     */
+    public boolean isReportedBy(@Nullable String analyzer) {
+        if (analyzer == null) {
+            return false;
+        }
+        if (analyzer.equals(getAnalyzer(super.getMessageText()))) {
+            return true;
+        }
+        return myFoldedAnalyzers != null && Arrays.asList(myFoldedAnalyzers).contains(analyzer);
+    }
+
+    public void addFoldedAnalyzer(@NotNull String analyzer) {
+        if (isReportedBy(analyzer)) {
+            return;
+        }
+
+        if (myFoldedAnalyzers == null) {
+            myFoldedAnalyzers = new String[]{analyzer};
+        } else {
+            myFoldedAnalyzers = Arrays.copyOf(myFoldedAnalyzers, myFoldedAnalyzers.length + 1);
+            myFoldedAnalyzers[myFoldedAnalyzers.length - 1] = analyzer;
+        }
+    }
+
+    /**
+     * @return analysers of equivalent messages folded into this one or null
+     */
+    @Nullable
+    public String[] getFoldedAnalyzers() {
+        return myFoldedAnalyzers;
+    }
+
+    /**
+     * @return text reported by the analyser without the list of folded analysers
+     */
+    public String getPlainMessageText() {
+        return super.getMessageText();
+    }
+
+    @Override
+    public String getMessageText() {
+        String text = super.getMessageText();
+        return myFoldedAnalyzers == null ? text : text + FOLDED_PREFIX + String.join(FOLDED_SEPARATOR, myFoldedAnalyzers) + ")";
+    }
+
+    /**
+     * Phalyfusion prefixes messages with the name of the analyser, e.g. "phpstan: Undefined variable: $a"
+     */
+    @Nullable
+    public static String getAnalyzer(@NotNull String messageText) {
+        int colon = messageText.indexOf(':');
+        if (colon <= 0) {
+            return null;
+        }
+
+        for (int i = 0; i < colon; i++) {
+            char ch = messageText.charAt(i);
+            if (!(ch >= 'a' && ch <= 'z' || ch >= '0' && ch <= '9' || ch == '-' || ch == '_')) {
+                return null;
+            }
+        }
+        return messageText.substring(0, colon);
+    }
+
+    /**
+     * @return start of the list of folded analysers in the text of a folded message, e.g. a cached one, or -1
+     */
+    public static int findFoldedSuffix(@NotNull String messageText) {
+        int start = messageText.lastIndexOf(FOLDED_PREFIX);
+        return start > 0 && messageText.endsWith(")") ? start : -1;
     }
 
-    public PsiFile getFile() {
-        return myFile;
+    @NotNull
+    public static String[] parseFoldedAnalyzers(@NotNull String messageText, int suffixStart) {
+        return messageText.substring(suffixStart + FOLDED_PREFIX.length(), messageText.length() - 1).split(FOLDED_SEPARATOR);
     }
 }
@@ -3,25 +3,31 @@ package ru.taptima.phalyfusion;
 import com.intellij.codeHighlighting.HighlightDisplayLevel;
 import com.intellij.codeInsight.intention.IntentionAction;
 import com.intellij.codeInspection.util.IntentionFamilyName;
+import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.project.Project;
-import com.intellij.openapi.util.Pair;
 import com.intellij.openapi.util.SystemInfo;
 import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.openapi.vfs.VirtualFile;
 import com.intellij.psi.PsiFile;
 import com.jetbrains.php.tools.quality.QualityToolAnnotatorInfo;
 import com.jetbrains.php.tools.quality.QualityToolMessage;
 import com.jetbrains.php.tools.quality.QualityToolType;
 import com.jetbrains.php.tools.quality.QualityToolXmlMessageProcessor;
+import com.jetbrains.php.util.pathmapper.PhpPathMapper;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
-import org.xml.sax.Attributes;
-import org.xml.sax.InputSource;
-import org.xml.sax.SAXException;
+import ru.taptima.phalyfusion.baseline.PhalyfusionFingerprinter;
+import ru.taptima.phalyfusion.baseline.PhalyfusionLongHashSet;
 import ru.taptima.phalyfusion.configuration.PhalyfusionConfiguration;
+import ru.taptima.phalyfusion.folding.PhalyfusionIssueNormalizer;
+import ru.taptima.phalyfusion.folding.PhalyfusionMessageFolder;
+import ru.taptima.phalyfusion.remote.PhalyfusionRemoteSync;
+import ru.taptima.phalyfusion.statistics.PhalyfusionShardStatistics;
+import ru.taptima.phalyfusion.store.PhalyfusionMessagePool;
+import ru.taptima.phalyfusion.store.PhalyfusionMessageStore;
 
-import java.io.IOException;
 import java.util.*;
-import java.util.stream.Collectors;
+import java.util.function.Consumer;
 
 /**
  * All common tools all output as "checkstyle" format
@@ -36,91 +42,452 @@ import java.util.stream.Collectors;
  *
  * @author Daniel Espendiller <daniel@espendiller.net>
  */
-public class PhalyfusionMessageProcessor extends QualityToolXmlMessageProcessor {
+public class PhalyfusionMessageProcessor extends QualityToolXmlMessageProcessor implements CheckstyleStreamParser.Listener {
+    private static final Logger LOG = Logger.getInstance(PhalyfusionMessageProcessor.class);
+    private static final String SUPPRESSED_SUFFIX = " more messages suppressed";
     private final HighlightDisplayLevel myWarningsHighlightLevel;
     private final Set<String> lineMessages = new HashSet<>();
     private int myPrevLine = -1;
-    private String myFilePath = "";
-    private boolean isInFile = false;
     private final Project myProject;
-    private final Map<String, PsiFile> pathToPsi;
+    private final PhalyfusionFileIndex myFileIndex;
+    // Maps paths reported by tools launched with remote interpreter back to local files
+    private final PhpPathMapper myPathMapper;
+    // Root of the synced copy of the project on the interpreter host, if the tool analyses the copy
+    private final String mySyncRoot;
+    private final StringBuilder myPathBuffer = new StringBuilder();
+    private final CheckstyleStreamParser myParser = new CheckstyleStreamParser(this);
+    // Stderr of the tool, it is reported only when there is no report
+    private String myErrorOutput = "";
+    // Count of added messages per file id
+    private int[] myAddedCounts = new int[0];
+    private int mySuppressedCount = 0;
+    private int myMaxMessagesPerFile = 0;
+    private int myFileId = -1;
+    private PhalyfusionShardStatistics myStatistics = new PhalyfusionShardStatistics();
+    // Messages with fingerprints in the baseline are dropped, fingerprints of all messages are recorded if requested
+    private PhalyfusionLongHashSet myBaseline;
+    private PhalyfusionLongHashSet myRecordedFingerprints;
+    private PhalyfusionFingerprinter myFingerprinter;
+    // Equivalent messages of different analysers are folded into the first of them
+    private final PhalyfusionMessageFolder myFolder = new PhalyfusionMessageFolder();
+    // Messages which may be folded into are handled by their index in the list or in the packed store
+    private final List<PhalyfusionMessage> myFoldTargets = new ArrayList<>();
+    // Ids of analysers of dropped messages when there is no pool
+    private final Map<String, Integer> myAnalyzerIds = new HashMap<>();
+    // Messages of files are packed into the store when the pool of the run is set, internal errors are always kept as objects
+    private PhalyfusionMessagePool myPool;
+    private final PhalyfusionMessageStore myStore = new PhalyfusionMessageStore();
 
     public PhalyfusionMessageProcessor(QualityToolAnnotatorInfo info) {
+        this(info, new VirtualFile[] {info.getPsiFile().getVirtualFile()});
+    }
+
+    /**
+     * PSI of the files is not needed, it is resolved only for files with messages
+     */
+    public PhalyfusionMessageProcessor(QualityToolAnnotatorInfo info, VirtualFile[] files) {
         super(info);
 
         this.myWarningsHighlightLevel = HighlightDisplayLevel.WARNING;
         myProject = info.getProject();
-        pathToPsi = Arrays.stream(new PsiFile[] {getFile()}).map(it -> Pair.create(it.getVirtualFile().getPath(), it)).collect(Collectors.toMap(it -> it.first, it -> it.second));
+        myPathMapper = QualityToolUtil.getPathMapper(myProject, info.getInterpreterId());
+        mySyncRoot = PhalyfusionRemoteSync.getInstance(myProject).getSyncRoot(info.getInterpreterId());
+        myFileIndex = new PhalyfusionFileIndex(files.length);
+        for (VirtualFile file : files) {
+            if (file != null) {
+                myFileIndex.add(file);
+            }
+        }
+
+        PsiFile psiFile = getFile();
+        VirtualFile virtualFile = psiFile != null ? psiFile.getVirtualFile() : null;
+        if (virtualFile != null) {
+            myFileId = myFileIndex.add(virtualFile);
+        }
     }
 
-    public PhalyfusionMessageProcessor(QualityToolAnnotatorInfo info, PsiFile[] files) {
-        super(info);
+    public int getMaxMessagesPerFile() {
+        return myMaxMessagesPerFile;
+    }
 
-        this.myWarningsHighlightLevel = HighlightDisplayLevel.WARNING;
-        myProject = info.getProject();
-        pathToPsi = Arrays.stream(files).map(it -> Pair.create(it.getVirtualFile().getPath(), it)).collect(Collectors.toMap(it -> it.first, it -> it.second));
+    /**
+     * Messages exceeding the limit are dropped while the output is parsed. 0 means no limit
+     */
+    public void setMaxMessagesPerFile(int maxMessagesPerFile) {
+        myMaxMessagesPerFile = maxMessagesPerFile;
+    }
+
+    /**
+     * @param baseline    fingerprints of messages which are not reported
+     * @param isRecording whether fingerprints of all found messages are collected
+     */
+    public void setBaseline(@Nullable PhalyfusionLongHashSet baseline, boolean isRecording) {
+        myBaseline = baseline != null && !baseline.isEmpty() ? baseline : null;
+        myRecordedFingerprints = isRecording ? new PhalyfusionLongHashSet() : null;
+        myFingerprinter = myBaseline != null || isRecording ? new PhalyfusionFingerprinter(myProject) : null;
     }
 
+    /**
+     * @return fingerprints of all found messages or null if they are not recorded
+     */
+    @Nullable
+    public PhalyfusionLongHashSet getRecordedFingerprints() {
+        return myRecordedFingerprints;
+    }
+
+    /**
+     * Messages of files are kept as packed records with texts interned in the pool and are built only when they are iterated
+     */
+    public void setMessagePool(@Nullable PhalyfusionMessagePool pool) {
+        myPool = pool;
+    }
+
+    @NotNull
+    public PhalyfusionShardStatistics getStatistics() {
+        return myStatistics;
+    }
+
+    public void setStatistics(@NotNull PhalyfusionShardStatistics statistics) {
+        myStatistics = statistics;
+    }
+
+    /**
+     * Whole output is handled by the streaming parser, so SAX parsing of separate messages is not used
+     */
     protected XMLMessageHandler getXmlMessageHandler() {
-        return new CheckstyleXmlMessageHandler();
+        return null;
+    }
+
+    @Override
+    public void parseLine(String line) {
+        long start = System.nanoTime();
+        myParser.feed(line);
+        myStatistics.addParseTime(System.nanoTime() - start, line.length());
+    }
+
+    /**
+     * Stderr is not a part of the report, warnings printed there by analysers are ignored when the report is found
+     */
+    public void setErrorOutput(@NotNull String errorOutput) {
+        myErrorOutput = errorOutput;
+    }
+
+    @Override
+    public void done() {
+        super.done();
+
+        String output = myParser.getUnrecognizedOutput();
+        if (!myErrorOutput.isEmpty()) {
+            output = output.isEmpty() ? myErrorOutput : output + "\n" + myErrorOutput;
+        }
+        if (!myParser.isRootFound() && !output.isEmpty()) {
+            addMessage(new QualityToolMessage(this, -1, QualityToolMessage.Severity.INTERNAL_ERROR, output));
+        } else if (!myErrorOutput.isEmpty()) {
+            LOG.info("Phalyfusion error output: " + myErrorOutput);
+        }
     }
 
     public int getMessageStart(@NotNull String line) {
-        if (isInFile) {
-            int end = processFile(line, 0);
-            if (end == -1) {
-                return -1;
+        return -1;
+    }
+
+    public int getMessageEnd(@NotNull String line) {
+        return -1;
+    }
+
+    @Override
+    public void fileStarted(@NotNull CheckstyleStreamParser.Tag tag) {
+        // Path is built in the reused buffer, so no strings are allocated for known files
+        StringBuilder filePath = myPathBuffer;
+        filePath.setLength(0);
+        tag.appendJoinedAttribute("name", filePath);
+
+        if (SystemInfo.isWindows && !isAbsolute(filePath) && myProject.getBasePath() != null) {
+            filePath.insert(0, '/').insert(0, myProject.getBasePath());
+        }
+
+        for (int i = 0; i < filePath.length(); i++) {
+            if (filePath.charAt(i) == '\\') {
+                filePath.setCharAt(i, '/');
             }
+        }
+
+        int fileId = myFileIndex.find(filePath);
+        if (fileId < 0 && (filePath.indexOf("/./") >= 0 || filePath.indexOf("/../") >= 0)) {
+            fileId = myFileIndex.find(FileUtil.toCanonicalPath(filePath.toString()));
+        }
+        if (fileId < 0 && mySyncRoot != null) {
+            String localPath = PhalyfusionRemoteSync.getInstance(myProject).toLocalPath(mySyncRoot, filePath);
+            fileId = localPath != null ? myFileIndex.find(localPath) : -1;
+        }
+        if (fileId < 0 && myPathMapper != null) {
+            VirtualFile localFile = myPathMapper.getLocalFile(filePath.toString());
+            fileId = localFile != null ? myFileIndex.find(localFile.getPath()) : -1;
+        }
+        if (fileId >= 0) {
+            myFileId = fileId;
+        }
+
+        mySuppressedCount = 0;
+    }
 
-            line = line.substring(end);
+    @Override
+    public void fileFinished() {
+        myPrevLine = -1;
+        lineMessages.clear();
+        myFolder.clear();
+
+        if (mySuppressedCount > 0) {
+            addFileMessage(myFileId, 1, 0, QualityToolMessage.Severity.WARNING, mySuppressedCount + SUPPRESSED_SUFFIX, null);
+            mySuppressedCount = 0;
         }
+    }
 
-        int messageStart = line.indexOf("<file");
-        if (messageStart < 0) {
-            messageStart = line.indexOf("</file");
-            if (messageStart > -1) {
-                myFilePath = "";
-                return -1;
+    /**
+     * Convert to extract the attributes
+     *
+     * <error line="8" column="1" severity="error" message="Undefined variable: $td" />
+     */
+    @Override
+    public void messageFound(@NotNull CheckstyleStreamParser.Tag tag) {
+        QualityToolMessage.Severity severity;
+        if (tag.nameEquals("error")) {
+            severity = QualityToolMessage.Severity.ERROR;
+        } else if (tag.nameEquals("warning")) {
+            severity = QualityToolMessage.Severity.WARNING;
+        } else {
+            return;
+        }
+
+        boolean isLimited = myMaxMessagesPerFile > 0 && myFileId >= 0;
+        // Baselined messages do not count towards the limit, so they are checked first. Without a baseline the limit is checked
+        // before anything is decoded, fingerprints of suppressed messages are not recorded then
+        if (isLimited && myBaseline == null && getAddedCount(myFileId) >= myMaxMessagesPerFile) {
+            mySuppressedCount++;
+            return;
+        }
+
+        int currLine = tag.getIntAttribute("line", -1);
+        if (currLine != this.myPrevLine) {
+            this.lineMessages.clear();
+            this.myPrevLine = currLine;
+        }
+
+        String messageText = tag.getAttribute("message");
+        if (messageText != null && this.lineMessages.add(messageText)) {
+            long issueKey = getIssueKey(currLine, messageText);
+            if (isBaselined(myFileId, currLine, messageText)) {
+                registerDropped(myFileId, issueKey, messageText);
+                return;
             }
-            messageStart = line.indexOf("<error");
-            if (messageStart < 0) {
-                messageStart = line.indexOf("<warning");
+            if (fold(myFileId, issueKey, messageText, null)) {
+                return;
+            }
+            if (isLimited && getAddedCount(myFileId) >= myMaxMessagesPerFile) {
+                mySuppressedCount++;
+                return;
+            }
+
+            int column = tag.getIntAttribute("column", 0);
+            registerFolding(myFileId, issueKey, addFileMessage(myFileId, currLine, column, severity, messageText, null));
+            if (isLimited) {
+                myAddedCounts[myFileId]++;
             }
-        } else {
-            int nameStart = line.indexOf("name=") + 6;
-            processFile(line, nameStart);
-            messageStart = -1;
         }
+    }
 
-        return messageStart;
+    /**
+     * @return 0 for messages which are not folded, e.g. ones without analyser prefix
+     */
+    private static long getIssueKey(int line, @NotNull String messageText) {
+        String analyzer = PhalyfusionMessage.getAnalyzer(messageText);
+        return analyzer == null ? 0 : PhalyfusionIssueNormalizer.getIssueKey(line, messageText.substring(analyzer.length() + 1));
     }
 
-    private int processFile(@NotNull String line, int start) {
-        int end = line.indexOf('\"', start);
+    /**
+     * Adds analyser of the message to the equivalent message of another analyser.
+     * Messages of the same analyser are never folded, they are different issues with equal symbols.
+     * Equivalents of baselined messages of other analysers are dropped, so the baseline does not depend on the analyser
+     * which reported the issue first
+     *
+     * @param foldedAnalyzers analysers already folded into the message, e.g. into a cached one
+     * @return true if the message was folded or dropped
+     */
+    private boolean fold(int fileId, long issueKey, @NotNull String messageText, @Nullable String[] foldedAnalyzers) {
+        if (issueKey == 0 || fileId < 0 || !myFolder.contains(fileId, issueKey)) {
+            return false;
+        }
 
-        if (end == -1) {
-            myFilePath += line.substring(start);
-            isInFile = true;
-            return -1;
+        int target = myFolder.get(fileId, issueKey);
+        String analyzer = Objects.requireNonNull(PhalyfusionMessage.getAnalyzer(messageText));
+        List<String> analyzers = new ArrayList<>();
+        analyzers.add(analyzer);
+        if (foldedAnalyzers != null) {
+            Collections.addAll(analyzers, foldedAnalyzers);
+        }
+
+        if (PhalyfusionMessageFolder.isDropped(target)) {
+            int droppedAnalyzerId = PhalyfusionMessageFolder.getDroppedAnalyzer(target);
+            for (String foldedAnalyzer : analyzers) {
+                if (getAnalyzerId(foldedAnalyzer) == droppedAnalyzerId) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        for (String foldedAnalyzer : analyzers) {
+            if (!canFoldInto(target, foldedAnalyzer)) {
+                return false;
+            }
         }
 
-        myFilePath += line.substring(start, end);
+        for (String foldedAnalyzer : analyzers) {
+            if (myPool != null) {
+                myStore.addFoldedAnalyzer(target, myPool.internAnalyzer(foldedAnalyzer));
+            } else {
+                myFoldTargets.get(target).addFoldedAnalyzer(foldedAnalyzer);
+            }
+        }
+        myStatistics.messageFolded();
+        return true;
+    }
 
-        if (SystemInfo.isWindows && !FileUtil.isAbsolute(myFilePath)) {
-            myFilePath = myProject.getBasePath() + "/" + FileUtil.toCanonicalPath(myFilePath);
+    /**
+     * Analysers which do not fit into the mask of a packed message are not folded
+     */
+    private boolean canFoldInto(int target, @NotNull String analyzer) {
+        if (myPool == null) {
+            return !myFoldTargets.get(target).isReportedBy(analyzer);
         }
 
-        myFilePath = myFilePath.replace('\\', '/');
-        if (pathToPsi.containsKey(myFilePath)) {
-            myFile = pathToPsi.get(myFilePath);
+        int analyzerId = myPool.internAnalyzer(analyzer);
+        return analyzerId < PhalyfusionMessageStore.MAX_FOLDED_ANALYZERS && !myStore.isReportedBy(target, analyzerId);
+    }
+
+    private void registerDropped(int fileId, long issueKey, @NotNull String messageText) {
+        String analyzer = PhalyfusionMessage.getAnalyzer(messageText);
+        if (analyzer != null) {
+            registerFolding(fileId, issueKey, PhalyfusionMessageFolder.dropped(getAnalyzerId(analyzer)));
         }
+    }
 
-        isInFile = false;
-        return end;
+    private int getAnalyzerId(@NotNull String analyzer) {
+        return myPool != null ? myPool.internAnalyzer(analyzer) : myAnalyzerIds.computeIfAbsent(analyzer, it -> myAnalyzerIds.size());
     }
 
-    public int getMessageEnd(@NotNull String line) {
-        return line.indexOf("/>");
+    private void registerFolding(int fileId, long issueKey, int handle) {
+        if (issueKey != 0 && fileId >= 0) {
+            myFolder.putIfAbsent(fileId, issueKey, handle);
+        }
+    }
+
+    /**
+     * Packs the message into the store if the pool is set, otherwise adds it as an object
+     *
+     * @return handle of the message for folding
+     */
+    private int addFileMessage(int fileId, int lineNum, int column, @NotNull QualityToolMessage.Severity severity,
+                               @NotNull String messageText, @Nullable String[] foldedAnalyzers) {
+        if (myPool == null) {
+            var message = new PhalyfusionMessage(this, lineNum, column, severity, messageText, myFileIndex, fileId, getQuickFix(null));
+            if (foldedAnalyzers != null) {
+                for (String foldedAnalyzer : foldedAnalyzers) {
+                    message.addFoldedAnalyzer(foldedAnalyzer);
+                }
+            }
+            addMessage(message);
+            myFoldTargets.add(message);
+            return myFoldTargets.size() - 1;
+        }
+
+        String analyzer = PhalyfusionMessage.getAnalyzer(messageText);
+        int analyzerId = analyzer != null ? myPool.internAnalyzer(analyzer) : -1;
+        int textId = myPool.internText(analyzer != null ? messageText.substring(analyzer.length() + 1) : messageText);
+        int index = myStore.add(fileId, lineNum, Math.max(0, column), severity, analyzerId, textId);
+        if (foldedAnalyzers != null) {
+            for (String foldedAnalyzer : foldedAnalyzers) {
+                myStore.addFoldedAnalyzer(index, myPool.internAnalyzer(foldedAnalyzer));
+            }
+        }
+        myStatistics.messageAdded();
+        return index;
+    }
+
+    /**
+     * @return count of added messages including internal errors
+     */
+    public int getMessagesCount() {
+        return getMessages().size() + myStore.size();
+    }
+
+    /**
+     * Iterates messages of files. Packed messages are built for the call only, so the consumer should not keep them
+     */
+    public void forEachFileMessage(@NotNull Consumer<PhalyfusionMessage> consumer) {
+        for (QualityToolMessage message : getMessages()) {
+            if (message instanceof PhalyfusionMessage) {
+                consumer.accept((PhalyfusionMessage) message);
+            }
+        }
+
+        for (int i = 0; i < myStore.size(); i++) {
+            consumer.accept(buildMessage(i));
+        }
+    }
+
+    @NotNull
+    private PhalyfusionMessage buildMessage(int index) {
+        int analyzerId = myStore.getAnalyzerId(index);
+        String text = myPool.getText(myStore.getTextId(index));
+        if (analyzerId >= 0) {
+            text = myPool.getAnalyzer(analyzerId) + ":" + text;
+        }
+
+        var message = new PhalyfusionMessage(this, myStore.getLine(index), myStore.getColumn(index), myStore.getSeverity(index),
+                text, myFileIndex, myStore.getFileId(index), getQuickFix(null));
+        long folded = myStore.getFoldedAnalyzers(index);
+        for (int id = 0; folded != 0; id++, folded >>>= 1) {
+            if ((folded & 1) != 0) {
+                message.addFoldedAnalyzer(myPool.getAnalyzer(id));
+            }
+        }
+        return message;
+    }
+
+    /**
+     * Also records fingerprint of the message when recording is enabled
+     */
+    private boolean isBaselined(int fileId, int line, @NotNull String messageText) {
+        if (myFingerprinter == null) {
+            return false;
+        }
+
+        VirtualFile file = myFileIndex.getFile(fileId);
+        if (file == null) {
+            return false;
+        }
+
+        long fingerprint = myFingerprinter.fingerprint(file, line, messageText);
+        if (myRecordedFingerprints != null) {
+            myRecordedFingerprints.add(fingerprint);
+        }
+        return myBaseline != null && myBaseline.contains(fingerprint);
+    }
+
+    private int getAddedCount(int fileId) {
+        if (fileId >= myAddedCounts.length) {
+            myAddedCounts = Arrays.copyOf(myAddedCounts, Math.max(fileId + 1, myFileIndex.size()));
+        }
+        return myAddedCounts[fileId];
+    }
+
+    private static boolean isAbsolute(@NotNull CharSequence path) {
+        if (path.length() == 0) {
+            return false;
+        }
+
+        char first = path.charAt(0);
+        return first == '/' || first == '\\' || path.length() > 1 && path.charAt(1) == ':';
     }
 
     protected IntentionAction @NotNull [] getQuickFix(XMLMessageHandler messageHandler) {
@@ -146,62 +513,106 @@ public class PhalyfusionMessageProcessor extends QualityToolXmlMessageProcessor
         return true;
     }
 
-    /**
-     * Convert to extract the attributes
-     *
-     * <error line="8" column="1" severity="error" message="Undefined variable: $td" />
-     */
-    private static class CheckstyleXmlMessageHandler extends XMLMessageHandler {
-        private String message;
+    @Override
+    protected void addMessage(QualityToolMessage message) {
+        if (message.isInternalError()) {
+            message = new QualityToolMessage(this, message.getLineNum(), QualityToolMessage.Severity.INTERNAL_ERROR,
+                    message.getMessageText());
+        }
 
-        protected void parseTag(@NotNull String tagName, @NotNull Attributes attributes) {
-            if ("error".equals(tagName)) {
-                this.mySeverity = QualityToolMessage.Severity.ERROR;
-            } else if ("warning".equals(tagName)) {
-                this.mySeverity = QualityToolMessage.Severity.WARNING;
-            }
+        super.addMessage(message);
+        myStatistics.messageAdded();
+    }
 
-            this.myLineNumber = parseLineNumber(attributes.getValue("line"));
-            this.message = attributes.getValue("message");
+    /**
+     * Adds message which was reported for the file during one of previous runs
+     */
+    public void replayMessage(@NotNull VirtualFile file, int lineNum, int column, @NotNull QualityToolMessage.Severity severity,
+                              @NotNull String messageText) {
+        // Folded message is fingerprinted and folded by its own text, analysers folded into it are restored
+        String[] foldedAnalyzers = null;
+        int foldedSuffix = PhalyfusionMessage.findFoldedSuffix(messageText);
+        if (foldedSuffix >= 0) {
+            foldedAnalyzers = PhalyfusionMessage.parseFoldedAnalyzers(messageText, foldedSuffix);
+            messageText = messageText.substring(0, foldedSuffix);
         }
 
-        public String getMessageText() {
-            return this.message;
+        int fileId = myFileIndex.add(file);
+        // Notice about suppressed messages is not an issue, so it is neither baselined nor fingerprinted
+        if (foldedSuffix < 0 && PhalyfusionMessage.getAnalyzer(messageText) == null && messageText.endsWith(SUPPRESSED_SUFFIX)) {
+            addFileMessage(fileId, lineNum, column, severity, messageText, null);
+            return;
         }
 
-        public boolean isStatusValid() {
-            return this.myLineNumber >= -1;
+        long issueKey = getIssueKey(lineNum, messageText);
+        if (isBaselined(fileId, lineNum, messageText)) {
+            registerDropped(fileId, issueKey, messageText);
+            return;
+        }
+        if (fold(fileId, issueKey, messageText, foldedAnalyzers)) {
+            return;
         }
+
+        registerFolding(fileId, issueKey, addFileMessage(fileId, lineNum, column, severity, messageText, foldedAnalyzers));
     }
 
-    @Override
-    protected void processMessage(InputSource source) throws SAXException, IOException {
-        QualityToolXmlMessageProcessor.XMLMessageHandler messageHandler = this.getXmlMessageHandler();
-        this.mySAXParser.parse(source, messageHandler);
-        if (messageHandler.isStatusValid()) {
-            PhalyfusionMessage qualityToolMessage = new PhalyfusionMessage(this, messageHandler.getLineNumber(),
-                    messageHandler.getSeverity(), messageHandler.getMessageText(), myFile, this.getQuickFix(messageHandler));
-            int currLine = qualityToolMessage.getLineNum();
-            if (currLine != this.myPrevLine) {
-                this.lineMessages.clear();
-                this.myPrevLine = currLine;
+    /**
+     * Moves messages found by another processor of the run, e.g. by a processor of a part of the files analysed separately.
+     * The other processor has the same baseline and limit, so its messages are already filtered and are moved as they are
+     */
+    public synchronized void adoptMessages(@NotNull PhalyfusionMessageProcessor other) {
+        // Ids of the files of the other processor in this one, -1 for files which are not seen yet
+        int[] fileIds = new int[other.myFileIndex.size()];
+        Arrays.fill(fileIds, -1);
+
+        for (QualityToolMessage message : other.getMessages()) {
+            if (!(message instanceof PhalyfusionMessage)) {
+                addMessage(new QualityToolMessage(this, message.getLineNum(), message.getSeverity(), message.getMessageText()));
+                continue;
             }
 
-            String messageText = qualityToolMessage.getMessageText();
-            if (this.lineMessages.add(messageText)) {
-                this.addMessage(qualityToolMessage);
+            var fileMessage = (PhalyfusionMessage) message;
+            int fileId = adoptFile(other, fileMessage.getFileId(), fileIds);
+            if (fileId >= 0) {
+                addFileMessage(fileId, fileMessage.getLineNum(), fileMessage.getColumn(), fileMessage.getSeverity(),
+                        fileMessage.getPlainMessageText(), fileMessage.getFoldedAnalyzers());
             }
         }
-    }
 
-    @Override
-    protected void addMessage(QualityToolMessage message) {
-        if (message.isInternalError()) {
-            message = new QualityToolMessage(this, message.getLineNum(), QualityToolMessage.Severity.INTERNAL_ERROR,
-                    message.getMessageText());
+        if (other.myStore.size() > 0) {
+            for (int i = 0; i < other.myStore.size(); i++) {
+                adoptFile(other, other.myStore.getFileId(i), fileIds);
+            }
+            if (myPool != null && myPool == other.myPool) {
+                myStore.addAll(other.myStore, fileIds);
+                myStatistics.messagesAdded(other.myStore.size());
+            } else {
+                for (int i = 0; i < other.myStore.size(); i++) {
+                    var message = other.buildMessage(i);
+                    addFileMessage(adoptFile(other, message.getFileId(), fileIds), message.getLineNum(), message.getColumn(),
+                            message.getSeverity(), message.getPlainMessageText(), message.getFoldedAnalyzers());
+                }
+            }
         }
 
-        super.addMessage(message);
+        if (myRecordedFingerprints != null && other.myRecordedFingerprints != null) {
+            myRecordedFingerprints.addAll(other.myRecordedFingerprints);
+        }
+        myStatistics.addTimes(other.getStatistics());
+    }
+
+    /**
+     * @return id of the file of the other processor in this one
+     */
+    private int adoptFile(@NotNull PhalyfusionMessageProcessor other, int otherFileId, @NotNull int[] fileIds) {
+        if (otherFileId < 0) {
+            return -1;
+        }
+        if (fileIds[otherFileId] < 0) {
+            VirtualFile file = other.myFileIndex.getFile(otherFileId);
+            fileIds[otherFileId] = file != null ? myFileIndex.add(file) : -1;
+        }
+        return fileIds[otherFileId];
     }
 
     @Override
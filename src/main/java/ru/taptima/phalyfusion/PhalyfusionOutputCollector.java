@@ -0,0 +1,29 @@
+package ru.taptima.phalyfusion;
+
+import com.jetbrains.php.tools.quality.QualityToolAnnotatorInfo;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Collects plain output of the tool, e.g. of "help" command
+ */
+public class PhalyfusionOutputCollector extends PhalyfusionMessageProcessor {
+    private final StringBuilder myOutput = new StringBuilder();
+
+    public PhalyfusionOutputCollector(QualityToolAnnotatorInfo info) {
+        super(info);
+    }
+
+    @Override
+    public void parseLine(String line) {
+        myOutput.append(line);
+    }
+
+    @Override
+    public void done() {
+    }
+
+    @NotNull
+    public String getOutput() {
+        return myOutput.toString();
+    }
+}
@@ -0,0 +1,136 @@
+package ru.taptima.phalyfusion;
+
+import com.intellij.execution.ExecutionException;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.progress.ProgressManager;
+import com.intellij.openapi.util.text.StringUtil;
+import com.intellij.util.concurrency.AppExecutorUtil;
+import com.jetbrains.php.config.interpreters.PhpSdkFileTransfer;
+import com.jetbrains.php.tools.quality.QualityToolAnnotatorInfo;
+import com.jetbrains.php.tools.quality.QualityToolProcessCreator;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.File;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Options supported by the tool are found out from output of "analyse --help". The tool is asked once per binary:
+ * a local tool is known by its path, modification time and size, so an upgraded tool is asked again, answers of remote
+ * tools expire. Failed requests are not remembered. Concurrent callers wait for the request of the first one
+ */
+public class PhalyfusionToolOptions {
+    private static final Logger LOG = Logger.getInstance(PhalyfusionToolOptions.class);
+    private static final long REMOTE_TTL_MS = TimeUnit.MINUTES.toMillis(10);
+    private static final long POLL_INTERVAL_MS = 50;
+
+    private static final Map<String, Entry> ENTRIES = new ConcurrentHashMap<>();
+
+    private static class Entry {
+        private final CompletableFuture<String> myOutput = new CompletableFuture<>();
+        private final boolean isRemote;
+        private final long myCreatedAt = System.currentTimeMillis();
+
+        Entry(boolean remote) {
+            isRemote = remote;
+        }
+
+        boolean isExpired() {
+            return isRemote && System.currentTimeMillis() - myCreatedAt > REMOTE_TTL_MS;
+        }
+    }
+
+    private PhalyfusionToolOptions() {
+    }
+
+    /**
+     * Waits for the help of the tool, the tool is asked in the calling thread if nobody asked it yet
+     *
+     * @return help or empty string if the tool fails to answer
+     */
+    @NotNull
+    public static String getHelpOutput(@NotNull QualityToolAnnotatorInfo annotatorInfo, @NotNull PhpSdkFileTransfer transfer) {
+        var output = request(annotatorInfo, transfer, false).myOutput;
+        while (true) {
+            ProgressManager.checkCanceled();
+            try {
+                return output.get(POLL_INTERVAL_MS, TimeUnit.MILLISECONDS);
+            } catch (TimeoutException ignored) {
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return "";
+            } catch (java.util.concurrent.ExecutionException e) {
+                return "";
+            }
+        }
+    }
+
+    /**
+     * Never waits, so it is safe to call during highlighting
+     *
+     * @return help or null if it is not known yet, the tool is asked in the background then
+     */
+    @Nullable
+    public static String getKnownHelpOutput(@NotNull QualityToolAnnotatorInfo annotatorInfo, @NotNull PhpSdkFileTransfer transfer) {
+        return request(annotatorInfo, transfer, true).myOutput.getNow(null);
+    }
+
+    @NotNull
+    private static Entry request(@NotNull QualityToolAnnotatorInfo annotatorInfo, @NotNull PhpSdkFileTransfer transfer, boolean isBackground) {
+        String key = getKey(annotatorInfo);
+        Entry entry = ENTRIES.get(key);
+        if (entry != null && !entry.isExpired()) {
+            return entry;
+        }
+
+        // The tool is launched out of the map operation, so other tools are not blocked by it
+        Entry created = new Entry(StringUtil.isNotEmpty(annotatorInfo.getInterpreterId()));
+        entry = ENTRIES.compute(key, (it, current) -> current == null || current.isExpired() ? created : current);
+        if (entry == created) {
+            if (isBackground) {
+                AppExecutorUtil.getAppExecutorService().execute(() -> askTool(key, created, annotatorInfo, transfer));
+            } else {
+                askTool(key, created, annotatorInfo, transfer);
+            }
+        }
+        return entry;
+    }
+
+    private static void askTool(@NotNull String key, @NotNull Entry entry, @NotNull QualityToolAnnotatorInfo annotatorInfo,
+                                @NotNull PhpSdkFileTransfer transfer) {
+        String output = "";
+        try {
+            var collector = new PhalyfusionOutputCollector(annotatorInfo);
+            QualityToolProcessCreator.runToolProcess(annotatorInfo, null, collector,
+                    QualityToolUtil.getWorkingDirectoryFromAnnotator(annotatorInfo), transfer, null, List.of("analyse", "--help"));
+            output = collector.getOutput();
+        } catch (ExecutionException e) {
+            LOG.warn("Failed to check Phalyfusion options", e);
+        } finally {
+            if (output.isEmpty()) {
+                ENTRIES.remove(key, entry);
+            }
+            entry.myOutput.complete(output);
+        }
+    }
+
+    /**
+     * Modification time and size of a local tool are a part of the key, remote tool can not be checked cheaply
+     */
+    @NotNull
+    private static String getKey(@NotNull QualityToolAnnotatorInfo annotatorInfo) {
+        String interpreterId = StringUtil.notNullize(annotatorInfo.getInterpreterId());
+        String toolPath = annotatorInfo.getToolPath();
+        if (!interpreterId.isEmpty()) {
+            return interpreterId + ":" + toolPath;
+        }
+
+        File tool = new File(toolPath);
+        return ":" + toolPath + ":" + tool.lastModified() + ":" + tool.length();
+    }
+}
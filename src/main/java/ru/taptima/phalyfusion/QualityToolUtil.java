@@ -1,20 +1,31 @@
 package ru.taptima.phalyfusion;
 
-import com.intellij.execution.ExecutionException;
 import com.intellij.openapi.project.Project;
-import com.intellij.openapi.project.ProjectUtil;
-import com.jetbrains.php.config.interpreters.PhpInterpreter;
+import com.intellij.openapi.util.text.StringUtil;
 import com.jetbrains.php.config.interpreters.PhpInterpretersManagerImpl;
-import com.jetbrains.php.run.remote.PhpRemoteInterpreterManager;
+import com.jetbrains.php.config.interpreters.PhpSdkAdditionalData;
+import com.jetbrains.php.config.interpreters.PhpSdkFileTransfer;
 import com.jetbrains.php.tools.quality.QualityToolAnnotatorInfo;
 import com.jetbrains.php.util.pathmapper.PhpPathMapper;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
+import ru.taptima.phalyfusion.remote.PhalyfusionPathMapperCache;
+import ru.taptima.phalyfusion.remote.PhalyfusionRemoteSync;
+
+import java.util.Arrays;
 
 /**
  * @author Daniel Espendiller <daniel@espendiller.net>
  */
 public class QualityToolUtil {
+    /**
+     * Path mapper of remote interpreter or null for local one
+     */
+    @Nullable
+    public static PhpPathMapper getPathMapper(@NotNull Project project, @Nullable String interpreterId) {
+        return PhalyfusionPathMapperCache.getInstance(project).getPathMapper(interpreterId);
+    }
+
     /**
      * Psalm needs a working directory which is the project; for remote we need to resolve it
      *
@@ -22,29 +33,36 @@ public class QualityToolUtil {
      */
     @Nullable
     private static String getRemotePath(@NotNull Project project, @NotNull String interpreterId) {
-        PhpInterpreter interpreter = PhpInterpretersManagerImpl.getInstance(project).findInterpreterById(interpreterId);
-        if (interpreter == null || !interpreter.isRemote()) {
-            return null;
-        }
+        return PhalyfusionPathMapperCache.getInstance(project).getRemoteWorkingDirectory(interpreterId);
+    }
 
-        PhpRemoteInterpreterManager instance = PhpRemoteInterpreterManager.getInstance();
-        if (instance == null) {
-            return null;
+    /**
+     * Converts local paths to paths on the interpreter host. Paths are returned as is for local interpreter
+     */
+    @NotNull
+    public static String[] toInterpreterPaths(@NotNull Project project, @Nullable String interpreterId, @NotNull String[] localPaths) {
+        var sync = PhalyfusionRemoteSync.getInstance(project);
+        if (sync.getSyncRoot(interpreterId) != null) {
+            return Arrays.stream(localPaths).map(path -> {
+                String remotePath = sync.toRemotePath(interpreterId, path);
+                return remotePath != null ? remotePath : path;
+            }).toArray(String[]::new);
         }
 
-        PhpPathMapper pathMapper;
-        try {
-            pathMapper = instance.createPathMapper(project, interpreter.getPhpSdkAdditionalData()).createPathMapper(project);
-        } catch (ExecutionException e) {
-            return null;
+        PhpPathMapper pathMapper = getPathMapper(project, interpreterId);
+        if (pathMapper == null) {
+            return localPaths;
         }
 
-        var projectDir = ProjectUtil.guessProjectDir(project);
-        if (projectDir == null) {
-            return null;
-        }
+        return Arrays.stream(localPaths).map(pathMapper::getRemoteFilePath).toArray(String[]::new);
+    }
 
-        return pathMapper.getRemoteFilePath(projectDir);
+    @NotNull
+    public static PhpSdkFileTransfer getSdkFileTransfer(@NotNull QualityToolAnnotatorInfo<?> annotatorInfo) {
+        String id = annotatorInfo.getInterpreterId();
+        PhpSdkAdditionalData sdkData
+                = StringUtil.isEmpty(id) ? null : PhpInterpretersManagerImpl.getInstance(annotatorInfo.getProject()).findInterpreterDataById(id);
+        return PhpSdkFileTransfer.getSdkFileTransfer(sdkData);
     }
 
     /**
@@ -56,6 +74,10 @@ public class QualityToolUtil {
 
         String workingDir = null;
         if (interpreterId != null) {
+            // Synced copy of the project is used instead of the mapped project directory
+            workingDir = PhalyfusionRemoteSync.getInstance(annotatorInfo.getProject()).getSyncRoot(interpreterId);
+        }
+        if (workingDir == null && interpreterId != null) {
             workingDir = QualityToolUtil.getRemotePath(annotatorInfo.getProject(), interpreterId);
         }
 
@@ -0,0 +1,58 @@
+package ru.taptima.phalyfusion.action;
+
+import com.intellij.notification.Notification;
+import com.intellij.notification.NotificationType;
+import com.intellij.notification.Notifications;
+import com.intellij.openapi.actionSystem.AnAction;
+import com.intellij.openapi.actionSystem.AnActionEvent;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.ui.Messages;
+import org.jetbrains.annotations.NotNull;
+import ru.taptima.phalyfusion.baseline.PhalyfusionBaseline;
+
+import java.io.IOException;
+
+/**
+ * Saves messages of the last Phalyfusion inspection run as the baseline, so they are not reported anymore.
+ * Runs record messages only after the snapshot is requested, so the first invocation requests it
+ */
+public class PhalyfusionBaselineAction extends AnAction {
+    private static final String GROUP_ID = "PHP External Quality Tools";
+
+    @Override
+    public void actionPerformed(@NotNull AnActionEvent event) {
+        Project project = getEventProject(event);
+        if (project == null) {
+            return;
+        }
+
+        PhalyfusionBaseline baseline = PhalyfusionBaseline.getInstance(project);
+        if (!baseline.hasLastRun()) {
+            baseline.requestSnapshot();
+            showInfo("Baseline is not saved", "Run Phalyfusion on the project, its results will be recorded. Then save the baseline again",
+                    NotificationType.INFORMATION);
+            return;
+        }
+        if (!baseline.isLastRunComplete() && Messages.showYesNoDialog(project,
+                "The last Phalyfusion run did not cover the whole project. Messages of other files will be reported again. Save baseline anyway?",
+                "Save Phalyfusion Baseline", Messages.getQuestionIcon()) != Messages.YES) {
+            return;
+        }
+
+        try {
+            int count = baseline.saveLastRun();
+            showInfo("Baseline is saved", count + " messages are written to " + baseline.getFile().getPath(), NotificationType.INFORMATION);
+        } catch (IOException e) {
+            showInfo("Can not save baseline", e.getMessage(), NotificationType.ERROR);
+        }
+    }
+
+    @Override
+    public void update(@NotNull AnActionEvent e) {
+        e.getPresentation().setEnabled(getEventProject(e) != null);
+    }
+
+    private static void showInfo(@NotNull String prefix, @NotNull String message, @NotNull NotificationType type) {
+        Notifications.Bus.notify(new Notification(GROUP_ID, "Phalyfusion", prefix + ": " + message, type, null));
+    }
+}
@@ -0,0 +1,120 @@
+package ru.taptima.phalyfusion.action;
+
+import com.intellij.analysis.AnalysisScope;
+import com.intellij.codeInspection.InspectionManager;
+import com.intellij.codeInspection.actions.RunInspectionIntention;
+import com.intellij.codeInspection.ex.GlobalInspectionContextImpl;
+import com.intellij.codeInspection.ex.InspectionManagerEx;
+import com.intellij.codeInspection.ex.InspectionToolWrapper;
+import com.intellij.execution.ExecutionException;
+import com.intellij.notification.Notification;
+import com.intellij.notification.NotificationType;
+import com.intellij.notification.Notifications;
+import com.intellij.openapi.actionSystem.AnAction;
+import com.intellij.openapi.actionSystem.AnActionEvent;
+import com.intellij.openapi.fileEditor.FileDocumentManager;
+import com.intellij.openapi.progress.ProgressIndicator;
+import com.intellij.openapi.progress.ProgressManager;
+import com.intellij.openapi.progress.Task;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.vcs.VcsException;
+import com.intellij.openapi.vcs.changes.LocalChangeList;
+import com.intellij.profile.codeInspection.InspectionProjectProfileManager;
+import org.jetbrains.annotations.NotNull;
+import ru.taptima.phalyfusion.vcs.PhalyfusionChangedLines;
+import ru.taptima.phalyfusion.vcs.PhalyfusionDiffCollector;
+import ru.taptima.phalyfusion.vcs.PhalyfusionDiffScopes;
+
+import java.util.Objects;
+
+/**
+ * Runs global Phalyfusion inspection only on files changed against the chosen base
+ */
+public class PhalyfusionDiffAction extends AnAction {
+    private static final String GROUP_ID = "PHP External Quality Tools";
+    private static final String INSPECTION_SHORT_NAME = "PhalyfusionGlobal";
+
+    @Override
+    public void actionPerformed(@NotNull AnActionEvent event) {
+        Project project = getEventProject(event);
+        if (project == null) {
+            return;
+        }
+
+        PhalyfusionDiffDialog dialog = new PhalyfusionDiffDialog(project);
+        if (!dialog.showAndGet()) {
+            return;
+        }
+
+        PhalyfusionDiffDialog.Base base = dialog.getBase();
+        LocalChangeList changeList = dialog.getChangeList();
+        String gitRef = dialog.getGitRef();
+        boolean isChangedLinesOnly = dialog.isChangedLinesOnly();
+
+        // Phalyfusion analyses files on disk
+        FileDocumentManager.getInstance().saveAllDocuments();
+
+        ProgressManager.getInstance().run(new Task.Backgroundable(project, "Collecting changes for Phalyfusion", true) {
+            private PhalyfusionChangedLines myChangedLines;
+
+            @Override
+            public void run(@NotNull ProgressIndicator indicator) {
+                try {
+                    switch (base) {
+                        case CHANGELIST:
+                            myChangedLines = PhalyfusionDiffCollector.collectChanges(project,
+                                    Objects.requireNonNull(changeList).getChanges(), indicator);
+                            break;
+                        case GIT_REF:
+                            myChangedLines = PhalyfusionDiffCollector.collectGitRef(project, gitRef, indicator);
+                            break;
+                        default:
+                            myChangedLines = PhalyfusionDiffCollector.collectWorkingTree(project, indicator);
+                    }
+                } catch (VcsException | ExecutionException e) {
+                    showInfo("Can not collect changes", e.getMessage(), NotificationType.ERROR);
+                }
+            }
+
+            @Override
+            public void onSuccess() {
+                if (myChangedLines == null) {
+                    return;
+                }
+                if (myChangedLines.isEmpty()) {
+                    showInfo("Phalyfusion did not run", "No changed files to analyse", NotificationType.INFORMATION);
+                    return;
+                }
+
+                runInspection(project, myChangedLines, isChangedLinesOnly);
+            }
+        });
+    }
+
+    @Override
+    public void update(@NotNull AnActionEvent e) {
+        e.getPresentation().setEnabled(getEventProject(e) != null);
+    }
+
+    private static void runInspection(@NotNull Project project, @NotNull PhalyfusionChangedLines changedLines, boolean isChangedLinesOnly) {
+        InspectionToolWrapper<?, ?> toolWrapper = InspectionProjectProfileManager.getInstance(project)
+                .getCurrentProfile().getInspectionTool(INSPECTION_SHORT_NAME, project);
+        if (toolWrapper == null) {
+            showInfo("Phalyfusion did not run", "Phalyfusion global validation inspection is not found", NotificationType.ERROR);
+            return;
+        }
+
+        AnalysisScope scope = new AnalysisScope(project, changedLines.getFiles());
+        if (isChangedLinesOnly) {
+            PhalyfusionDiffScopes.getInstance(project).register(scope, changedLines);
+        }
+
+        InspectionManagerEx managerEx = (InspectionManagerEx) InspectionManager.getInstance(project);
+        GlobalInspectionContextImpl context = RunInspectionIntention.createContext(toolWrapper, managerEx, null);
+        context.doInspections(scope);
+    }
+
+    private static void showInfo(@NotNull String prefix, @NotNull String message, @NotNull NotificationType type) {
+        Notifications.Bus.notify(new Notification(GROUP_ID, "Phalyfusion", prefix + ": " + message, type, null));
+    }
+}
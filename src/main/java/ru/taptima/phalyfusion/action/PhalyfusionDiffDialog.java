@@ -0,0 +1,129 @@
+package ru.taptima.phalyfusion.action;
+
+import com.intellij.ide.util.PropertiesComponent;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.ui.ComboBox;
+import com.intellij.openapi.ui.DialogWrapper;
+import com.intellij.openapi.ui.ValidationInfo;
+import com.intellij.openapi.vcs.changes.ChangeListManager;
+import com.intellij.openapi.vcs.changes.LocalChangeList;
+import com.intellij.ui.SimpleListCellRenderer;
+import com.intellij.ui.components.JBCheckBox;
+import com.intellij.ui.components.JBRadioButton;
+import com.intellij.ui.components.JBTextField;
+import com.intellij.util.ui.FormBuilder;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import javax.swing.*;
+
+/**
+ * Asks for the base of changes to analyse: working tree, changelist or git ref
+ */
+public class PhalyfusionDiffDialog extends DialogWrapper {
+    public enum Base {
+        WORKING_TREE,
+        CHANGELIST,
+        GIT_REF
+    }
+
+    private static final String BASE_KEY = "phalyfusion.diff.base";
+    private static final String GIT_REF_KEY = "phalyfusion.diff.gitRef";
+    private static final String CHANGED_LINES_ONLY_KEY = "phalyfusion.diff.changedLinesOnly";
+    private static final String DEFAULT_GIT_REF = "origin/master";
+
+    private final PropertiesComponent myProperties;
+    private final JBRadioButton myWorkingTreeButton = new JBRadioButton("Uncommitted changes");
+    private final JBRadioButton myChangeListButton = new JBRadioButton("Changelist:");
+    private final JBRadioButton myGitRefButton = new JBRadioButton("Changes against git ref:");
+    private final ComboBox<LocalChangeList> myChangeListComboBox;
+    private final JBTextField myGitRefField = new JBTextField();
+    private final JBCheckBox myChangedLinesOnlyCheckBox = new JBCheckBox("Report only messages on changed lines");
+
+    public PhalyfusionDiffDialog(@NotNull Project project) {
+        super(project);
+        myProperties = PropertiesComponent.getInstance(project);
+
+        ChangeListManager changeListManager = ChangeListManager.getInstance(project);
+        myChangeListComboBox = new ComboBox<>(changeListManager.getChangeLists().toArray(LocalChangeList[]::new));
+        myChangeListComboBox.setSelectedItem(changeListManager.getDefaultChangeList());
+        myChangeListComboBox.setRenderer(SimpleListCellRenderer.create("", LocalChangeList::getName));
+
+        ButtonGroup group = new ButtonGroup();
+        group.add(myWorkingTreeButton);
+        group.add(myChangeListButton);
+        group.add(myGitRefButton);
+
+        Base base = getStoredBase();
+        myWorkingTreeButton.setSelected(base == Base.WORKING_TREE);
+        myChangeListButton.setSelected(base == Base.CHANGELIST);
+        myGitRefButton.setSelected(base == Base.GIT_REF);
+        myGitRefField.setText(myProperties.getValue(GIT_REF_KEY, DEFAULT_GIT_REF));
+        myChangedLinesOnlyCheckBox.setSelected(myProperties.getBoolean(CHANGED_LINES_ONLY_KEY, false));
+
+        setTitle("Run Phalyfusion on Changes");
+        init();
+    }
+
+    @Override
+    protected @Nullable JComponent createCenterPanel() {
+        return FormBuilder.createFormBuilder()
+                .addComponent(myWorkingTreeButton)
+                .addLabeledComponent(myChangeListButton, myChangeListComboBox)
+                .addLabeledComponent(myGitRefButton, myGitRefField)
+                .addComponent(myChangedLinesOnlyCheckBox)
+                .getPanel();
+    }
+
+    @Override
+    protected @Nullable ValidationInfo doValidate() {
+        if (myGitRefButton.isSelected() && getGitRef().isEmpty()) {
+            return new ValidationInfo("Git ref is empty", myGitRefField);
+        }
+        if (myChangeListButton.isSelected() && getChangeList() == null) {
+            return new ValidationInfo("Changelist is not selected", myChangeListComboBox);
+        }
+        return null;
+    }
+
+    @Override
+    protected void doOKAction() {
+        myProperties.setValue(BASE_KEY, getBase().name());
+        myProperties.setValue(GIT_REF_KEY, getGitRef(), DEFAULT_GIT_REF);
+        myProperties.setValue(CHANGED_LINES_ONLY_KEY, isChangedLinesOnly());
+        super.doOKAction();
+    }
+
+    @NotNull
+    public Base getBase() {
+        if (myChangeListButton.isSelected()) {
+            return Base.CHANGELIST;
+        }
+        return myGitRefButton.isSelected() ? Base.GIT_REF : Base.WORKING_TREE;
+    }
+
+    @Nullable
+    public LocalChangeList getChangeList() {
+        return (LocalChangeList) myChangeListComboBox.getSelectedItem();
+    }
+
+    @NotNull
+    public String getGitRef() {
+        return myGitRefField.getText().trim();
+    }
+
+    public boolean isChangedLinesOnly() {
+        return myChangedLinesOnlyCheckBox.isSelected();
+    }
+
+    @NotNull
+    private Base getStoredBase() {
+        String value = myProperties.getValue(BASE_KEY, Base.WORKING_TREE.name());
+        for (Base base : Base.values()) {
+            if (base.name().equals(value)) {
+                return base;
+            }
+        }
+        return Base.WORKING_TREE;
+    }
+}
@@ -0,0 +1,157 @@
+package ru.taptima.phalyfusion.baseline;
+
+import com.intellij.openapi.components.ServiceManager;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.openapi.vfs.LocalFileSystem;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.*;
+
+/**
+ * Baseline of known messages which are not reported. Baseline is stored in the project root as a sorted array
+ * of message fingerprints, see {@link PhalyfusionFingerprinter}, so it can be committed along with phalyfusion.neon.
+ * File format: magic, version, count of fingerprints and the fingerprints as 64-bit values in ascending order
+ */
+public class PhalyfusionBaseline {
+    private static final Logger LOG = Logger.getInstance(PhalyfusionBaseline.class);
+    public static final String FILE_NAME = "phalyfusion-baseline.bin";
+    private static final int MAGIC = 0x50464231; // PFB1
+    private static final int VERSION = 1;
+
+    private final File myFile;
+    private PhalyfusionLongHashSet myFingerprints;
+    private long myLoadedTimestamp = -1;
+    private long myLoadedLength = -1;
+    private String myHash = "";
+
+    // Fingerprints of all messages of the last recorded inspection run, including messages matched by the baseline.
+    // Fingerprinting every message is expensive, so runs are recorded only after a snapshot is requested
+    private PhalyfusionLongHashSet myLastRun;
+    private boolean isLastRunComplete;
+    private boolean isSnapshotRequested = false;
+
+    public PhalyfusionBaseline(@NotNull Project project) {
+        myFile = new File(project.getBasePath(), FILE_NAME);
+    }
+
+    public static PhalyfusionBaseline getInstance(@NotNull Project project) {
+        return ServiceManager.getService(project, PhalyfusionBaseline.class);
+    }
+
+    @NotNull
+    public File getFile() {
+        return myFile;
+    }
+
+    /**
+     * File is read again only when its timestamp or length is changed
+     *
+     * @return fingerprints of the baseline or null if the project has no baseline
+     */
+    @Nullable
+    public synchronized PhalyfusionLongHashSet getFingerprints() {
+        long timestamp = myFile.lastModified();
+        long length = myFile.length();
+        if (timestamp != myLoadedTimestamp || length != myLoadedLength) {
+            myLoadedTimestamp = timestamp;
+            myLoadedLength = length;
+            load();
+        }
+        return myFingerprints;
+    }
+
+    /**
+     * @return hash of the baseline content, empty when there is no baseline
+     */
+    @NotNull
+    public synchronized String getHash() {
+        getFingerprints();
+        return myHash;
+    }
+
+    /**
+     * Next inspection runs record fingerprints of their messages till the snapshot is saved
+     */
+    public synchronized void requestSnapshot() {
+        isSnapshotRequested = true;
+    }
+
+    public synchronized boolean isSnapshotRequested() {
+        return isSnapshotRequested;
+    }
+
+    /**
+     * Remembers fingerprints of the finished run, they are written by {@link #saveLastRun()}
+     *
+     * @param isComplete false when the run did not cover the whole project
+     */
+    public synchronized void setLastRun(@NotNull PhalyfusionLongHashSet fingerprints, boolean isComplete) {
+        myLastRun = fingerprints;
+        isLastRunComplete = isComplete;
+    }
+
+    public synchronized boolean hasLastRun() {
+        return myLastRun != null;
+    }
+
+    public synchronized boolean isLastRunComplete() {
+        return isLastRunComplete;
+    }
+
+    /**
+     * @return count of saved fingerprints
+     */
+    public synchronized int saveLastRun() throws IOException {
+        if (myLastRun == null) {
+            throw new IllegalStateException("There are no results to save");
+        }
+
+        long[] values = myLastRun.toSortedArray();
+        FileUtil.createParentDirs(myFile);
+        try (var output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(myFile)))) {
+            output.writeInt(MAGIC);
+            output.writeInt(VERSION);
+            output.writeInt(values.length);
+            for (long value : values) {
+                output.writeLong(value);
+            }
+        }
+
+        myLoadedTimestamp = -1;
+        myLastRun = null;
+        isSnapshotRequested = false;
+        LocalFileSystem.getInstance().refreshAndFindFileByIoFile(myFile);
+        return values.length;
+    }
+
+    private void load() {
+        myFingerprints = null;
+        myHash = "";
+        if (!myFile.isFile()) {
+            return;
+        }
+
+        try (var input = new DataInputStream(new BufferedInputStream(new FileInputStream(myFile)))) {
+            if (input.readInt() != MAGIC || input.readInt() != VERSION) {
+                LOG.warn("Unsupported format of Phalyfusion baseline " + myFile);
+                return;
+            }
+
+            int count = input.readInt();
+            var fingerprints = new PhalyfusionLongHashSet(count);
+            long hash = count;
+            for (int i = 0; i < count; i++) {
+                long value = input.readLong();
+                fingerprints.add(value);
+                hash = hash * 31 + value;
+            }
+            myFingerprints = fingerprints;
+            myHash = count + ":" + Long.toHexString(hash);
+        } catch (IOException e) {
+            LOG.warn("Can not read Phalyfusion baseline " + myFile, e);
+        }
+    }
+}
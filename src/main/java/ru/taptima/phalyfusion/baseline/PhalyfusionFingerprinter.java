@@ -0,0 +1,135 @@
+package ru.taptima.phalyfusion.baseline;
+
+import com.intellij.openapi.editor.Document;
+import com.intellij.openapi.fileEditor.FileDocumentManager;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.vfs.VfsUtilCore;
+import com.intellij.openapi.vfs.VirtualFile;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Computes 64-bit fingerprints of messages for the baseline. Fingerprint is built from the project relative path,
+ * the message text with numbers and whitespace normalized and the trimmed text of the reported line.
+ * Line number itself is not used, so messages keep their fingerprints when code above them is added or removed
+ */
+public class PhalyfusionFingerprinter {
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private final String myBasePath;
+    // Text and line starts of the last file, messages of a file are reported together
+    private VirtualFile myFile;
+    private CharSequence myText;
+    private int[] myLineStarts;
+    private int myLineCount;
+
+    public PhalyfusionFingerprinter(@NotNull Project project) {
+        String basePath = project.getBasePath();
+        myBasePath = basePath != null ? basePath + "/" : null;
+    }
+
+    /**
+     * @param line one-based line number as reported by the tool
+     */
+    public long fingerprint(@NotNull VirtualFile file, int line, @NotNull String messageText) {
+        String path = file.getPath();
+        int pathStart = myBasePath != null && path.startsWith(myBasePath) ? myBasePath.length() : 0;
+
+        long hash = FNV_OFFSET;
+        for (int i = pathStart; i < path.length(); i++) {
+            hash = mix(hash, path.charAt(i));
+        }
+        hash = mix(hash, 0);
+        hash = hashNormalized(hash, messageText, 0, messageText.length(), true);
+        hash = mix(hash, 0);
+
+        if (file != myFile) {
+            loadFile(file);
+        }
+        if (myText != null && line >= 1 && line <= myLineCount) {
+            int start = myLineStarts[line - 1];
+            int end = line < myLineCount ? myLineStarts[line] : myText.length();
+            hash = hashNormalized(hash, myText, start, end, false);
+        }
+
+        return finish(hash);
+    }
+
+    private void loadFile(@NotNull VirtualFile file) {
+        myFile = file;
+        myText = null;
+        myLineCount = 0;
+
+        // Unsaved changes are analysed by on-the-fly runs, so the document wins over the file content
+        Document document = FileDocumentManager.getInstance().getCachedDocument(file);
+        try {
+            myText = document != null ? document.getImmutableCharSequence() : VfsUtilCore.loadText(file);
+        } catch (IOException e) {
+            return;
+        }
+
+        if (myLineStarts == null) {
+            myLineStarts = new int[256];
+        }
+        myLineStarts[myLineCount++] = 0;
+        for (int i = 0; i < myText.length(); i++) {
+            if (myText.charAt(i) == '\n') {
+                if (myLineCount == myLineStarts.length) {
+                    myLineStarts = Arrays.copyOf(myLineStarts, myLineCount * 2);
+                }
+                myLineStarts[myLineCount++] = i + 1;
+            }
+        }
+    }
+
+    /**
+     * Leading and trailing whitespace is skipped and inner whitespace runs are hashed as a single space.
+     * Digit runs of messages are hashed as a single '#', they often contain line numbers or counts
+     */
+    private static long hashNormalized(long hash, @NotNull CharSequence text, int start, int end, boolean isDigitsNormalized) {
+        boolean isSpace = false;
+        boolean isDigit = false;
+        boolean isStarted = false;
+        for (int i = start; i < end; i++) {
+            char ch = text.charAt(i);
+            if (Character.isWhitespace(ch)) {
+                isSpace = isStarted;
+                isDigit = false;
+                continue;
+            }
+            if (isSpace) {
+                hash = mix(hash, ' ');
+                isSpace = false;
+            }
+            isStarted = true;
+
+            if (isDigitsNormalized && ch >= '0' && ch <= '9') {
+                if (!isDigit) {
+                    hash = mix(hash, '#');
+                    isDigit = true;
+                }
+                continue;
+            }
+            isDigit = false;
+            hash = mix(hash, ch);
+        }
+        return hash;
+    }
+
+    private static long mix(long hash, int ch) {
+        return (hash ^ ch) * FNV_PRIME;
+    }
+
+    private static long finish(long hash) {
+        // Final avalanche, FNV alone leaves the high bits weak for short inputs
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
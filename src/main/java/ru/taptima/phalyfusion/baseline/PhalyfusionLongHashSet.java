@@ -0,0 +1,131 @@
+package ru.taptima.phalyfusion.baseline;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Arrays;
+
+/**
+ * Set of primitive longs in an open addressing table with linear probing, 8 bytes per slot and no boxing.
+ * Zero marks an empty slot, so zero value itself is stored in a separate flag
+ */
+public class PhalyfusionLongHashSet {
+    private long[] myTable;
+    private int mySize = 0;
+    private boolean hasZero = false;
+
+    public PhalyfusionLongHashSet() {
+        this(16);
+    }
+
+    public PhalyfusionLongHashSet(int expectedSize) {
+        myTable = new long[tableSizeFor(expectedSize)];
+    }
+
+    /**
+     * @return true if the value was not in the set
+     */
+    public boolean add(long value) {
+        if (value == 0) {
+            boolean isAdded = !hasZero;
+            hasZero = true;
+            return isAdded;
+        }
+
+        // Table is kept at most half full
+        if ((mySize + 1) * 2 > myTable.length) {
+            rehash(myTable.length * 2);
+        }
+
+        int mask = myTable.length - 1;
+        int slot = slotOf(value, mask);
+        while (myTable[slot] != 0) {
+            if (myTable[slot] == value) {
+                return false;
+            }
+            slot = (slot + 1) & mask;
+        }
+
+        myTable[slot] = value;
+        mySize++;
+        return true;
+    }
+
+    public void addAll(@NotNull PhalyfusionLongHashSet other) {
+        if (other.hasZero) {
+            add(0);
+        }
+        for (long value : other.myTable) {
+            if (value != 0) {
+                add(value);
+            }
+        }
+    }
+
+    public boolean contains(long value) {
+        if (value == 0) {
+            return hasZero;
+        }
+
+        int mask = myTable.length - 1;
+        int slot = slotOf(value, mask);
+        while (myTable[slot] != 0) {
+            if (myTable[slot] == value) {
+                return true;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return false;
+    }
+
+    public int size() {
+        return mySize + (hasZero ? 1 : 0);
+    }
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    /**
+     * @return values in ascending order
+     */
+    @NotNull
+    public long[] toSortedArray() {
+        long[] values = new long[size()];
+        int idx = 0;
+        if (hasZero) {
+            values[idx++] = 0;
+        }
+        for (long value : myTable) {
+            if (value != 0) {
+                values[idx++] = value;
+            }
+        }
+        Arrays.sort(values);
+        return values;
+    }
+
+    private void rehash(int tableSize) {
+        long[] oldTable = myTable;
+        myTable = new long[tableSize];
+        int mask = tableSize - 1;
+        for (long value : oldTable) {
+            if (value != 0) {
+                int slot = slotOf(value, mask);
+                while (myTable[slot] != 0) {
+                    slot = (slot + 1) & mask;
+                }
+                myTable[slot] = value;
+            }
+        }
+    }
+
+    private static int tableSizeFor(int expectedSize) {
+        return Integer.highestOneBit(Math.max(4, expectedSize) * 2 - 1) << 1;
+    }
+
+    private static int slotOf(long value, int mask) {
+        // Fingerprints are hashes already, the mix only spreads values with equal low bits
+        long mixed = value * 0x9E3779B97F4A7C15L;
+        return (int) (mixed >>> 32) & mask;
+    }
+}
@@ -0,0 +1,143 @@
+package ru.taptima.phalyfusion.batch;
+
+import com.intellij.execution.ExecutionException;
+import com.intellij.openapi.progress.ProgressManager;
+import com.intellij.openapi.vfs.VirtualFile;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import ru.taptima.phalyfusion.PhalyfusionMessageProcessor;
+import ru.taptima.phalyfusion.process.PhalyfusionTimeoutException;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * Launches the tool for a shard and isolates files which make it time out or crash. Failed set of files is split
+ * in halves until the failing files are found, so results of all other files are kept. Halves are analysed one by one
+ * on the thread of the shard, so bisection never runs more processes than the executor allows.
+ * Failures of both halves for other reason than timeout mean that the tool does not work at all, so bisection stops
+ */
+public class PhalyfusionBisectingLauncher implements PhalyfusionShardedExecutor.ShardLauncher {
+    // Limits number of failed launches per shard when everything times out, e.g. because the timeout is too small
+    private static final int MAX_FAILED_LAUNCHES = 16;
+
+    /**
+     * Launches the tool for the files, results are passed to the processor
+     */
+    public interface Launcher {
+        void launch(@NotNull VirtualFile[] files, @NotNull PhalyfusionMessageProcessor messageProcessor) throws ExecutionException;
+    }
+
+    /**
+     * Receives files without results, called from shard threads
+     */
+    public interface FailureListener {
+        /**
+         * The file fails being analysed alone while other files are analysed successfully
+         */
+        void fileIsolated(@NotNull VirtualFile file, @NotNull String error);
+
+        /**
+         * The tool fails regardless of the files
+         */
+        void filesFailed(@NotNull VirtualFile[] files, @NotNull String error);
+    }
+
+    private static class Failure {
+        private final String myMessage;
+        private final boolean isTimeout;
+
+        Failure(@NotNull String message, boolean timeout) {
+            myMessage = message;
+            isTimeout = timeout;
+        }
+    }
+
+    private final Launcher myLauncher;
+    private final Function<VirtualFile[], PhalyfusionMessageProcessor> myProcessorFactory;
+    private final FailureListener myFailureListener;
+
+    /**
+     * @param processorFactory creates processors for separate launches, their messages are adopted by the shard processor
+     */
+    public PhalyfusionBisectingLauncher(@NotNull Launcher launcher, @NotNull Function<VirtualFile[], PhalyfusionMessageProcessor> processorFactory,
+                                        @NotNull FailureListener failureListener) {
+        myLauncher = launcher;
+        myProcessorFactory = processorFactory;
+        myFailureListener = failureListener;
+    }
+
+    @Override
+    public void launch(@NotNull VirtualFile[] files, @NotNull PhalyfusionMessageProcessor messageProcessor) {
+        Failure failure = attempt(files, messageProcessor);
+        if (failure == null) {
+            return;
+        }
+        messageProcessor.getStatistics().setBisected();
+
+        // Crash of a single file launch proves nothing without successful launches of other files
+        if (files.length == 1 && !failure.isTimeout) {
+            myFailureListener.filesFailed(files, failure.myMessage);
+        } else {
+            bisect(files, failure, messageProcessor, new AtomicInteger(1));
+        }
+    }
+
+    private void bisect(@NotNull VirtualFile[] files, @NotNull Failure failure, @NotNull PhalyfusionMessageProcessor target,
+                        @NotNull AtomicInteger failedLaunches) {
+        if (files.length == 1) {
+            myFailureListener.fileIsolated(files[0], failure.myMessage);
+            return;
+        }
+        if (failedLaunches.get() >= MAX_FAILED_LAUNCHES) {
+            myFailureListener.filesFailed(files, failure.myMessage);
+            return;
+        }
+
+        VirtualFile[] left = Arrays.copyOfRange(files, 0, files.length / 2);
+        VirtualFile[] right = Arrays.copyOfRange(files, files.length / 2, files.length);
+
+        Failure leftFailure = attempt(left, target);
+        ProgressManager.checkCanceled();
+        Failure rightFailure = attempt(right, target);
+
+        if (leftFailure != null && rightFailure != null && !leftFailure.isTimeout && !rightFailure.isTimeout) {
+            myFailureListener.filesFailed(files, leftFailure.myMessage);
+            return;
+        }
+        if (leftFailure != null) {
+            failedLaunches.incrementAndGet();
+            bisect(left, leftFailure, target, failedLaunches);
+        }
+        if (rightFailure != null) {
+            failedLaunches.incrementAndGet();
+            bisect(right, rightFailure, target, failedLaunches);
+        }
+    }
+
+    /**
+     * Results of successful launch are adopted by the target, results of failed one are dropped
+     *
+     * @return null if the launch succeeded
+     */
+    @Nullable
+    private Failure attempt(@NotNull VirtualFile[] files, @NotNull PhalyfusionMessageProcessor target) {
+        PhalyfusionMessageProcessor processor = myProcessorFactory.apply(files);
+        try {
+            myLauncher.launch(files, processor);
+        } catch (PhalyfusionTimeoutException e) {
+            return new Failure(e.getMessage(), true);
+        } catch (ExecutionException e) {
+            return new Failure(e.getMessage(), false);
+        }
+
+        var internalError = processor.getInternalErrorMessage();
+        if (internalError != null) {
+            return new Failure(internalError.getMessageText(), false);
+        }
+
+        target.adoptMessages(processor);
+        return null;
+    }
+}
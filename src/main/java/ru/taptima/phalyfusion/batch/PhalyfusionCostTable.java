@@ -0,0 +1,174 @@
+package ru.taptima.phalyfusion.batch;
+
+import com.intellij.openapi.Disposable;
+import com.intellij.openapi.application.PathManager;
+import com.intellij.openapi.components.ServiceManager;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.openapi.vfs.VirtualFile;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.*;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Persistent table of analysis cost of files measured during previous batch runs, in microseconds.
+ * Duration of a shard is distributed between its files proportionally to their predicted cost and blended
+ * with the previous values. Cost of a file without history is predicted from its size and the average cost of a byte.
+ * Cost and size of a file are packed into a single long value
+ */
+public class PhalyfusionCostTable implements Disposable {
+    private static final Logger LOG = Logger.getInstance(PhalyfusionCostTable.class);
+    private static final int VERSION = 1;
+    private static final int MAX_ENTRIES = 200_000;
+    // Cost of a byte before anything was measured, only relative costs matter for balancing
+    private static final double DEFAULT_MICROS_PER_BYTE = 0.05;
+    // Minimal cost of a file, covers parsing of the tiniest files
+    private static final int MIN_COST_MICROS = 100;
+
+    private final File myTableFile;
+    private final Map<String, Long> myCosts = new HashMap<>();
+    // Totals of measured files used to predict cost of new files
+    private long myMeasuredMicros = 0;
+    private long myMeasuredBytes = 0;
+    private boolean isLoaded = false;
+    private boolean isModified = false;
+
+    public PhalyfusionCostTable(@NotNull Project project) {
+        myTableFile = new File(PathManager.getSystemPath() + "/phalyfusion/" + project.getLocationHash() + "/costs.table");
+    }
+
+    public static PhalyfusionCostTable getInstance(@NotNull Project project) {
+        return ServiceManager.getService(project, PhalyfusionCostTable.class);
+    }
+
+    /**
+     * @return predicted analysis cost of the file in microseconds
+     */
+    public synchronized long predict(@NotNull VirtualFile file) {
+        ensureLoaded();
+        Long entry = myCosts.get(file.getPath());
+        if (entry != null) {
+            return getCost(entry);
+        }
+
+        double microsPerByte = myMeasuredBytes > 0 ? (double) myMeasuredMicros / myMeasuredBytes : DEFAULT_MICROS_PER_BYTE;
+        return Math.max(MIN_COST_MICROS, (long) (file.getLength() * microsPerByte));
+    }
+
+    /**
+     * Distributes measured duration of the shard between its files
+     */
+    public synchronized void record(@NotNull VirtualFile[] shard, long durationNanos) {
+        ensureLoaded();
+        if (shard.length == 0 || durationNanos <= 0) {
+            return;
+        }
+
+        long[] predicted = new long[shard.length];
+        long predictedTotal = 0;
+        for (int i = 0; i < shard.length; i++) {
+            predicted[i] = predict(shard[i]);
+            predictedTotal += predicted[i];
+        }
+
+        double scale = durationNanos / 1000.0 / predictedTotal;
+        for (int i = 0; i < shard.length; i++) {
+            long measured = Math.max(MIN_COST_MICROS, Math.round(predicted[i] * scale));
+            Long previous = myCosts.get(shard[i].getPath());
+            // Previous measurement is kept with the same weight, so a single slow run does not ruin the balance
+            long cost = previous == null ? measured : (getCost(previous) + measured) / 2;
+            long entry = pack(cost, shard[i].getLength());
+            myCosts.put(shard[i].getPath(), entry);
+
+            if (previous != null) {
+                forget(previous);
+            }
+            myMeasuredMicros += getCost(entry);
+            myMeasuredBytes += getSize(entry);
+        }
+        isModified = true;
+
+        // Table is not ordered, so arbitrary entries are dropped when it is full
+        Iterator<String> iterator = myCosts.keySet().iterator();
+        while (myCosts.size() > MAX_ENTRIES && iterator.hasNext()) {
+            forget(myCosts.get(iterator.next()));
+            iterator.remove();
+        }
+    }
+
+    private void forget(long entry) {
+        myMeasuredMicros -= getCost(entry);
+        myMeasuredBytes -= getSize(entry);
+    }
+
+    private static long pack(long costMicros, long size) {
+        return Math.min(costMicros, 0xFFFFFFFFL) << 32 | Math.min(size, 0xFFFFFFFFL);
+    }
+
+    private static long getCost(long entry) {
+        return entry >>> 32;
+    }
+
+    private static long getSize(long entry) {
+        return entry & 0xFFFFFFFFL;
+    }
+
+    public synchronized void save() {
+        if (!isModified) {
+            return;
+        }
+
+        FileUtil.createParentDirs(myTableFile);
+        try (var output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(myTableFile)))) {
+            output.writeInt(VERSION);
+            output.writeInt(myCosts.size());
+            for (var entry : myCosts.entrySet()) {
+                output.writeUTF(entry.getKey());
+                output.writeLong(entry.getValue());
+            }
+            isModified = false;
+        } catch (IOException e) {
+            LOG.warn("Can not save Phalyfusion cost table", e);
+        }
+    }
+
+    private void ensureLoaded() {
+        if (isLoaded) {
+            return;
+        }
+
+        isLoaded = true;
+        if (!myTableFile.isFile()) {
+            return;
+        }
+
+        try (var input = new DataInputStream(new BufferedInputStream(new FileInputStream(myTableFile)))) {
+            if (input.readInt() != VERSION) {
+                return;
+            }
+
+            int count = input.readInt();
+            for (int i = 0; i < count; i++) {
+                String path = input.readUTF();
+                long entry = input.readLong();
+                myCosts.put(path, entry);
+                myMeasuredMicros += getCost(entry);
+                myMeasuredBytes += getSize(entry);
+            }
+        } catch (IOException | RuntimeException e) {
+            LOG.warn("Phalyfusion cost table is corrupted and will be dropped", e);
+            myCosts.clear();
+            myMeasuredMicros = 0;
+            myMeasuredBytes = 0;
+        }
+    }
+
+    @Override
+    public void dispose() {
+        save();
+    }
+}
@@ -0,0 +1,135 @@
+package ru.taptima.phalyfusion.batch;
+
+import com.intellij.openapi.Disposable;
+import com.intellij.openapi.application.PathManager;
+import com.intellij.openapi.components.ServiceManager;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.openapi.vfs.VirtualFile;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.*;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Files which made Phalyfusion time out or crash during batch runs. Isolated files are analysed alone
+ * with a longer timeout, files which failed even then are skipped. Entry is dropped as soon as the file is changed
+ */
+public class PhalyfusionQuarantine implements Disposable {
+    private static final Logger LOG = Logger.getInstance(PhalyfusionQuarantine.class);
+    private static final int VERSION = 1;
+
+    public enum State {
+        NONE, ISOLATED, SKIPPED
+    }
+
+    private static class Entry {
+        private final long myStamp;
+        private final State myState;
+
+        Entry(long stamp, @NotNull State state) {
+            myStamp = stamp;
+            myState = state;
+        }
+    }
+
+    private final File myListFile;
+    private final Map<String, Entry> myEntries = new HashMap<>();
+    private boolean isLoaded = false;
+    private boolean isModified = false;
+
+    public PhalyfusionQuarantine(@NotNull Project project) {
+        myListFile = new File(PathManager.getSystemPath() + "/phalyfusion/" + project.getLocationHash() + "/quarantine.list");
+    }
+
+    public static PhalyfusionQuarantine getInstance(@NotNull Project project) {
+        return ServiceManager.getService(project, PhalyfusionQuarantine.class);
+    }
+
+    @NotNull
+    public synchronized State getState(@NotNull VirtualFile file) {
+        ensureLoaded();
+        Entry entry = myEntries.get(file.getPath());
+        if (entry == null) {
+            return State.NONE;
+        }
+        if (entry.myStamp != getStamp(file)) {
+            myEntries.remove(file.getPath());
+            isModified = true;
+            return State.NONE;
+        }
+        return entry.myState;
+    }
+
+    public synchronized void setState(@NotNull VirtualFile file, @NotNull State state) {
+        ensureLoaded();
+        if (state == State.NONE) {
+            myEntries.remove(file.getPath());
+        } else {
+            myEntries.put(file.getPath(), new Entry(getStamp(file), state));
+        }
+        isModified = true;
+    }
+
+    public synchronized void save() {
+        if (!isModified) {
+            return;
+        }
+
+        FileUtil.createParentDirs(myListFile);
+        try (var output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(myListFile)))) {
+            output.writeInt(VERSION);
+            output.writeInt(myEntries.size());
+            for (var entry : myEntries.entrySet()) {
+                output.writeUTF(entry.getKey());
+                output.writeLong(entry.getValue().myStamp);
+                output.writeByte(entry.getValue().myState.ordinal());
+            }
+            isModified = false;
+        } catch (IOException e) {
+            LOG.warn("Can not save Phalyfusion quarantine list", e);
+        }
+    }
+
+    private void ensureLoaded() {
+        if (isLoaded) {
+            return;
+        }
+
+        isLoaded = true;
+        if (!myListFile.isFile()) {
+            return;
+        }
+
+        var states = State.values();
+        try (var input = new DataInputStream(new BufferedInputStream(new FileInputStream(myListFile)))) {
+            if (input.readInt() != VERSION) {
+                return;
+            }
+
+            int count = input.readInt();
+            for (int i = 0; i < count; i++) {
+                String path = input.readUTF();
+                long stamp = input.readLong();
+                myEntries.put(path, new Entry(stamp, states[input.readByte()]));
+            }
+        } catch (IOException | RuntimeException e) {
+            LOG.warn("Phalyfusion quarantine list is corrupted and will be dropped", e);
+            myEntries.clear();
+        }
+    }
+
+    /**
+     * Content is not hashed, time stamp and length change together with it
+     */
+    private static long getStamp(@NotNull VirtualFile file) {
+        return file.getTimeStamp() * 31 + file.getLength();
+    }
+
+    @Override
+    public void dispose() {
+        save();
+    }
+}
@@ -0,0 +1,83 @@
+package ru.taptima.phalyfusion.batch;
+
+import com.intellij.analysis.AnalysisScope;
+import com.intellij.openapi.application.ReadAction;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.roots.ContentIterator;
+import com.intellij.openapi.roots.ProjectFileIndex;
+import com.intellij.openapi.vfs.VfsUtilCore;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.openapi.vfs.VirtualFileFilter;
+import com.intellij.psi.PsiDirectory;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import ru.taptima.phalyfusion.PhalyfusionAnnotator;
+import ru.taptima.phalyfusion.blacklist.PhalyfusionBlackList;
+import ru.taptima.phalyfusion.blacklist.PhalyfusionBlackListMatcher;
+import ru.taptima.phalyfusion.configuration.PhalyfusionComposerMetadata;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Collects files of the analysis scope without building PSI.
+ * Ignored files and composer vendor directory are filtered out before the tool is launched.
+ * Project and directory scopes do not descend into ignored directories at all.
+ */
+public class PhalyfusionScopeCollector {
+    private PhalyfusionScopeCollector() {
+    }
+
+    @NotNull
+    public static VirtualFile[] collect(@NotNull AnalysisScope scope) {
+        Project project = scope.getProject();
+        PhalyfusionBlackListMatcher matcher = PhalyfusionBlackList.getInstance(project).getMatcher();
+        VirtualFile vendorDir = PhalyfusionComposerMetadata.getInstance(project).getVendorDir();
+        List<VirtualFile> files = new ArrayList<>();
+
+        ReadAction.run(() -> {
+            VirtualFileFilter filter = file -> !file.isDirectory() || !isExcludedDir(file, matcher, vendorDir);
+            ContentIterator iterator = file -> {
+                if (!file.isDirectory() && scope.contains(file) && PhalyfusionAnnotator.isFileSuitable(file, matcher)
+                        && (vendorDir == null || !VfsUtilCore.isAncestor(vendorDir, file, false))) {
+                    files.add(file);
+                }
+                return true;
+            };
+
+            ProjectFileIndex fileIndex = ProjectFileIndex.getInstance(project);
+            if (scope.getScopeType() == AnalysisScope.PROJECT) {
+                fileIndex.iterateContent(iterator, filter);
+            } else if (scope.getScopeType() == AnalysisScope.DIRECTORY && scope.getElement() instanceof PsiDirectory) {
+                VirtualFile dir = ((PsiDirectory) scope.getElement()).getVirtualFile();
+                if (!isExcludedDir(dir, matcher, vendorDir)) {
+                    fileIndex.iterateContentUnderDirectory(dir, iterator, filter);
+                }
+            } else {
+                scope.accept(iterator::processFile);
+            }
+        });
+
+        return files.toArray(VirtualFile[]::new);
+    }
+
+    /**
+     * @return all content files of the project, e.g. to be synced to the interpreter host
+     */
+    @NotNull
+    public static List<VirtualFile> collectProjectContent(@NotNull Project project) {
+        List<VirtualFile> files = new ArrayList<>();
+        ReadAction.run(() -> ProjectFileIndex.getInstance(project).iterateContent(file -> {
+            if (!file.isDirectory()) {
+                files.add(file);
+            }
+            return true;
+        }));
+        return files;
+    }
+
+    private static boolean isExcludedDir(@NotNull VirtualFile dir, @NotNull PhalyfusionBlackListMatcher matcher,
+                                         @Nullable VirtualFile vendorDir) {
+        return dir.equals(vendorDir) || matcher.isExcluded(dir);
+    }
+}
@@ -0,0 +1,247 @@
+package ru.taptima.phalyfusion.batch;
+
+import com.intellij.concurrency.SensitiveProgressWrapper;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.progress.EmptyProgressIndicator;
+import com.intellij.openapi.progress.ProcessCanceledException;
+import com.intellij.openapi.progress.ProgressIndicator;
+import com.intellij.openapi.progress.ProgressManager;
+import com.intellij.openapi.util.Pair;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.util.concurrency.AppExecutorUtil;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import ru.taptima.phalyfusion.PhalyfusionMessageProcessor;
+import ru.taptima.phalyfusion.configuration.PhalyfusionConfiguration;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.*;
+import java.util.function.Function;
+import java.util.function.ToLongFunction;
+
+/**
+ * Splits batch inspection files into shards balanced by predicted cost and runs a separate Phalyfusion process for each of them.
+ * Number of concurrently running processes never exceeds the parallelism of the executor.
+ * Results of every shard are reported as soon as it is finished. Cancellation of the current progress indicator
+ * is propagated to the shards: local processes are killed, remote ones are not waited for and run until they finish or time out.
+ */
+public class PhalyfusionShardedExecutor {
+    private static final Logger LOG = Logger.getInstance(PhalyfusionShardedExecutor.class);
+    private static final long POLL_INTERVAL_MS = 50;
+
+    /**
+     * Launches the tool for the given shard. Implementation may split the shard further, e.g. because of command line length limits
+     */
+    public interface ShardLauncher {
+        void launch(@NotNull VirtualFile[] files, @NotNull PhalyfusionMessageProcessor messageProcessor);
+    }
+
+    /**
+     * Receives results of finished shards in the thread which runs the executor
+     */
+    public interface ShardListener {
+        void shardFinished(@NotNull VirtualFile[] files, @NotNull PhalyfusionMessageProcessor messageProcessor);
+
+        /**
+         * The shard failed unexpectedly, its files have no results
+         */
+        void shardFailed(@NotNull VirtualFile[] files, @NotNull Throwable error);
+    }
+
+    private final int myParallelism;
+
+    public PhalyfusionShardedExecutor(@NotNull PhalyfusionConfiguration configuration) {
+        this(getParallelism(configuration));
+    }
+
+    public PhalyfusionShardedExecutor(int parallelism) {
+        myParallelism = Math.max(1, parallelism);
+    }
+
+    public static int getParallelism(@NotNull PhalyfusionConfiguration configuration) {
+        int maxProcesses = configuration.getMaxProcesses();
+        return maxProcesses > 0 ? maxProcesses : Runtime.getRuntime().availableProcessors();
+    }
+
+    /**
+     * Shards of the run and their predicted costs
+     */
+    public static class Plan {
+        private final List<VirtualFile[]> myShards;
+        private final long[] myPredictedCosts;
+
+        private Plan(@NotNull List<VirtualFile[]> shards, long[] predictedCosts) {
+            myShards = shards;
+            myPredictedCosts = predictedCosts;
+        }
+
+        @NotNull
+        public List<VirtualFile[]> getShards() {
+            return myShards;
+        }
+
+        public long getPredictedCost(int shardIdx) {
+            return myPredictedCosts[shardIdx];
+        }
+
+        /**
+         * @return predicted cost of the most expensive shard, i.e. predicted duration of the whole run
+         */
+        public long getPredictedMakespan() {
+            long makespan = 0;
+            for (long cost : myPredictedCosts) {
+                makespan = Math.max(makespan, cost);
+            }
+            return makespan;
+        }
+    }
+
+    /**
+     * @param plan             shards created by {@link #plan(VirtualFile[], ToLongFunction)} with costs in microseconds
+     * @param processorFactory creates message processor for the shard files
+     */
+    public void run(@NotNull Plan plan, @NotNull Function<VirtualFile[], PhalyfusionMessageProcessor> processorFactory,
+                    @NotNull ShardLauncher launcher, @NotNull ShardListener listener) {
+        List<VirtualFile[]> shards = plan.getShards();
+        if (shards.isEmpty()) {
+            return;
+        }
+        int filesCount = 0;
+        for (VirtualFile[] shard : shards) {
+            filesCount += shard.length;
+        }
+
+        ProgressIndicator indicator = ProgressManager.getInstance().getProgressIndicator();
+        ExecutorService executor = AppExecutorUtil.createBoundedApplicationPoolExecutor("Phalyfusion Shards",
+                Math.min(shards.size(), myParallelism));
+        CompletionService<Pair<VirtualFile[], PhalyfusionMessageProcessor>> completionService = new ExecutorCompletionService<>(executor);
+        try {
+            Map<Future<?>, VirtualFile[]> submittedShards = new HashMap<>();
+            for (int i = 0; i < shards.size(); i++) {
+                VirtualFile[] shard = shards.get(i);
+                long predictedNanos = TimeUnit.MICROSECONDS.toNanos(plan.getPredictedCost(i));
+                var submitted = completionService.submit(() -> {
+                    ProgressIndicator shardIndicator = indicator == null ? new EmptyProgressIndicator() : new SensitiveProgressWrapper(indicator);
+                    return ProgressManager.getInstance().runProcess(() -> {
+                        var shardProcessor = processorFactory.apply(shard);
+                        shardProcessor.getStatistics().setPredictedNanos(predictedNanos);
+                        long start = System.nanoTime();
+                        launcher.launch(shard, shardProcessor);
+                        shardProcessor.getStatistics().setDurationNanos(System.nanoTime() - start);
+                        return Pair.create(shard, shardProcessor);
+                    }, shardIndicator);
+                });
+                submittedShards.put(submitted, shard);
+            }
+
+            int finishedShards = 0;
+            int finishedFiles = 0;
+            updateProgress(indicator, finishedFiles, filesCount);
+            while (finishedShards < shards.size()) {
+                ProgressManager.checkCanceled();
+                var future = completionService.poll(POLL_INTERVAL_MS, TimeUnit.MILLISECONDS);
+                if (future == null) {
+                    continue;
+                }
+
+                finishedShards++;
+                try {
+                    var result = future.get();
+                    listener.shardFinished(result.first, result.second);
+                    finishedFiles += result.first.length;
+                } catch (ExecutionException e) {
+                    // Cancellation of the run is checked by the loop
+                    if (!(e.getCause() instanceof ProcessCanceledException)) {
+                        LOG.warn("Phalyfusion shard failed", e.getCause());
+                        listener.shardFailed(submittedShards.get(future), e.getCause());
+                    }
+                }
+                updateProgress(indicator, finishedFiles, filesCount);
+            }
+        } catch (InterruptedException e) {
+            throw new ProcessCanceledException(e);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static void updateProgress(@Nullable ProgressIndicator indicator, int finishedFiles, int totalFiles) {
+        if (indicator == null) {
+            return;
+        }
+
+        indicator.setText2("Phalyfusion: " + finishedFiles + " of " + totalFiles + " files analysed");
+        if (!indicator.isIndeterminate()) {
+            indicator.setFraction((double) finishedFiles / totalFiles);
+        }
+    }
+
+    /**
+     * Splits files into at most parallelism shards with longest processing time first heuristic: files are taken
+     * in order of decreasing cost and each of them is assigned to the shard with the least total cost.
+     * Files of a shard keep their original order
+     */
+    @NotNull
+    public Plan plan(@NotNull VirtualFile[] files, @NotNull ToLongFunction<VirtualFile> costFunction) {
+        int count = Math.min(myParallelism, files.length);
+        if (count <= 0) {
+            return new Plan(new ArrayList<>(), new long[0]);
+        }
+
+        long[] costs = new long[files.length];
+        Integer[] order = new Integer[files.length];
+        for (int i = 0; i < files.length; i++) {
+            costs[i] = costFunction.applyAsLong(files[i]);
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> Long.compare(costs[b], costs[a]));
+
+        long[] loads = new long[count];
+        int[] assignment = new int[files.length];
+        int[] sizes = new int[count];
+        // Shards are ordered by load, ties are broken by index to keep the split stable
+        PriorityQueue<Integer> queue = new PriorityQueue<>(count,
+                (a, b) -> loads[a] != loads[b] ? Long.compare(loads[a], loads[b]) : Integer.compare(a, b));
+        for (int i = 0; i < count; i++) {
+            queue.add(i);
+        }
+        for (int fileIdx : order) {
+            int shardIdx = queue.poll();
+            loads[shardIdx] += costs[fileIdx];
+            assignment[fileIdx] = shardIdx;
+            sizes[shardIdx]++;
+            queue.add(shardIdx);
+        }
+
+        VirtualFile[][] shards = new VirtualFile[count][];
+        for (int i = 0; i < count; i++) {
+            shards[i] = new VirtualFile[sizes[i]];
+            sizes[i] = 0;
+        }
+        for (int i = 0; i < files.length; i++) {
+            int shardIdx = assignment[i];
+            shards[shardIdx][sizes[shardIdx]++] = files[i];
+        }
+
+        return new Plan(Arrays.asList(shards), loads);
+    }
+
+    /**
+     * Puts every file in its own shard, at most parallelism of them run at once
+     */
+    @NotNull
+    public Plan planSeparately(@NotNull VirtualFile[] files, @NotNull ToLongFunction<VirtualFile> costFunction) {
+        List<VirtualFile[]> shards = new ArrayList<>(files.length);
+        long[] costs = new long[files.length];
+        for (int i = 0; i < files.length; i++) {
+            shards.add(new VirtualFile[]{files[i]});
+            costs[i] = costFunction.applyAsLong(files[i]);
+        }
+        return new Plan(shards, costs);
+    }
+}
@@ -4,14 +4,59 @@ import com.intellij.openapi.components.ServiceManager;
 import com.intellij.openapi.components.State;
 import com.intellij.openapi.components.Storage;
 import com.intellij.openapi.project.Project;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.util.xmlb.annotations.Transient;
 import com.jetbrains.php.tools.quality.QualityToolBlackList;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.List;
 
 @State(
     name = "PhalyfusionBlackList",
     storages = {@Storage("$WORKSPACE_FILE$")}
 )
 public class PhalyfusionBlackList extends QualityToolBlackList {
+    private volatile PhalyfusionBlackListMatcher myMatcher = PhalyfusionBlackListMatcher.EMPTY;
+
     public static PhalyfusionBlackList getInstance(Project project) {
         return ServiceManager.getService(project, PhalyfusionBlackList.class);
     }
-}
\ No newline at end of file
+
+    /**
+     * Matcher is shared by batch and on-fly runs and is compiled again only when the list of ignored files is changed
+     */
+    @Transient
+    @NotNull
+    public PhalyfusionBlackListMatcher getMatcher() {
+        return myMatcher;
+    }
+
+    @Override
+    public synchronized void loadState(@NotNull QualityToolBlackList state) {
+        super.loadState(state);
+        updateMatcher();
+    }
+
+    @Override
+    public synchronized void setFiles(List<String> files) {
+        super.setFiles(files);
+        updateMatcher();
+    }
+
+    @Override
+    public synchronized void addFile(@NotNull VirtualFile file) {
+        super.addFile(file);
+        updateMatcher();
+    }
+
+    @Override
+    public synchronized void removeFile(@NotNull VirtualFile file) {
+        super.removeFile(file);
+        updateMatcher();
+    }
+
+    private void updateMatcher() {
+        myMatcher = PhalyfusionBlackListMatcher.compile(new ArrayList<>(getFiles()));
+    }
+}
@@ -0,0 +1,256 @@
+package ru.taptima.phalyfusion.blacklist;
+
+import com.intellij.openapi.util.text.StringUtil;
+import com.intellij.openapi.vfs.VfsUtilCore;
+import com.intellij.openapi.vfs.VirtualFile;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Compiled form of ignored files list. A file is excluded if it or any of its parent directories is ignored.
+ * Plain entries are stored in a prefix trie of paths, entries with "*" or "?" are combined in a single glob automaton.
+ * Both are checked in a single pass over the path, so the check does not depend on the number of entries.
+ *
+ * Glob syntax: "?" and "*" match any characters but "/", "**" matches any characters, "**" between slashes may match no directories.
+ * Relative globs match at any directory level, e.g. "*.blade.php" or "generated/*". "dir/**" matches the directory itself as well
+ */
+public class PhalyfusionBlackListMatcher {
+    public static final PhalyfusionBlackListMatcher EMPTY = compile(List.of());
+
+    private final TrieNode myRoot = new TrieNode();
+    private final GlobAutomaton myGlobs;
+
+    private PhalyfusionBlackListMatcher(@Nullable GlobAutomaton globs) {
+        myGlobs = globs;
+    }
+
+    /**
+     * @param entries urls or paths of ignored files and directories, or glob patterns
+     */
+    @NotNull
+    public static PhalyfusionBlackListMatcher compile(@NotNull Collection<String> entries) {
+        List<String> globs = new ArrayList<>();
+        List<String> paths = new ArrayList<>();
+        for (String entry : entries) {
+            if (StringUtil.isEmptyOrSpaces(entry)) {
+                continue;
+            }
+
+            String path = StringUtil.trimEnd(VfsUtilCore.urlToPath(entry.trim()).replace('\\', '/'), "/");
+            if (path.indexOf('*') >= 0 || path.indexOf('?') >= 0) {
+                // Parent directories are matched as well, so "dir" matches "dir/**" and the directory is skipped entirely
+                globs.add(path.endsWith("/**") && path.length() > 3 ? path.substring(0, path.length() - 3) : path);
+            } else {
+                paths.add(path);
+            }
+        }
+
+        var matcher = new PhalyfusionBlackListMatcher(globs.isEmpty() ? null : new GlobAutomaton(globs));
+        for (String path : paths) {
+            matcher.myRoot.add(path);
+        }
+        return matcher;
+    }
+
+    public boolean isExcluded(@NotNull VirtualFile file) {
+        return isExcluded(file.getPath());
+    }
+
+    public boolean isExcluded(@NotNull CharSequence path) {
+        return myRoot.matchesPrefix(path) || myGlobs != null && myGlobs.matchesPrefix(path);
+    }
+
+    /**
+     * Prefix trie over path characters. Children are kept in sorted arrays to keep nodes small
+     */
+    private static class TrieNode {
+        private static final char[] NO_KEYS = new char[0];
+        private static final TrieNode[] NO_CHILDREN = new TrieNode[0];
+
+        private char[] myKeys = NO_KEYS;
+        private TrieNode[] myChildren = NO_CHILDREN;
+        private boolean isEnd = false;
+
+        void add(@NotNull String path) {
+            TrieNode node = this;
+            for (int i = 0; i < path.length(); i++) {
+                node = node.getOrCreateChild(path.charAt(i));
+            }
+            node.isEnd = true;
+        }
+
+        /**
+         * @return true if the path itself or one of its parent directories was added
+         */
+        boolean matchesPrefix(@NotNull CharSequence path) {
+            TrieNode node = this;
+            for (int i = 0; i < path.length(); i++) {
+                if (node.isEnd && path.charAt(i) == '/' && i > 0) {
+                    return true;
+                }
+
+                node = node.getChild(path.charAt(i));
+                if (node == null) {
+                    return false;
+                }
+            }
+            return node.isEnd;
+        }
+
+        @Nullable
+        private TrieNode getChild(char key) {
+            int idx = Arrays.binarySearch(myKeys, key);
+            return idx >= 0 ? myChildren[idx] : null;
+        }
+
+        @NotNull
+        private TrieNode getOrCreateChild(char key) {
+            int idx = Arrays.binarySearch(myKeys, key);
+            if (idx >= 0) {
+                return myChildren[idx];
+            }
+
+            int insertAt = -idx - 1;
+            var child = new TrieNode();
+            char[] keys = new char[myKeys.length + 1];
+            TrieNode[] children = new TrieNode[myChildren.length + 1];
+            System.arraycopy(myKeys, 0, keys, 0, insertAt);
+            System.arraycopy(myChildren, 0, children, 0, insertAt);
+            keys[insertAt] = key;
+            children[insertAt] = child;
+            System.arraycopy(myKeys, insertAt, keys, insertAt + 1, myKeys.length - insertAt);
+            System.arraycopy(myChildren, insertAt, children, insertAt + 1, myChildren.length - insertAt);
+            myKeys = keys;
+            myChildren = children;
+            return child;
+        }
+    }
+
+    /**
+     * Nondeterministic automaton of all glob patterns simulated with bit sets of states.
+     * State is a position in the pattern tokens, the last state of each pattern is accepting
+     */
+    private static class GlobAutomaton {
+        private static final int ANY_CHAR = -1;
+        private static final int ANY_IN_SEGMENT = -2;
+        private static final int ANY = -3;
+        private static final int ACCEPT = -4;
+
+        private final int[] myTokens;
+        private final long[] myInitial;
+
+        GlobAutomaton(@NotNull List<String> patterns) {
+            List<Integer> tokens = new ArrayList<>();
+            List<Integer> initialStates = new ArrayList<>();
+            for (String pattern : patterns) {
+                // Relative patterns match at any level
+                String glob = pattern.startsWith("/") || pattern.startsWith("**") || pattern.indexOf(':') > 0 ? pattern : "**/" + pattern;
+                initialStates.add(tokens.size());
+                for (int i = 0; i < glob.length(); i++) {
+                    char c = glob.charAt(i);
+                    if (c == '*' && i + 1 < glob.length() && glob.charAt(i + 1) == '*') {
+                        tokens.add(ANY);
+                        i++;
+                    } else if (c == '*') {
+                        tokens.add(ANY_IN_SEGMENT);
+                    } else if (c == '?') {
+                        tokens.add(ANY_CHAR);
+                    } else {
+                        tokens.add((int) c);
+                    }
+                }
+                tokens.add(ACCEPT);
+            }
+
+            myTokens = new int[tokens.size()];
+            for (int i = 0; i < myTokens.length; i++) {
+                myTokens[i] = tokens.get(i);
+            }
+
+            myInitial = new long[(myTokens.length + 63) >>> 6];
+            for (int state : initialStates) {
+                enter(myInitial, state);
+            }
+        }
+
+        /**
+         * @return true if the path or one of its parent directories matches any pattern
+         */
+        boolean matchesPrefix(@NotNull CharSequence path) {
+            long[] current = myInitial.clone();
+            long[] next = new long[current.length];
+
+            for (int i = 0; i < path.length(); i++) {
+                char c = path.charAt(i);
+                if (c == '/' && i > 0 && isAccepting(current)) {
+                    return true;
+                }
+
+                Arrays.fill(next, 0);
+                boolean isAlive = false;
+                for (int word = 0; word < current.length; word++) {
+                    long bits = current[word];
+                    while (bits != 0) {
+                        int state = (word << 6) + Long.numberOfTrailingZeros(bits);
+                        bits &= bits - 1;
+                        int token = myTokens[state];
+                        if (token == ANY || token == ANY_IN_SEGMENT && c != '/') {
+                            enter(next, state);
+                            isAlive = true;
+                        } else if (token == c || token == ANY_CHAR && c != '/') {
+                            enter(next, state + 1);
+                            isAlive = true;
+                        }
+                    }
+                }
+
+                if (!isAlive) {
+                    return false;
+                }
+
+                long[] swap = current;
+                current = next;
+                next = swap;
+            }
+
+            return isAccepting(current);
+        }
+
+        /**
+         * Stars may match empty sequence, so states following them are entered as well
+         */
+        private void enter(@NotNull long[] states, int state) {
+            set(states, state);
+            while (myTokens[state] == ANY || myTokens[state] == ANY_IN_SEGMENT) {
+                // "a/**/b" matches "a/b" as well
+                if (myTokens[state] == ANY && state > 0 && myTokens[state - 1] == '/' && myTokens[state + 1] == '/') {
+                    enter(states, state + 2);
+                }
+                set(states, ++state);
+            }
+        }
+
+        private boolean isAccepting(@NotNull long[] states) {
+            for (int word = 0; word < states.length; word++) {
+                long bits = states[word];
+                while (bits != 0) {
+                    int state = (word << 6) + Long.numberOfTrailingZeros(bits);
+                    bits &= bits - 1;
+                    if (myTokens[state] == ACCEPT) {
+                        return true;
+                    }
+                }
+            }
+            return false;
+        }
+
+        private static void set(@NotNull long[] states, int state) {
+            states[state >>> 6] |= 1L << state;
+        }
+    }
+}
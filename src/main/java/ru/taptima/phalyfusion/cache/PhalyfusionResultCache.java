@@ -0,0 +1,246 @@
+package ru.taptima.phalyfusion.cache;
+
+import com.intellij.openapi.Disposable;
+import com.intellij.openapi.application.PathManager;
+import com.intellij.openapi.components.ServiceManager;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.openapi.util.text.StringUtil;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.jetbrains.php.tools.quality.QualityToolMessage;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import ru.taptima.phalyfusion.baseline.PhalyfusionBaseline;
+import ru.taptima.phalyfusion.configuration.PhalyfusionComposerMetadata;
+import ru.taptima.phalyfusion.configuration.PhalyfusionConfiguration;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+
+/**
+ * Persistent cache of Phalyfusion results of unchanged files.
+ * Entries are keyed by hash of file content combined with hash of active configuration and phalyfusion.neon,
+ * so any change of them leads to a cache miss. Least recently used entries are evicted when the cache is full.
+ * Entries are loaded on the first access during a run and are released when the run is finished.
+ */
+public class PhalyfusionResultCache implements Disposable {
+    private static final Logger LOG = Logger.getInstance(PhalyfusionResultCache.class);
+    private static final int VERSION = 2;
+    private static final int MAX_ENTRIES = 100_000;
+    private static final int MAX_MESSAGES = 1_000_000;
+
+    public static class CachedMessage {
+        private final int myLineNum;
+        private final int myColumn;
+        private final QualityToolMessage.Severity mySeverity;
+        private final String myMessageText;
+
+        public CachedMessage(int lineNum, int column, @NotNull QualityToolMessage.Severity severity, @NotNull String messageText) {
+            myLineNum = lineNum;
+            myColumn = column;
+            mySeverity = severity;
+            myMessageText = messageText;
+        }
+
+        public int getLineNum() {
+            return myLineNum;
+        }
+
+        public int getColumn() {
+            return myColumn;
+        }
+
+        @NotNull
+        public QualityToolMessage.Severity getSeverity() {
+            return mySeverity;
+        }
+
+        @NotNull
+        public String getMessageText() {
+            return myMessageText;
+        }
+    }
+
+    private final File myCacheFile;
+    private final LinkedHashMap<String, List<CachedMessage>> myEntries = new LinkedHashMap<>(16, 0.75f, true);
+    private int myMessagesCount = 0;
+    private boolean isLoaded = false;
+    private boolean isModified = false;
+
+    public PhalyfusionResultCache(@NotNull Project project) {
+        myCacheFile = new File(PathManager.getSystemPath() + "/phalyfusion/" + project.getLocationHash() + "/results.cache");
+    }
+
+    public static PhalyfusionResultCache getInstance(@NotNull Project project) {
+        return ServiceManager.getService(project, PhalyfusionResultCache.class);
+    }
+
+    /**
+     * Hash of everything besides file content that affects Phalyfusion results
+     */
+    @NotNull
+    public static String getConfigurationHash(@NotNull Project project, @NotNull PhalyfusionConfiguration configuration) {
+        MessageDigest digest = createDigest();
+        update(digest, configuration.getToolPath());
+        update(digest, configuration.getInterpreterId());
+        update(digest, configuration.getSerializedStandards());
+        // Results are truncated by the limit, so they are not valid for another one
+        update(digest, String.valueOf(configuration.getMaxMessagesPerFile()));
+
+        update(digest, PhalyfusionComposerMetadata.getInstance(project).getSnapshot().getNeonConfigHash());
+        // Messages matched by the baseline are not cached, so the baseline is a part of the configuration
+        update(digest, PhalyfusionBaseline.getInstance(project).getHash());
+
+        return StringUtil.toHexString(digest.digest());
+    }
+
+    /**
+     * @return cache key of the file or null if its content can not be read
+     */
+    @Nullable
+    public static String getKey(@NotNull VirtualFile file, @NotNull String configurationHash) {
+        MessageDigest digest = createDigest();
+        update(digest, configurationHash);
+        try {
+            digest.update(file.contentsToByteArray());
+        } catch (IOException e) {
+            return null;
+        }
+
+        return StringUtil.toHexString(digest.digest());
+    }
+
+    @Nullable
+    public synchronized List<CachedMessage> get(@NotNull String key) {
+        ensureLoaded();
+        return myEntries.get(key);
+    }
+
+    public synchronized void put(@NotNull String key, @NotNull List<CachedMessage> messages) {
+        ensureLoaded();
+        var previous = myEntries.put(key, messages);
+        if (previous != null) {
+            myMessagesCount -= previous.size();
+        }
+        myMessagesCount += messages.size();
+        isModified = true;
+
+        var iterator = myEntries.values().iterator();
+        while (iterator.hasNext() && (myEntries.size() > MAX_ENTRIES || myMessagesCount > MAX_MESSAGES)) {
+            myMessagesCount -= iterator.next().size();
+            iterator.remove();
+        }
+    }
+
+    public synchronized void save() {
+        if (!isModified) {
+            return;
+        }
+
+        FileUtil.createParentDirs(myCacheFile);
+        try (var output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(myCacheFile)))) {
+            output.writeInt(VERSION);
+            output.writeInt(myEntries.size());
+            for (var entry : myEntries.entrySet()) {
+                writeString(output, entry.getKey());
+                output.writeInt(entry.getValue().size());
+                for (var message : entry.getValue()) {
+                    output.writeInt(message.getLineNum());
+                    output.writeInt(message.getColumn());
+                    output.writeByte(message.getSeverity().ordinal());
+                    writeString(output, message.getMessageText());
+                }
+            }
+            isModified = false;
+        } catch (IOException e) {
+            LOG.warn("Can not save Phalyfusion results cache", e);
+        }
+    }
+
+    /**
+     * Saves modified entries and drops all of them from memory, they are loaded again by the next run
+     */
+    public synchronized void release() {
+        save();
+        myEntries.clear();
+        myMessagesCount = 0;
+        isLoaded = false;
+    }
+
+    private void ensureLoaded() {
+        if (isLoaded) {
+            return;
+        }
+
+        isLoaded = true;
+        if (!myCacheFile.isFile()) {
+            return;
+        }
+
+        var severities = QualityToolMessage.Severity.values();
+        // Most texts repeat many times, they share instances
+        var texts = new HashMap<String, String>();
+        try (var input = new DataInputStream(new BufferedInputStream(new FileInputStream(myCacheFile)))) {
+            if (input.readInt() != VERSION) {
+                return;
+            }
+
+            int entriesCount = input.readInt();
+            for (int i = 0; i < entriesCount; i++) {
+                String key = readString(input);
+                int messagesCount = input.readInt();
+                List<CachedMessage> messages = new ArrayList<>(messagesCount);
+                for (int j = 0; j < messagesCount; j++) {
+                    int lineNum = input.readInt();
+                    int column = input.readInt();
+                    var severity = severities[input.readByte()];
+                    String text = readString(input);
+                    String sharedText = texts.putIfAbsent(text, text);
+                    messages.add(new CachedMessage(lineNum, column, severity, sharedText != null ? sharedText : text));
+                }
+                myEntries.put(key, messages);
+                myMessagesCount += messagesCount;
+            }
+        } catch (IOException | RuntimeException e) {
+            LOG.warn("Phalyfusion results cache is corrupted and will be dropped", e);
+            myEntries.clear();
+            myMessagesCount = 0;
+        }
+    }
+
+    @Override
+    public void dispose() {
+        save();
+    }
+
+    private static void writeString(@NotNull DataOutput output, @NotNull String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        output.writeInt(bytes.length);
+        output.write(bytes);
+    }
+
+    @NotNull
+    private static String readString(@NotNull DataInput input) throws IOException {
+        byte[] bytes = new byte[input.readInt()];
+        input.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void update(@NotNull MessageDigest digest, @Nullable String value) {
+        digest.update(StringUtil.notNullize(value).getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) 0);
+    }
+
+    @NotNull
+    private static MessageDigest createDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,215 @@
+package ru.taptima.phalyfusion.configuration;
+
+import com.intellij.openapi.Disposable;
+import com.intellij.openapi.components.ServiceManager;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.util.Pair;
+import com.intellij.openapi.util.SystemInfo;
+import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.openapi.util.text.StringUtil;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.openapi.vfs.VirtualFileManager;
+import com.intellij.openapi.vfs.newvfs.BulkFileListener;
+import com.intellij.openapi.vfs.newvfs.events.VFileEvent;
+import com.intellij.openapi.vfs.newvfs.events.VFilePropertyChangeEvent;
+import com.intellij.util.PathUtil;
+import com.jetbrains.php.composer.ComposerConfigUtils;
+import com.jetbrains.php.composer.ComposerDataService;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.File;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Composer metadata of the project used to launch Phalyfusion: vendor and bin directories, installed packages,
+ * detected Phalyfusion executable and state of phalyfusion.neon.
+ * Metadata is read once and kept until composer.json, composer.lock or phalyfusion.neon is changed in VFS.
+ */
+public class PhalyfusionComposerMetadata implements Disposable {
+    private static final Logger LOG = Logger.getInstance(PhalyfusionComposerMetadata.class);
+    public static final String NEON_CONFIG_NAME = "phalyfusion.neon";
+    private static final String PHALYFUSION_PACKAGE = "taptima/phalyfusion";
+    private static final Set<String> WATCHED_FILES = Set.of("composer.json", "composer.lock", NEON_CONFIG_NAME);
+
+    public static class Snapshot {
+        private final VirtualFile myConfigFile;
+        private final String myVendorDir;
+        private final String myBinDir;
+        private final Set<String> myInstalledPackages;
+        private final String myPhalyfusionPath;
+        private final boolean isNeonConfigExists;
+        private final String myNeonConfigHash;
+
+        private Snapshot(@Nullable VirtualFile configFile, @Nullable String vendorDir, @Nullable String binDir,
+                         @NotNull Set<String> installedPackages, @Nullable String phalyfusionPath,
+                         boolean neonConfigExists, @NotNull String neonConfigHash) {
+            myConfigFile = configFile;
+            myVendorDir = vendorDir;
+            myBinDir = binDir;
+            myInstalledPackages = installedPackages;
+            myPhalyfusionPath = phalyfusionPath;
+            isNeonConfigExists = neonConfigExists;
+            myNeonConfigHash = neonConfigHash;
+        }
+
+        @Nullable
+        public VirtualFile getConfigFile() {
+            return myConfigFile;
+        }
+
+        /**
+         * @return vendor directory relative to composer.json
+         */
+        @Nullable
+        public String getVendorDir() {
+            return myVendorDir;
+        }
+
+        /**
+         * @return bin directory relative to composer.json
+         */
+        @Nullable
+        public String getBinDir() {
+            return myBinDir;
+        }
+
+        public boolean isPackageInstalled(@NotNull String name) {
+            return myInstalledPackages.contains(name);
+        }
+
+        /**
+         * @return absolute path of Phalyfusion installed by composer or null
+         */
+        @Nullable
+        public String getPhalyfusionPath() {
+            return myPhalyfusionPath;
+        }
+
+        public boolean isNeonConfigExists() {
+            return isNeonConfigExists;
+        }
+
+        /**
+         * @return hash of phalyfusion.neon content, empty if there is no such file
+         */
+        @NotNull
+        public String getNeonConfigHash() {
+            return myNeonConfigHash;
+        }
+    }
+
+    private final Project myProject;
+    private final AtomicLong myModificationCount = new AtomicLong();
+    private volatile Snapshot mySnapshot;
+
+    public PhalyfusionComposerMetadata(@NotNull Project project) {
+        myProject = project;
+        project.getMessageBus().connect(this).subscribe(VirtualFileManager.VFS_CHANGES, new BulkFileListener() {
+            @Override
+            public void after(@NotNull List<? extends VFileEvent> events) {
+                for (VFileEvent event : events) {
+                    if (isWatched(event.getPath())
+                            || event instanceof VFilePropertyChangeEvent && isWatched(((VFilePropertyChangeEvent) event).getOldPath())) {
+                        invalidate();
+                        return;
+                    }
+                }
+            }
+        });
+    }
+
+    public static PhalyfusionComposerMetadata getInstance(@NotNull Project project) {
+        return ServiceManager.getService(project, PhalyfusionComposerMetadata.class);
+    }
+
+    @NotNull
+    public Snapshot getSnapshot() {
+        Snapshot snapshot = mySnapshot;
+        VirtualFile configFile = ComposerDataService.getInstance(myProject).getConfigFile();
+        if (snapshot != null && Objects.equals(snapshot.getConfigFile(), configFile)) {
+            return snapshot;
+        }
+
+        long modificationCount = myModificationCount.get();
+        snapshot = load(configFile);
+        synchronized (this) {
+            // Metadata read concurrently with a change may be outdated already
+            if (modificationCount == myModificationCount.get()) {
+                mySnapshot = snapshot;
+            }
+        }
+        return snapshot;
+    }
+
+    /**
+     * @return composer vendor directory or null if there is no composer.json
+     */
+    @Nullable
+    public VirtualFile getVendorDir() {
+        Snapshot snapshot = getSnapshot();
+        if (snapshot.getConfigFile() == null || snapshot.getConfigFile().getParent() == null || snapshot.getVendorDir() == null) {
+            return null;
+        }
+
+        return snapshot.getConfigFile().getParent().findFileByRelativePath(snapshot.getVendorDir());
+    }
+
+    /**
+     * Should be called after files are changed bypassing VFS
+     */
+    public synchronized void invalidate() {
+        myModificationCount.incrementAndGet();
+        mySnapshot = null;
+    }
+
+    @NotNull
+    private Snapshot load(@Nullable VirtualFile configFile) {
+        String vendorDir = null;
+        String binDir = null;
+        Set<String> installedPackages = new HashSet<>();
+        String phalyfusionPath = null;
+
+        if (configFile != null) {
+            Pair<String, String> vendors = ComposerConfigUtils.getVendorAndBinDirs(configFile);
+            if (vendors != null) {
+                vendorDir = vendors.first;
+                binDir = vendors.second;
+                for (var pkg : ComposerConfigUtils.getInstalledPackagesFromConfig(configFile)) {
+                    installedPackages.add(pkg.getName());
+                }
+
+                if (installedPackages.contains(PHALYFUSION_PACKAGE) && configFile.getParent() != null) {
+                    phalyfusionPath = configFile.getParent().getPath() + "/" + binDir + "/phalyfusion" + (SystemInfo.isWindows ? ".bat" : "");
+                }
+            }
+        }
+
+        File neonConfig = new File(myProject.getBasePath() + "/" + NEON_CONFIG_NAME);
+        boolean neonConfigExists = neonConfig.isFile();
+        String neonConfigHash = "";
+        if (neonConfigExists) {
+            try {
+                neonConfigHash = StringUtil.toHexString(MessageDigest.getInstance("SHA-256").digest(FileUtil.loadFileBytes(neonConfig)));
+            } catch (IOException | NoSuchAlgorithmException e) {
+                LOG.warn("Can not read phalyfusion configuration file", e);
+            }
+        }
+
+        return new Snapshot(configFile, vendorDir, binDir, Collections.unmodifiableSet(installedPackages), phalyfusionPath,
+                neonConfigExists, neonConfigHash);
+    }
+
+    private static boolean isWatched(@Nullable String path) {
+        return path != null && WATCHED_FILES.contains(PathUtil.getFileName(path));
+    }
+
+    @Override
+    public void dispose() {
+    }
+}
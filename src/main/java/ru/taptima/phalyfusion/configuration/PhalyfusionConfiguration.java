@@ -19,7 +19,11 @@ public class PhalyfusionConfiguration implements QualityToolConfiguration {
     private String myStandards = "";
     private int myMaxMessagesPerFile = 100;
     private int myTimeoutMs = 30000;
+    private int myMaxProcesses = 0;
+    private int myDependencyDepth = 1;
+    private String myReportPath = "";
     private boolean isOnFlyModeEnabled = false;
+    private boolean isWorkerModeEnabled = false;
 
     public PhalyfusionConfiguration() { }
 
@@ -42,6 +46,17 @@ public class PhalyfusionConfiguration implements QualityToolConfiguration {
         isOnFlyModeEnabled = val;
     }
 
+    /**
+     * On-fly mode analyses files by long-lived "phalyfusion worker" process instead of launching the tool every time
+     */
+    public boolean getWorkerMode() {
+        return isWorkerModeEnabled;
+    }
+
+    public void setWorkerMode(boolean val) {
+        isWorkerModeEnabled = val;
+    }
+
     @Attribute("tool_path")
     @Nullable
     public String getSerializedToolPath() {
@@ -89,6 +104,45 @@ public class PhalyfusionConfiguration implements QualityToolConfiguration {
         this.myTimeoutMs = timeout;
     }
 
+    /**
+     * Max number of Phalyfusion processes launched in parallel by batch inspection. 0 means number of CPU cores
+     */
+    @Attribute("max_processes")
+    public int getMaxProcesses() {
+        return this.myMaxProcesses;
+    }
+
+    public void setMaxProcesses(int maxProcesses) {
+        this.myMaxProcesses = maxProcesses;
+    }
+
+    /**
+     * How many levels of dependent files (subclasses, importers, callers) are re-analysed together with changed files.
+     * 0 disables dependency tracking
+     */
+    @Attribute("dependency_depth")
+    public int getDependencyDepth() {
+        return this.myDependencyDepth;
+    }
+
+    public void setDependencyDepth(int dependencyDepth) {
+        this.myDependencyDepth = dependencyDepth;
+    }
+
+    /**
+     * File which receives results of batch runs, SARIF for ".sarif" files and JSON Lines otherwise.
+     * Relative path is resolved against the project root, empty path disables the export
+     */
+    @Attribute("report_path")
+    @NotNull
+    public String getReportPath() {
+        return this.myReportPath;
+    }
+
+    public void setReportPath(@Nullable String reportPath) {
+        this.myReportPath = StringUtil.notNullize(reportPath);
+    }
+
     @Override
     @NotNull
     public String getPresentableName(@Nullable Project project) {
@@ -121,6 +175,10 @@ public class PhalyfusionConfiguration implements QualityToolConfiguration {
         settings.myMaxMessagesPerFile = this.myMaxMessagesPerFile;
         settings.myTimeoutMs = this.myTimeoutMs;
         settings.isOnFlyModeEnabled = this.isOnFlyModeEnabled;
+        settings.myMaxProcesses = this.myMaxProcesses;
+        settings.isWorkerModeEnabled = this.isWorkerModeEnabled;
+        settings.myDependencyDepth = this.myDependencyDepth;
+        settings.myReportPath = this.myReportPath;
     }
 
     @Override
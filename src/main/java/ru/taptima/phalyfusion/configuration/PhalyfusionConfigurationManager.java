@@ -10,9 +10,6 @@ import com.intellij.openapi.components.Storage;
 import com.intellij.openapi.project.Project;
 import com.intellij.openapi.util.Pair;
 import com.intellij.openapi.util.SystemInfo;
-import com.intellij.openapi.vfs.VirtualFile;
-import com.jetbrains.php.composer.ComposerConfigUtils;
-import com.jetbrains.php.composer.ComposerDataService;
 import com.jetbrains.php.config.interpreters.PhpInterpreter;
 import com.jetbrains.php.tools.quality.QualityToolConfigurationManager;
 import org.jetbrains.annotations.NotNull;
@@ -64,32 +61,32 @@ public class PhalyfusionConfigurationManager extends QualityToolConfigurationMan
             return;
         }
 
-        File neonConfig = new File(this.myProject.getBasePath() + "/" + "phalyfusion.neon");
-        if (neonConfig.isFile()) {
+        // Launch path only looks at cached metadata, the file system is checked when the configuration is created
+        var metadata = PhalyfusionComposerMetadata.getInstance(this.myProject);
+        var snapshot = metadata.getSnapshot();
+        if (snapshot.isNeonConfigExists() || snapshot.getBinDir() == null) {
             return;
         }
 
-        var config= ComposerDataService.getInstance(this.myProject).getConfigFile();
-        Pair<String, String> vendors = getVendorAndBinDirs(config);
-        if (vendors == null) return;
-
-        var packagesList = ComposerConfigUtils.getInstalledPackagesFromConfig(config);
+        File neonConfig = new File(this.myProject.getBasePath() + "/" + PhalyfusionComposerMetadata.NEON_CONFIG_NAME);
         List<Pair<CodeAnalyzer, String>> existingAnalysers = new ArrayList<>();
         StringBuilder analyzersString = new StringBuilder();
 
         synchronized (FILE_LOCK) {
-            for (var pkg : packagesList) {
-                var res = CODE_ANALYZERS.stream().filter((it) -> it.fullName.equals(pkg.getName())).findFirst();
+            if (neonConfig.isFile()) {
+                return;
+            }
 
-                if (res.isEmpty()) {
+            for (var analyzer : CODE_ANALYZERS) {
+                if (!snapshot.isPackageInstalled(analyzer.fullName)) {
                     continue;
                 }
 
-                var analyzerPath = vendors.second + "/" + res.get().name;
+                var analyzerPath = snapshot.getBinDir() + "/" + analyzer.name;
 
                 if (!new File(this.myProject.getBasePath() + "/" + analyzerPath).isFile()) {
                     Notifications.Bus.notify(new Notification(
-                            GROUP_ID, "Phalyfusion", "Can not find " + res.get().name + " package bin",
+                            GROUP_ID, "Phalyfusion", "Can not find " + analyzer.name + " package bin",
                             NotificationType.ERROR, null));
                     continue;
                 }
@@ -97,11 +94,16 @@ public class PhalyfusionConfigurationManager extends QualityToolConfigurationMan
                 if (SystemInfo.isWindows) {
                     analyzerPath = analyzerPath.replace("/", "\\\\");
                 }
-                existingAnalysers.add(new Pair<>(res.get(), analyzerPath));
-                analyzersString.append(res.get().name).append(" ");
+                existingAnalysers.add(new Pair<>(analyzer, analyzerPath));
+                analyzersString.append(analyzer.name).append(" ");
             }
 
-            createNeonConfiguration(neonConfig, existingAnalysers);
+            try {
+                createNeonConfiguration(neonConfig, existingAnalysers);
+            } finally {
+                // The file is written bypassing VFS
+                metadata.invalidate();
+            }
         }
 
         Notifications.Bus.notify(new Notification(
@@ -135,29 +137,15 @@ public class PhalyfusionConfigurationManager extends QualityToolConfigurationMan
             return;
         }
 
-        var config= ComposerDataService.getInstance(this.myProject).getConfigFile();
-        Pair<String, String> vendors = getVendorAndBinDirs(config);
-        if (vendors == null) return;
-
-        var packagesList = ComposerConfigUtils.getInstalledPackagesFromConfig(config);
-        if (packagesList.stream().anyMatch(it -> it.getName().equals("taptima/phalyfusion"))) {
-            var phalyfusionPath = vendors.second + "/phalyfusion" + (SystemInfo.isWindows ? ".bat" : "");
+        var phalyfusionPath = PhalyfusionComposerMetadata.getInstance(this.myProject).getSnapshot().getPhalyfusionPath();
+        if (phalyfusionPath != null) {
             Notifications.Bus.notify(new Notification(
                     GROUP_ID, "Phalyfusion", "Phalyfusion detected at " + phalyfusionPath,
                     NotificationType.INFORMATION, null));
-            configuration.setToolPath(config.getParent().getPath() + "/" + phalyfusionPath);
+            configuration.setToolPath(phalyfusionPath);
         }
     }
 
-    @Nullable
-    private Pair<String, String> getVendorAndBinDirs(@Nullable VirtualFile config) {
-        if (config == null) {
-            return null;
-        }
-
-        return ComposerConfigUtils.getVendorAndBinDirs(config);
-    }
-
     @Override
     public List<PhalyfusionConfiguration> getAllSettings() {
         var settings = super.getAllSettings();
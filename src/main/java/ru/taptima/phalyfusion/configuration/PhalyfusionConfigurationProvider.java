@@ -30,5 +30,7 @@ public abstract class PhalyfusionConfigurationProvider extends QualityToolConfig
         }
 
         settings.setTimeout(localConfiguration.getTimeout());
+        settings.setMaxProcesses(localConfiguration.getMaxProcesses());
+        settings.setDependencyDepth(localConfiguration.getDependencyDepth());
     }
 }
\ No newline at end of file
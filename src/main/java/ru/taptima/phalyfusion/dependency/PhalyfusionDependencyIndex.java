@@ -0,0 +1,152 @@
+package ru.taptima.phalyfusion.dependency;
+
+import com.intellij.openapi.application.ReadAction;
+import com.intellij.openapi.components.ServiceManager;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.progress.ProgressManager;
+import com.intellij.openapi.project.DumbService;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.psi.PsiElement;
+import com.intellij.psi.PsiFile;
+import com.intellij.psi.PsiManager;
+import com.intellij.psi.search.GlobalSearchScope;
+import com.intellij.psi.search.searches.ReferencesSearch;
+import com.intellij.psi.util.PsiModificationTracker;
+import com.jetbrains.php.PhpIndex;
+import com.jetbrains.php.lang.psi.PhpFile;
+import com.jetbrains.php.lang.psi.elements.Function;
+import com.jetbrains.php.lang.psi.elements.PhpClass;
+import com.jetbrains.php.lang.psi.elements.PhpNamedElement;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Reverse dependencies of PHP files: files with subclasses and implementations of declared classes and interfaces,
+ * files which import, reference or call declared classes and functions.
+ * Direct dependents are computed on demand from PHP index and kept until PSI is modified.
+ */
+public class PhalyfusionDependencyIndex {
+    private static final Logger LOG = Logger.getInstance(PhalyfusionDependencyIndex.class);
+    // Dependency search is not worth it for big change sets, e.g. for the first run with empty cache
+    private static final int MAX_CHANGED_FILES = 1000;
+    private static final int MAX_DEPENDENT_FILES = 2000;
+
+    private final Project myProject;
+    private final Map<VirtualFile, Set<VirtualFile>> myDirectDependents = new ConcurrentHashMap<>();
+    private volatile long myModificationCount = -1;
+
+    public PhalyfusionDependencyIndex(@NotNull Project project) {
+        myProject = project;
+    }
+
+    public static PhalyfusionDependencyIndex getInstance(@NotNull Project project) {
+        return ServiceManager.getService(project, PhalyfusionDependencyIndex.class);
+    }
+
+    /**
+     * @return files depending on changed files up to the given depth, changed files are not included
+     */
+    @NotNull
+    public Set<VirtualFile> getDependents(@NotNull Collection<VirtualFile> changedFiles, int depth) {
+        if (depth <= 0 || changedFiles.isEmpty()) {
+            return Collections.emptySet();
+        }
+        if (changedFiles.size() > MAX_CHANGED_FILES) {
+            LOG.info("Dependents are not collected for " + changedFiles.size() + " changed files");
+            return Collections.emptySet();
+        }
+        if (DumbService.isDumb(myProject)) {
+            LOG.info("Dependents are not collected during indexing");
+            return Collections.emptySet();
+        }
+
+        Set<VirtualFile> visited = new HashSet<>(changedFiles);
+        Set<VirtualFile> dependents = new LinkedHashSet<>();
+        List<VirtualFile> level = new ArrayList<>(changedFiles);
+        for (int i = 0; i < depth && !level.isEmpty(); i++) {
+            List<VirtualFile> nextLevel = new ArrayList<>();
+            for (VirtualFile file : level) {
+                for (VirtualFile dependent : getDirectDependents(file)) {
+                    if (!visited.add(dependent)) {
+                        continue;
+                    }
+                    if (dependents.size() >= MAX_DEPENDENT_FILES) {
+                        LOG.info("Dependents are limited by " + MAX_DEPENDENT_FILES + " files");
+                        return dependents;
+                    }
+
+                    dependents.add(dependent);
+                    nextLevel.add(dependent);
+                }
+            }
+            level = nextLevel;
+        }
+
+        return dependents;
+    }
+
+    @NotNull
+    private Set<VirtualFile> getDirectDependents(@NotNull VirtualFile file) {
+        long modificationCount = PsiModificationTracker.SERVICE.getInstance(myProject).getModificationCount();
+        if (modificationCount != myModificationCount) {
+            myDirectDependents.clear();
+            myModificationCount = modificationCount;
+        }
+
+        Set<VirtualFile> dependents = myDirectDependents.get(file);
+        if (dependents == null) {
+            // Non-blocking read action is restarted instead of blocking write actions during long reference search
+            dependents = ReadAction.nonBlocking(() -> computeDirectDependents(file)).executeSynchronously();
+            myDirectDependents.put(file, dependents);
+        }
+        return dependents;
+    }
+
+    @NotNull
+    private Set<VirtualFile> computeDirectDependents(@NotNull VirtualFile file) {
+        if (!file.isValid()) {
+            return Collections.emptySet();
+        }
+
+        PsiFile psiFile = PsiManager.getInstance(myProject).findFile(file);
+        if (!(psiFile instanceof PhpFile)) {
+            return Collections.emptySet();
+        }
+
+        PhpIndex phpIndex = PhpIndex.getInstance(myProject);
+        GlobalSearchScope scope = GlobalSearchScope.projectScope(myProject);
+        Set<VirtualFile> dependents = new HashSet<>();
+
+        for (PhpNamedElement element : ((PhpFile) psiFile).getTopLevelDefs().values()) {
+            ProgressManager.checkCanceled();
+            if (element instanceof PhpClass) {
+                for (PhpClass subclass : phpIndex.getAllSubclasses(((PhpClass) element).getFQN())) {
+                    addFile(dependents, subclass);
+                }
+            } else if (!(element instanceof Function)) {
+                continue;
+            }
+
+            // Imports, type hints, instantiations, static and function calls
+            ReferencesSearch.search(element, scope).forEach(reference -> {
+                addFile(dependents, reference.getElement());
+                return true;
+            });
+        }
+
+        dependents.remove(file);
+        return dependents;
+    }
+
+    private static void addFile(@NotNull Set<VirtualFile> files, @Nullable PsiElement element) {
+        PsiFile psiFile = element == null ? null : element.getContainingFile();
+        VirtualFile file = psiFile == null ? null : psiFile.getVirtualFile();
+        if (file != null) {
+            files.add(file);
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package ru.taptima.phalyfusion.export;
+
+import com.jetbrains.php.tools.quality.QualityToolMessage;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * One JSON object per message per line:
+ * {"file":"src/Foo.php","line":8,"severity":"error","analyzer":"phpstan","message":"Undefined variable: $td"}
+ * Analysers of folded equivalent messages are listed in "alsoReportedBy"
+ */
+public class PhalyfusionJsonLinesWriter extends PhalyfusionReportWriter {
+    public PhalyfusionJsonLinesWriter(@NotNull File target) throws IOException {
+        super(target);
+        // Lenient writer accepts several top-level values
+        myJson.setLenient(true);
+    }
+
+    @Override
+    protected void writeMessage(@NotNull String path, int line, @NotNull QualityToolMessage.Severity severity,
+                                @Nullable String analyzer, @NotNull String text, @Nullable String[] foldedAnalyzers) throws IOException {
+        myJson.beginObject();
+        myJson.name("file").value(path);
+        myJson.name("line").value(line);
+        myJson.name("severity").value(toLevel(severity));
+        myJson.name("analyzer").value(analyzer);
+        myJson.name("message").value(text);
+        if (foldedAnalyzers != null) {
+            writeArray(myJson.name("alsoReportedBy"), foldedAnalyzers);
+        }
+        myJson.endObject();
+        myWriter.write('\n');
+    }
+
+    @Override
+    protected void writeFooter() {
+    }
+}
@@ -0,0 +1,124 @@
+package ru.taptima.phalyfusion.export;
+
+import com.google.gson.stream.JsonWriter;
+import com.intellij.openapi.util.io.FileUtil;
+import com.jetbrains.php.tools.quality.QualityToolMessage;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import ru.taptima.phalyfusion.PhalyfusionMessage;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * Writes results of a batch run to a report file message by message, so nothing but the current message is kept in memory.
+ * The report is written to a temporary file which replaces the target one when the run is finished,
+ * so readers never see a partial report
+ */
+public abstract class PhalyfusionReportWriter implements Closeable {
+    public static final String SARIF_EXTENSION = "sarif";
+
+    private final File myTarget;
+    private final File myTempFile;
+    protected final Writer myWriter;
+    protected final JsonWriter myJson;
+    private long myMessagesCount = 0;
+    private boolean isCompleted = false;
+    // The first write failure, the report is not written after it
+    private IOException myError;
+
+    protected PhalyfusionReportWriter(@NotNull File target) throws IOException {
+        myTarget = target;
+        FileUtil.createParentDirs(target);
+        myTempFile = new File(target.getPath() + ".tmp");
+        myWriter = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(myTempFile), StandardCharsets.UTF_8), 1 << 16);
+        myJson = new JsonWriter(myWriter);
+    }
+
+    /**
+     * SARIF is written for ".sarif" and ".sarif.json" files, JSON Lines for all other files
+     */
+    @NotNull
+    public static PhalyfusionReportWriter create(@NotNull File target) throws IOException {
+        String name = target.getName().toLowerCase();
+        return name.endsWith("." + SARIF_EXTENSION) || name.endsWith("." + SARIF_EXTENSION + ".json")
+                ? new PhalyfusionSarifWriter(target) : new PhalyfusionJsonLinesWriter(target);
+    }
+
+    /**
+     * Failures are reported by {@link #close()}, so reporting of problems is not interrupted
+     *
+     * @param path project relative path of the file with forward slashes, absolute for files out of the project
+     * @param messageText text without the list of folded analysers
+     * @param foldedAnalyzers analysers of equivalent messages folded into this one or null
+     */
+    public void write(@NotNull String path, int line, @NotNull QualityToolMessage.Severity severity, @NotNull String messageText,
+                      @Nullable String[] foldedAnalyzers) {
+        if (myError != null) {
+            return;
+        }
+
+        String analyzer = PhalyfusionMessage.getAnalyzer(messageText);
+        String text = analyzer != null ? messageText.substring(analyzer.length() + 1).trim() : messageText;
+        try {
+            writeMessage(path, line, severity, analyzer, text, foldedAnalyzers);
+            myMessagesCount++;
+        } catch (IOException e) {
+            myError = e;
+        }
+    }
+
+    public long getMessagesCount() {
+        return myMessagesCount;
+    }
+
+    /**
+     * Marks the report as complete, otherwise it is dropped on close
+     */
+    public void complete() {
+        isCompleted = true;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            if (isCompleted && myError == null) {
+                writeFooter();
+            }
+            myJson.flush();
+        } catch (IOException e) {
+            myError = myError != null ? myError : e;
+        } finally {
+            myWriter.close();
+        }
+
+        if (isCompleted && myError == null) {
+            Files.move(myTempFile.toPath(), myTarget.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } else {
+            FileUtil.delete(myTempFile);
+        }
+        if (myError != null) {
+            throw myError;
+        }
+    }
+
+    protected abstract void writeMessage(@NotNull String path, int line, @NotNull QualityToolMessage.Severity severity,
+                                         @Nullable String analyzer, @NotNull String text, @Nullable String[] foldedAnalyzers) throws IOException;
+
+    protected abstract void writeFooter() throws IOException;
+
+    @NotNull
+    static String toLevel(@NotNull QualityToolMessage.Severity severity) {
+        return severity == QualityToolMessage.Severity.ERROR ? "error" : "warning";
+    }
+
+    static void writeArray(@NotNull JsonWriter json, @NotNull String[] values) throws IOException {
+        json.beginArray();
+        for (String value : values) {
+            json.value(value);
+        }
+        json.endArray();
+    }
+}
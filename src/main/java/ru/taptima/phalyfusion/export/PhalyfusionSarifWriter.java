@@ -0,0 +1,107 @@
+package ru.taptima.phalyfusion.export;
+
+import com.jetbrains.php.tools.quality.QualityToolMessage;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * SARIF 2.1.0 log with a single run. Header is written right away and results are appended as they come,
+ * analyser name is used as the rule id. Analysers of folded equivalent messages are listed in "alsoReportedBy" property
+ */
+public class PhalyfusionSarifWriter extends PhalyfusionReportWriter {
+    private static final String SCHEMA = "https://json.schemastore.org/sarif-2.1.0.json";
+    private static final String SOURCE_ROOT = "%SRCROOT%";
+    private static final char[] HEX_DIGITS = "0123456789ABCDEF".toCharArray();
+
+    public PhalyfusionSarifWriter(@NotNull File target) throws IOException {
+        super(target);
+        myJson.beginObject();
+        myJson.name("$schema").value(SCHEMA);
+        myJson.name("version").value("2.1.0");
+        myJson.name("runs").beginArray();
+        myJson.beginObject();
+        myJson.name("tool").beginObject();
+        myJson.name("driver").beginObject();
+        myJson.name("name").value("Phalyfusion");
+        myJson.name("informationUri").value("https://github.com/taptima/phalyfusion");
+        myJson.endObject();
+        myJson.endObject();
+        myJson.name("results").beginArray();
+    }
+
+    @Override
+    protected void writeMessage(@NotNull String path, int line, @NotNull QualityToolMessage.Severity severity,
+                                @Nullable String analyzer, @NotNull String text, @Nullable String[] foldedAnalyzers) throws IOException {
+        myJson.beginObject();
+        if (analyzer != null) {
+            myJson.name("ruleId").value(analyzer);
+        }
+        myJson.name("level").value(toLevel(severity));
+        myJson.name("message").beginObject().name("text").value(text).endObject();
+        myJson.name("locations").beginArray().beginObject();
+        myJson.name("physicalLocation").beginObject();
+        myJson.name("artifactLocation").beginObject();
+        if (isAbsolute(path)) {
+            myJson.name("uri").value("file://" + (path.startsWith("/") ? "" : "/") + toUri(path));
+        } else {
+            myJson.name("uri").value(toUri(path));
+            myJson.name("uriBaseId").value(SOURCE_ROOT);
+        }
+        myJson.endObject();
+        if (line > 0) {
+            myJson.name("region").beginObject().name("startLine").value(line).endObject();
+        }
+        myJson.endObject();
+        myJson.endObject().endArray();
+        if (analyzer != null || foldedAnalyzers != null) {
+            myJson.name("properties").beginObject();
+            if (analyzer != null) {
+                myJson.name("analyzer").value(analyzer);
+            }
+            if (foldedAnalyzers != null) {
+                writeArray(myJson.name("alsoReportedBy"), foldedAnalyzers);
+            }
+            myJson.endObject();
+        }
+        myJson.endObject();
+    }
+
+    /**
+     * Files out of the project have absolute paths, e.g. "/usr/share/php/Foo.php" or "C:/php/Foo.php"
+     */
+    static boolean isAbsolute(@NotNull String path) {
+        return path.startsWith("/") || path.length() > 1 && path.charAt(1) == ':' && Character.isLetter(path.charAt(0));
+    }
+
+    /**
+     * Percent-encodes every segment of the path as UTF-8, only unreserved characters and the drive colon are kept
+     */
+    @NotNull
+    static String toUri(@NotNull String path) {
+        StringBuilder uri = new StringBuilder(path.length() + 16);
+        int start = isAbsolute(path) && !path.startsWith("/") ? 2 : 0;
+        uri.append(path, 0, start);
+        for (byte b : path.substring(start).getBytes(StandardCharsets.UTF_8)) {
+            char c = (char) (b & 0xFF);
+            if (c >= 'a' && c <= 'z' || c >= 'A' && c <= 'Z' || c >= '0' && c <= '9'
+                    || c == '-' || c == '.' || c == '_' || c == '~' || c == '/') {
+                uri.append(c);
+            } else {
+                uri.append('%').append(HEX_DIGITS[c >> 4]).append(HEX_DIGITS[c & 0xF]);
+            }
+        }
+        return uri.toString();
+    }
+
+    @Override
+    protected void writeFooter() throws IOException {
+        myJson.endArray();
+        myJson.endObject();
+        myJson.endArray();
+        myJson.endObject();
+    }
+}
@@ -0,0 +1,211 @@
+package ru.taptima.phalyfusion.folding;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Computes keys of issues which are reported by different analysers in different wording,
+ * e.g. "phpstan: Undefined variable: $a", "psalm: UndefinedVariable: Cannot find referenced variable $a"
+ * and "phan: PhanUndeclaredVariable Variable $a is undeclared". Key is built from the line, the issue category
+ * and the symbols taken from the message: class and member names, called functions, variables.
+ * Class, function and member names are compared case-insensitively by their last namespace segment
+ */
+public class PhalyfusionIssueNormalizer {
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private enum Category {
+        // Order matters: the first matching category wins and more specific ones go first
+        UNDEFINED_PROPERTY(null, "undefined property", "undefinedproperty", "undefinedthisproperty", "undeclared property", "undeclaredproperty"),
+        UNDEFINED_METHOD(null, "undefined method", "undefined static method", "undefinedmethod", "undefinedthismethod",
+                "undeclared method", "undeclaredmethod", "undeclaredstaticmethod"),
+        UNDEFINED_CLASS("class", "undefined class", "undefinedclass", "undeclared class", "undeclaredclass", "unknown class"),
+        UNDEFINED_FUNCTION("function", "undefined function", "undefinedfunction", "undeclared function", "undeclaredfunction"),
+        UNDEFINED_CONSTANT("constant", "undefined constant", "undefinedconstant", "undeclared constant", "undeclaredconstant"),
+        UNDEFINED_VARIABLE(null, "undefined variable", "undefinedvariable", "undeclaredvariable", "referenced variable", "might not be defined"),
+        ARGUMENT_COUNT(null, "toofewarguments", "toomanyarguments", "paramtoofew", "paramtoomany", "invoked with"),
+        ARGUMENT_TYPE(null, "invalidargument", "invalidscalarargument", "argumenttypecoercion", "typemismatchargument", " expects "),
+        RETURN_TYPE(null, "invalidreturn", "typemismatchreturn", "should return"),
+        UNUSED_VARIABLE(null, "unusedvariable", "unused variable");
+
+        // Messages like "Class Foo not found" belong to the category too
+        private final String mySubject;
+        private final String[] myKeywords;
+
+        Category(@Nullable String subject, @NotNull String... keywords) {
+            mySubject = subject;
+            myKeywords = keywords;
+        }
+
+        boolean matches(@NotNull String text) {
+            for (String keyword : myKeywords) {
+                if (text.contains(keyword)) {
+                    return true;
+                }
+            }
+            return mySubject != null && (text.startsWith(mySubject + " ") || text.contains(" " + mySubject + " "))
+                    && (text.contains("not found") || text.contains("does not exist"));
+        }
+    }
+
+    // Words followed by the subject name in messages without code-like symbols, in order of preference
+    private static final String[] SUBJECT_WORDS = {"named", "function", "class", "constant"};
+
+    /**
+     * Symbols found in a message, hashed order-insensitively by kind
+     */
+    private static class Symbols {
+        private long myMembers;
+        private long myFunctions;
+        private long myVariables;
+        private long myClasses;
+        private String mySubject;
+        private int mySubjectPriority = SUBJECT_WORDS.length;
+    }
+
+    private PhalyfusionIssueNormalizer() {
+    }
+
+    /**
+     * @param messageText message without the analyser prefix
+     * @return key of the issue or 0 when the message is not recognized and can not be folded
+     */
+    public static long getIssueKey(int line, @NotNull String messageText) {
+        String text = messageText.toLowerCase();
+        Category category = null;
+        for (Category candidate : Category.values()) {
+            if (candidate.matches(text)) {
+                category = candidate;
+                break;
+            }
+        }
+        if (category == null) {
+            return 0;
+        }
+
+        long symbols = hashSymbols(messageText);
+        if (symbols == 0) {
+            return 0;
+        }
+
+        long key = finish(mix(mix(mix(FNV_OFFSET, category.ordinal()), line), symbols));
+        return key != 0 ? key : 1;
+    }
+
+    /**
+     * Member references are the most specific symbols, e.g. "Parameter #1 $x of method Foo::bar()"
+     * and "Argument 1 of Foo::bar" are equal by them. Less specific kinds are used only when there are none
+     */
+    private static long hashSymbols(@NotNull String text) {
+        var symbols = new Symbols();
+        int length = text.length();
+        String prevWord = null;
+        int i = 0;
+        while (i < length) {
+            char ch = text.charAt(i);
+            if (ch == '$' && i + 1 < length && isNameStart(text.charAt(i + 1))) {
+                int end = skipName(text, i + 1, false);
+                symbols.myVariables += hash(text, i + 1, end, false);
+                prevWord = null;
+                i = end;
+                continue;
+            }
+            if (!isNameStart(ch) && ch != '\\') {
+                i++;
+                continue;
+            }
+
+            int start = i;
+            int end = skipName(text, i, true);
+            if (end + 1 < length && (text.startsWith("::", end) || text.startsWith("->", end))) {
+                int memberStart = end + 2;
+                if (memberStart < length && text.charAt(memberStart) == '$') {
+                    memberStart++;
+                }
+                int memberEnd = memberStart < length && isNameStart(text.charAt(memberStart)) ? skipName(text, memberStart, false) : memberStart;
+                if (memberEnd > memberStart) {
+                    symbols.myMembers += mix(hashLeaf(text, start, end), hash(text, memberStart, memberEnd, true));
+                    prevWord = null;
+                    i = memberEnd;
+                    continue;
+                }
+            }
+
+            if (end < length && text.charAt(end) == '(') {
+                symbols.myFunctions += hashLeaf(text, start, end);
+            } else if (text.indexOf('\\', start) >= 0 && text.indexOf('\\', start) < end) {
+                symbols.myClasses += hashLeaf(text, start, end);
+            } else if (prevWord != null && !Character.isDigit(ch)) {
+                for (int priority = 0; priority < symbols.mySubjectPriority; priority++) {
+                    if (prevWord.equalsIgnoreCase(SUBJECT_WORDS[priority])) {
+                        symbols.mySubject = text.substring(start, end);
+                        symbols.mySubjectPriority = priority;
+                        break;
+                    }
+                }
+            }
+            prevWord = text.substring(start, end);
+            i = end;
+        }
+
+        if (symbols.myMembers != 0) {
+            return symbols.myMembers;
+        }
+        if (symbols.myFunctions != 0) {
+            return symbols.myFunctions;
+        }
+        if (symbols.myVariables != 0) {
+            return symbols.myVariables;
+        }
+        if (symbols.myClasses != 0) {
+            return symbols.myClasses;
+        }
+        return symbols.mySubject != null ? hashLeaf(symbols.mySubject, 0, symbols.mySubject.length()) : 0;
+    }
+
+    private static boolean isNameStart(char ch) {
+        return Character.isLetter(ch) || ch == '_' || ch >= 0x80;
+    }
+
+    private static int skipName(@NotNull String text, int start, boolean isNamespaced) {
+        int i = start;
+        while (i < text.length()) {
+            char ch = text.charAt(i);
+            if (!(Character.isLetterOrDigit(ch) || ch == '_' || ch >= 0x80 || isNamespaced && ch == '\\')) {
+                break;
+            }
+            i++;
+        }
+        return i;
+    }
+
+    /**
+     * Hashes the last segment of a namespaced name, leading backslash and namespaces are reported differently
+     */
+    private static long hashLeaf(@NotNull String text, int start, int end) {
+        int leafStart = text.lastIndexOf('\\', end - 1) + 1;
+        return hash(text, Math.max(start, leafStart), end, true);
+    }
+
+    private static long hash(@NotNull String text, int start, int end, boolean isCaseInsensitive) {
+        long hash = FNV_OFFSET;
+        for (int i = start; i < end; i++) {
+            char ch = text.charAt(i);
+            hash = mix(hash, isCaseInsensitive ? Character.toLowerCase(ch) : ch);
+        }
+        return finish(hash);
+    }
+
+    private static long mix(long hash, long value) {
+        return (hash ^ value) * FNV_PRIME;
+    }
+
+    private static long finish(long hash) {
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
@@ -0,0 +1,131 @@
+package ru.taptima.phalyfusion.folding;
+
+import java.util.Arrays;
+
+/**
+ * Handles of messages of the current file by their issue keys, so equivalent messages of other analysers are folded into them.
+ * Tools report messages file by file, so only one file is kept: keys and handles are primitives in an open addressing table
+ * which is cleared when messages of another file come. Keys of dropped messages, e.g. baselined ones, have negative handles
+ * made by {@link #dropped(int)}, so the analyser of the dropped message is known
+ */
+public class PhalyfusionMessageFolder {
+    public static final int UNKNOWN = Integer.MIN_VALUE;
+    private static final int MAX_KEPT_CAPACITY = 1024;
+
+    private long[] myKeys = new long[16];
+    private int[] myHandles = new int[16];
+    private int mySize = 0;
+    private int myFileId = -1;
+
+    /**
+     * @param key non-zero issue key
+     */
+    public boolean contains(int fileId, long key) {
+        return find(fileId, key) >= 0;
+    }
+
+    /**
+     * @return handle of the message or {@link #UNKNOWN}
+     */
+    public int get(int fileId, long key) {
+        int slot = find(fileId, key);
+        return slot >= 0 ? myHandles[slot] : UNKNOWN;
+    }
+
+    /**
+     * @param analyzerId non-negative id of the analyser which reported the dropped message
+     * @return handle of the dropped message
+     */
+    public static int dropped(int analyzerId) {
+        return -1 - analyzerId;
+    }
+
+    public static boolean isDropped(int handle) {
+        return handle < 0 && handle != UNKNOWN;
+    }
+
+    /**
+     * @return id of the analyser of the dropped message
+     */
+    public static int getDroppedAnalyzer(int handle) {
+        return -1 - handle;
+    }
+
+    /**
+     * Keeps the message which was put first
+     *
+     * @param handle non-negative handle of the message or handle of a dropped one
+     */
+    public void putIfAbsent(int fileId, long key, int handle) {
+        if (fileId != myFileId) {
+            clear();
+            myFileId = fileId;
+        }
+        // Table is kept at most half full
+        if ((mySize + 1) * 2 > myKeys.length) {
+            rehash(myKeys.length * 2);
+        }
+
+        int mask = myKeys.length - 1;
+        int slot = slotOf(key, mask);
+        while (myKeys[slot] != 0) {
+            if (myKeys[slot] == key) {
+                return;
+            }
+            slot = (slot + 1) & mask;
+        }
+        myKeys[slot] = key;
+        myHandles[slot] = handle;
+        mySize++;
+    }
+
+    public void clear() {
+        // Table of a file with lots of messages is not kept for the rest of files
+        if (myKeys.length > MAX_KEPT_CAPACITY) {
+            myKeys = new long[16];
+            myHandles = new int[16];
+            mySize = 0;
+        } else if (mySize > 0) {
+            Arrays.fill(myKeys, 0);
+            mySize = 0;
+        }
+        myFileId = -1;
+    }
+
+    private int find(int fileId, long key) {
+        if (fileId != myFileId) {
+            return -1;
+        }
+
+        int mask = myKeys.length - 1;
+        for (int slot = slotOf(key, mask); myKeys[slot] != 0; slot = (slot + 1) & mask) {
+            if (myKeys[slot] == key) {
+                return slot;
+            }
+        }
+        return -1;
+    }
+
+    private void rehash(int capacity) {
+        long[] keys = myKeys;
+        int[] handles = myHandles;
+        myKeys = new long[capacity];
+        myHandles = new int[capacity];
+
+        int mask = capacity - 1;
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != 0) {
+                int slot = slotOf(keys[i], mask);
+                while (myKeys[slot] != 0) {
+                    slot = (slot + 1) & mask;
+                }
+                myKeys[slot] = keys[i];
+                myHandles[slot] = handles[i];
+            }
+        }
+    }
+
+    private static int slotOf(long key, int mask) {
+        return (int) (key ^ (key >>> 32)) & mask;
+    }
+}
@@ -3,12 +3,14 @@ package ru.taptima.phalyfusion.form;
 import com.intellij.openapi.project.Project;
 import com.intellij.openapi.util.Pair;
 import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.ui.components.JBTextField;
 import com.intellij.ui.components.OnOffButton;
 import com.jetbrains.php.tools.quality.QualityToolConfigurableForm;
 import com.jetbrains.php.tools.quality.QualityToolCustomSettings;
 import com.jetbrains.php.tools.quality.QualityToolType;
 import ru.taptima.phalyfusion.PhalyfusionQualityToolType;
 import ru.taptima.phalyfusion.configuration.PhalyfusionConfiguration;
+import ru.taptima.phalyfusion.remote.PhalyfusionRemoteConfiguration;
 import org.jetbrains.annotations.Nls;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
@@ -61,11 +63,31 @@ public class PhalyfusionConfigurableForm<C extends PhalyfusionConfiguration> ext
             super();
             myConfiguration = configuration;
             initialOnFlyMode = myConfiguration.getOnFlyMode();
+            initialMaxProcesses = myConfiguration.getMaxProcesses();
+            initialWorkerMode = myConfiguration.getWorkerMode();
+            initialDependencyDepth = myConfiguration.getDependencyDepth();
+            initialReportPath = myConfiguration.getReportPath();
+            initialSyncDirectory = myConfiguration instanceof PhalyfusionRemoteConfiguration
+                    ? ((PhalyfusionRemoteConfiguration) myConfiguration).getSyncDirectory() : null;
         }
 
+        private static final int MAX_PROCESSES_LIMIT = 64;
+        private static final int MAX_DEPENDENCY_DEPTH = 5;
+
         private final PhalyfusionConfiguration myConfiguration;
         private final boolean initialOnFlyMode;
+        private final int initialMaxProcesses;
+        private final boolean initialWorkerMode;
+        private final int initialDependencyDepth;
+        private final String initialReportPath;
+        // Null for local configuration
+        private final String initialSyncDirectory;
         private OnOffButton onFlyModeBtn;
+        private OnOffButton workerModeBtn;
+        private JSpinner maxProcessesSpinner;
+        private JSpinner dependencyDepthSpinner;
+        private JBTextField reportPathField;
+        private JBTextField syncDirectoryField;
 
         @Override
         public @NotNull Pair<Boolean, String> validate() {
@@ -80,24 +102,78 @@ public class PhalyfusionConfigurableForm<C extends PhalyfusionConfiguration> ext
         @Override
         public @Nullable JComponent createComponent() {
             var panel = new JPanel();
-            var layout = new BoxLayout(panel, BoxLayout.X_AXIS);
-            panel.setLayout(layout);
+            panel.setLayout(new BoxLayout(panel, BoxLayout.Y_AXIS));
+
+            var onFlyPanel = new JPanel();
+            onFlyPanel.setLayout(new BoxLayout(onFlyPanel, BoxLayout.X_AXIS));
             var label = new JLabel("Launch Phalyfusion tool in on-fly mode (may cause lags)");
-            panel.add(label);
+            onFlyPanel.add(label);
             onFlyModeBtn = new OnOffButton();
             onFlyModeBtn.setSelected(initialOnFlyMode);
-            panel.add(onFlyModeBtn);
+            onFlyPanel.add(onFlyModeBtn);
+            panel.add(onFlyPanel);
+
+            var workerPanel = new JPanel();
+            workerPanel.setLayout(new BoxLayout(workerPanel, BoxLayout.X_AXIS));
+            workerPanel.add(new JLabel("Keep Phalyfusion worker process running for on-fly mode (local interpreter only)"));
+            workerModeBtn = new OnOffButton();
+            workerModeBtn.setSelected(initialWorkerMode);
+            workerPanel.add(workerModeBtn);
+            panel.add(workerPanel);
+
+            var processesPanel = new JPanel();
+            processesPanel.setLayout(new BoxLayout(processesPanel, BoxLayout.X_AXIS));
+            processesPanel.add(new JLabel("Max parallel processes in batch mode (0 - number of CPU cores)"));
+            maxProcessesSpinner = new JSpinner(new SpinnerNumberModel(initialMaxProcesses, 0, MAX_PROCESSES_LIMIT, 1));
+            processesPanel.add(maxProcessesSpinner);
+            panel.add(processesPanel);
+
+            var dependencyPanel = new JPanel();
+            dependencyPanel.setLayout(new BoxLayout(dependencyPanel, BoxLayout.X_AXIS));
+            dependencyPanel.add(new JLabel("Re-analyse dependent files of changed files up to depth (0 - disabled)"));
+            dependencyDepthSpinner = new JSpinner(new SpinnerNumberModel(initialDependencyDepth, 0, MAX_DEPENDENCY_DEPTH, 1));
+            dependencyPanel.add(dependencyDepthSpinner);
+            panel.add(dependencyPanel);
+
+            var reportPanel = new JPanel();
+            reportPanel.setLayout(new BoxLayout(reportPanel, BoxLayout.X_AXIS));
+            reportPanel.add(new JLabel("Export batch results to (.sarif - SARIF, other - JSON Lines, empty - disabled)"));
+            reportPathField = new JBTextField(initialReportPath);
+            reportPanel.add(reportPathField);
+            panel.add(reportPanel);
+
+            if (initialSyncDirectory != null) {
+                var syncPanel = new JPanel();
+                syncPanel.setLayout(new BoxLayout(syncPanel, BoxLayout.X_AXIS));
+                syncPanel.add(new JLabel("Sync project to directory on interpreter host (empty - project is mapped)"));
+                syncDirectoryField = new JBTextField(initialSyncDirectory);
+                syncPanel.add(syncDirectoryField);
+                panel.add(syncPanel);
+            }
+
             return panel;
         }
 
         @Override
         public boolean isModified() {
-            return onFlyModeBtn.isSelected() != initialOnFlyMode;
+            return onFlyModeBtn.isSelected() != initialOnFlyMode
+                    || workerModeBtn.isSelected() != initialWorkerMode
+                    || (int) maxProcessesSpinner.getValue() != initialMaxProcesses
+                    || (int) dependencyDepthSpinner.getValue() != initialDependencyDepth
+                    || !reportPathField.getText().trim().equals(initialReportPath)
+                    || syncDirectoryField != null && !syncDirectoryField.getText().trim().equals(initialSyncDirectory);
         }
 
         @Override
         public void apply() {
             myConfiguration.setOnFlyMode(onFlyModeBtn.isSelected());
+            myConfiguration.setWorkerMode(workerModeBtn.isSelected());
+            myConfiguration.setMaxProcesses((int) maxProcessesSpinner.getValue());
+            myConfiguration.setDependencyDepth((int) dependencyDepthSpinner.getValue());
+            myConfiguration.setReportPath(reportPathField.getText().trim());
+            if (syncDirectoryField != null) {
+                ((PhalyfusionRemoteConfiguration) myConfiguration).setSyncDirectory(syncDirectoryField.getText().trim());
+            }
         }
     }
 }
@@ -0,0 +1,59 @@
+package ru.taptima.phalyfusion.process;
+
+import com.intellij.openapi.util.SystemInfo;
+import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.util.SystemProperties;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Temporary copies of unsaved documents for tools which can not read the content from stdin.
+ * Copies are written to a RAM-backed file system when it is available (/dev/shm on Linux), otherwise to the system temp directory
+ */
+public class PhalyfusionMemoryFiles {
+    private static final String SHARED_MEMORY_DIR = "/dev/shm";
+    private static volatile File ourRoot;
+
+    private PhalyfusionMemoryFiles() {
+    }
+
+    /**
+     * The copy has the same name as the original file and is placed in a separate directory
+     *
+     * @return created file, it should be removed with {@link #delete(File)}
+     */
+    @NotNull
+    public static File create(@NotNull String fileName, @NotNull String content) throws IOException {
+        Path dir = Files.createTempDirectory(getRoot().toPath(), "onfly");
+        Path file = dir.resolve(fileName);
+        // Content is not forced to the storage device, the file lives for a single run
+        Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+        return file.toFile();
+    }
+
+    public static void delete(@NotNull File file) {
+        FileUtil.delete(file.getParentFile());
+    }
+
+    @NotNull
+    private static File getRoot() throws IOException {
+        File root = ourRoot;
+        if (root == null) {
+            File sharedMemory = new File(SHARED_MEMORY_DIR);
+            File parent = SystemInfo.isLinux && sharedMemory.isDirectory() && sharedMemory.canWrite()
+                    ? sharedMemory : new File(FileUtil.getTempDirectory());
+            root = new File(parent, "phalyfusion-" + FileUtil.sanitizeFileName(SystemProperties.getUserName()));
+            ourRoot = root;
+        }
+
+        if (!root.isDirectory() && !root.mkdirs()) {
+            throw new IOException("Can not create directory " + root);
+        }
+        return root;
+    }
+}
@@ -0,0 +1,190 @@
+package ru.taptima.phalyfusion.process;
+
+import com.intellij.openapi.progress.ProcessCanceledException;
+import com.intellij.openapi.util.io.FileUtil;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Byte queue between the reader of process output and its parser, so the process is never blocked by slow parsing.
+ * Output is kept in a fixed-size memory buffer, when the parser falls behind and the buffer is full
+ * the rest is spilled to a memory mapped temporary file and read back from it. Heap usage does not depend on the output size.
+ * Bytes are read in the order they were written: while the spill file is not drained, everything is written to it
+ */
+class PhalyfusionOutputPipe implements Closeable {
+    private static final int SPILL_SEGMENT_SIZE = 16 * 1024 * 1024;
+
+    private final byte[] myBuffer;
+    private int myBufferStart = 0;
+    private int myBufferSize = 0;
+
+    private File mySpillFile;
+    private FileChannel mySpillChannel;
+    private long mySpillWritePos = 0;
+    private long mySpillReadPos = 0;
+    private long mySpilledBytes = 0;
+    private MappedByteBuffer myWriteSegment;
+    private long myWriteSegmentIdx = -1;
+    private MappedByteBuffer myReadSegment;
+    private long myReadSegmentIdx = -1;
+
+    private boolean isFinished = false;
+    private boolean isClosed = false;
+
+    PhalyfusionOutputPipe(int bufferSize) {
+        myBuffer = new byte[bufferSize];
+    }
+
+    /**
+     * Takes all remaining bytes of the source, never waits for the reader
+     */
+    synchronized void write(@NotNull ByteBuffer source) throws IOException {
+        if (isClosed) {
+            source.position(source.limit());
+            return;
+        }
+
+        while (source.hasRemaining()) {
+            if (mySpillReadPos == mySpillWritePos && myBufferSize < myBuffer.length) {
+                int end = (myBufferStart + myBufferSize) % myBuffer.length;
+                int count = Math.min(source.remaining(), end >= myBufferStart ? myBuffer.length - end : myBufferStart - end);
+                source.get(myBuffer, end, count);
+                myBufferSize += count;
+            } else {
+                spill(source);
+            }
+        }
+        notifyAll();
+    }
+
+    /**
+     * Marks the end of the output, the reader gets all written bytes first
+     */
+    synchronized void finish() {
+        isFinished = true;
+        notifyAll();
+    }
+
+    /**
+     * Waits till some bytes are available and moves as many of them as fits into the target
+     *
+     * @return number of moved bytes, -1 when the output is finished and read entirely or the pipe is closed
+     */
+    synchronized int read(@NotNull ByteBuffer target) throws IOException {
+        while (!isClosed && !isFinished && myBufferSize == 0 && mySpillReadPos == mySpillWritePos) {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                throw new ProcessCanceledException(e);
+            }
+        }
+        if (isClosed) {
+            return -1;
+        }
+
+        // Bytes of the memory buffer are older than spilled ones
+        if (myBufferSize > 0) {
+            int count = Math.min(target.remaining(), Math.min(myBufferSize, myBuffer.length - myBufferStart));
+            target.put(myBuffer, myBufferStart, count);
+            myBufferStart = (myBufferStart + count) % myBuffer.length;
+            myBufferSize -= count;
+            return count;
+        }
+        if (mySpillReadPos < mySpillWritePos) {
+            return unspill(target);
+        }
+        return -1;
+    }
+
+    /**
+     * @return number of bytes which did not fit into the memory buffer
+     */
+    synchronized long getSpilledBytes() {
+        return mySpilledBytes;
+    }
+
+    /**
+     * Drops unread bytes, the reader gets end of output and written bytes are ignored
+     */
+    @Override
+    public synchronized void close() {
+        if (isClosed) {
+            return;
+        }
+
+        isClosed = true;
+        myWriteSegment = null;
+        myReadSegment = null;
+        notifyAll();
+        if (mySpillFile != null) {
+            try {
+                mySpillChannel.close();
+            } catch (IOException ignored) {
+                // The file is deleted anyway
+            }
+            // Mapped file can not be deleted on Windows till the mapping is collected
+            if (!FileUtil.delete(mySpillFile)) {
+                mySpillFile.deleteOnExit();
+            }
+        }
+    }
+
+    private void spill(@NotNull ByteBuffer source) throws IOException {
+        if (mySpillChannel == null) {
+            mySpillFile = FileUtil.createTempFile("phalyfusion-output", ".spill", true);
+            mySpillChannel = FileChannel.open(mySpillFile.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE);
+        }
+
+        long segmentIdx = mySpillWritePos / SPILL_SEGMENT_SIZE;
+        if (segmentIdx != myWriteSegmentIdx) {
+            myWriteSegment = segmentIdx == myReadSegmentIdx ? myReadSegment : map(segmentIdx);
+            myWriteSegmentIdx = segmentIdx;
+        }
+
+        int offset = (int) (mySpillWritePos % SPILL_SEGMENT_SIZE);
+        int count = Math.min(source.remaining(), SPILL_SEGMENT_SIZE - offset);
+        ByteBuffer view = myWriteSegment.duplicate();
+        view.position(offset);
+        ByteBuffer chunk = source.slice();
+        chunk.limit(count);
+        view.put(chunk);
+        source.position(source.position() + count);
+        mySpillWritePos += count;
+        mySpilledBytes += count;
+    }
+
+    private int unspill(@NotNull ByteBuffer target) throws IOException {
+        long segmentIdx = mySpillReadPos / SPILL_SEGMENT_SIZE;
+        if (segmentIdx != myReadSegmentIdx) {
+            myReadSegment = segmentIdx == myWriteSegmentIdx ? myWriteSegment : map(segmentIdx);
+            myReadSegmentIdx = segmentIdx;
+        }
+
+        int offset = (int) (mySpillReadPos % SPILL_SEGMENT_SIZE);
+        int count = (int) Math.min(Math.min(target.remaining(), SPILL_SEGMENT_SIZE - offset), mySpillWritePos - mySpillReadPos);
+        ByteBuffer view = myReadSegment.duplicate();
+        view.position(offset);
+        view.limit(offset + count);
+        target.put(view);
+        mySpillReadPos += count;
+
+        // The memory buffer is empty too, so the file is reused from the start
+        if (mySpillReadPos == mySpillWritePos) {
+            mySpillReadPos = 0;
+            mySpillWritePos = 0;
+        }
+        return count;
+    }
+
+    @NotNull
+    private MappedByteBuffer map(long segmentIdx) throws IOException {
+        return mySpillChannel.map(FileChannel.MapMode.READ_WRITE, segmentIdx * SPILL_SEGMENT_SIZE, SPILL_SEGMENT_SIZE);
+    }
+}
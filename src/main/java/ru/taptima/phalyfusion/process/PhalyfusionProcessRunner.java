@@ -0,0 +1,251 @@
+package ru.taptima.phalyfusion.process;
+
+import com.intellij.execution.ExecutionException;
+import com.intellij.execution.configurations.GeneralCommandLine;
+import com.intellij.execution.process.OSProcessUtil;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.progress.ProcessCanceledException;
+import com.intellij.openapi.progress.ProgressIndicator;
+import com.intellij.openapi.progress.ProgressManager;
+import com.intellij.util.concurrency.AppExecutorUtil;
+import com.jetbrains.php.tools.quality.QualityToolMessageProcessor;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import ru.taptima.phalyfusion.PhalyfusionMessageProcessor;
+import ru.taptima.phalyfusion.statistics.PhalyfusionShardStatistics;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Consumer;
+
+/**
+ * Runs Phalyfusion with local interpreter. Unlike QualityToolProcessCreator the process tree is killed
+ * as soon as the current progress indicator is cancelled or the timeout is exceeded.
+ * Output is passed to the message processor in chunks as it arrives. Stdout is read through a fixed-size buffer
+ * into {@link PhalyfusionOutputPipe}, so the process is not blocked by slow parsing and output is not kept in heap.
+ * Stderr is never parsed as the report, it is passed to the processor as error output.
+ */
+public class PhalyfusionProcessRunner {
+    private static final Logger LOG = Logger.getInstance(PhalyfusionProcessRunner.class);
+    private static final long POLL_INTERVAL_MS = 50;
+    private static final int BUFFER_SIZE = 8192;
+    private static final int MAX_STDERR_LENGTH = 64 * 1024;
+    private static final int PIPE_BUFFER_SIZE = 256 * 1024;
+    // Children of the tool may inherit its output and keep it open after the tool exits
+    private static final long OUTPUT_DRAIN_TIMEOUT_MS = 5000;
+
+    private PhalyfusionProcessRunner() {
+    }
+
+    public static void run(@NotNull GeneralCommandLine commandLine, @NotNull QualityToolMessageProcessor messageProcessor,
+                           int timeoutMs) throws ExecutionException {
+        run(commandLine, messageProcessor, timeoutMs, null);
+    }
+
+    /**
+     * @param input content written to stdin of the process, stdin is closed after it
+     */
+    public static void run(@NotNull GeneralCommandLine commandLine, @NotNull QualityToolMessageProcessor messageProcessor,
+                           int timeoutMs, @Nullable byte[] input) throws ExecutionException {
+        ProgressIndicator indicator = ProgressManager.getInstance().getProgressIndicator();
+        PhalyfusionShardStatistics statistics = messageProcessor instanceof PhalyfusionMessageProcessor
+                ? ((PhalyfusionMessageProcessor) messageProcessor).getStatistics() : new PhalyfusionShardStatistics();
+        long spawnStart = System.nanoTime();
+        Process process = commandLine.withCharset(StandardCharsets.UTF_8).createProcess();
+        long processStart = System.nanoTime();
+        statistics.addSpawnTime(processStart - spawnStart);
+
+        if (input != null) {
+            // Written in background, so the process is not blocked by full stdout while it reads the input
+            AppExecutorUtil.getAppExecutorService().execute(() -> {
+                try (OutputStream stdin = process.getOutputStream()) {
+                    stdin.write(input);
+                } catch (IOException ignored) {
+                    // The process exited without reading whole input
+                }
+            });
+        }
+
+        StringBuilder stderr = new StringBuilder();
+        PhalyfusionOutputPipe stdout = new PhalyfusionOutputPipe(PIPE_BUFFER_SIZE);
+        Future<?> stdoutReader = AppExecutorUtil.getAppExecutorService().submit(() -> {
+            pump(process.getInputStream(), stdout);
+            return null;
+        });
+        Future<?> stdoutParser = AppExecutorUtil.getAppExecutorService().submit(() -> {
+            decode(stdout, messageProcessor::parseLine);
+            return null;
+        });
+        Future<?> stderrReader = AppExecutorUtil.getAppExecutorService().submit(() -> read(process.getErrorStream(), chunk -> {
+            synchronized (stderr) {
+                if (stderr.length() < MAX_STDERR_LENGTH) {
+                    stderr.append(chunk);
+                }
+            }
+        }));
+
+        long deadline = System.currentTimeMillis() + timeoutMs;
+        try {
+            while (!process.waitFor(POLL_INTERVAL_MS, TimeUnit.MILLISECONDS)) {
+                if (indicator != null && indicator.isCanceled()) {
+                    OSProcessUtil.killProcessTree(process);
+                    throw new ProcessCanceledException();
+                }
+
+                if (System.currentTimeMillis() > deadline) {
+                    OSProcessUtil.killProcessTree(process);
+                    throw new PhalyfusionTimeoutException(timeoutMs);
+                }
+            }
+            statistics.addProcessTime(System.nanoTime() - processStart);
+
+            long drainDeadline = System.currentTimeMillis() + OUTPUT_DRAIN_TIMEOUT_MS;
+            if (!await(stdoutReader, indicator, drainDeadline) | !await(stderrReader, indicator, drainDeadline)) {
+                // Readers blocked on open streams are abandoned, output read so far is parsed
+                LOG.info("Output of " + commandLine.getExePath() + " is not closed after exit, the rest of it is ignored");
+                closeQuietly(process.getInputStream());
+                closeQuietly(process.getErrorStream());
+                stdoutReader.cancel(true);
+                stderrReader.cancel(true);
+                stdout.finish();
+            }
+            // Parsing of output which was read is not limited, only cancellation stops it
+            await(stdoutParser, indicator, Long.MAX_VALUE);
+            stdoutParser.get();
+        } catch (InterruptedException e) {
+            OSProcessUtil.killProcessTree(process);
+            throw new ProcessCanceledException(e);
+        } catch (java.util.concurrent.ExecutionException e) {
+            throw new ExecutionException(e.getCause());
+        } finally {
+            // Output of killed process is not parsed anymore
+            stdout.close();
+            statistics.addSpilledBytes(stdout.getSpilledBytes());
+        }
+
+        String errorOutput;
+        synchronized (stderr) {
+            errorOutput = stderr.toString();
+        }
+        if (!errorOutput.isEmpty() && messageProcessor instanceof PhalyfusionMessageProcessor) {
+            ((PhalyfusionMessageProcessor) messageProcessor).setErrorOutput(errorOutput);
+        } else if (!errorOutput.isEmpty() && messageProcessor.processStdErrMessages()) {
+            messageProcessor.parseLine(errorOutput);
+        }
+        messageProcessor.done();
+    }
+
+    /**
+     * @return false if the task is not finished before the deadline
+     */
+    private static boolean await(@NotNull Future<?> future, @Nullable ProgressIndicator indicator, long deadline)
+            throws InterruptedException, java.util.concurrent.ExecutionException {
+        while (System.currentTimeMillis() < deadline) {
+            if (indicator != null && indicator.isCanceled()) {
+                throw new ProcessCanceledException();
+            }
+            try {
+                future.get(POLL_INTERVAL_MS, TimeUnit.MILLISECONDS);
+                return true;
+            } catch (TimeoutException ignored) {
+                // Cancellation is checked again
+            }
+        }
+        return future.isDone();
+    }
+
+    private static void closeQuietly(@NotNull InputStream stream) {
+        try {
+            stream.close();
+        } catch (IOException ignored) {
+            // The reader stops anyway
+        }
+    }
+
+    private static void pump(@NotNull InputStream stream, @NotNull PhalyfusionOutputPipe pipe) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+        try (ReadableByteChannel channel = Channels.newChannel(stream)) {
+            while (true) {
+                int count;
+                try {
+                    count = channel.read(buffer);
+                } catch (IOException e) {
+                    // Stream is closed when the process is killed
+                    break;
+                }
+                if (count == -1) {
+                    break;
+                }
+
+                buffer.flip();
+                pipe.write(buffer);
+                buffer.clear();
+            }
+        } finally {
+            pipe.finish();
+        }
+    }
+
+    /**
+     * Characters split between chunks are kept by the decoder till the rest of their bytes are read
+     */
+    private static void decode(@NotNull PhalyfusionOutputPipe pipe, @NotNull Consumer<String> consumer) throws IOException {
+        CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        ByteBuffer bytes = ByteBuffer.allocate(BUFFER_SIZE);
+        CharBuffer chars = CharBuffer.allocate(BUFFER_SIZE);
+        while (true) {
+            boolean isEnd = pipe.read(bytes) == -1;
+            bytes.flip();
+            CoderResult result;
+            do {
+                result = decoder.decode(bytes, chars, isEnd);
+                flush(chars, consumer);
+            } while (result.isOverflow());
+            bytes.compact();
+
+            if (isEnd) {
+                while (decoder.flush(chars).isOverflow()) {
+                    flush(chars, consumer);
+                }
+                flush(chars, consumer);
+                return;
+            }
+        }
+    }
+
+    private static void flush(@NotNull CharBuffer chars, @NotNull Consumer<String> consumer) {
+        chars.flip();
+        if (chars.hasRemaining()) {
+            consumer.accept(chars.toString());
+        }
+        chars.clear();
+    }
+
+    private static void read(@NotNull InputStream stream, @NotNull Consumer<String> consumer) {
+        char[] buffer = new char[BUFFER_SIZE];
+        try (Reader reader = new InputStreamReader(stream, StandardCharsets.UTF_8)) {
+            int count;
+            while ((count = reader.read(buffer)) != -1) {
+                consumer.accept(new String(buffer, 0, count));
+            }
+        } catch (IOException ignored) {
+            // Stream is closed when the process is killed
+        }
+    }
+}
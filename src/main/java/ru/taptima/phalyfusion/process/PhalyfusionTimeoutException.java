@@ -0,0 +1,12 @@
+package ru.taptima.phalyfusion.process;
+
+import com.intellij.execution.ExecutionException;
+
+/**
+ * Thrown when Phalyfusion process is killed because it exceeded the timeout
+ */
+public class PhalyfusionTimeoutException extends ExecutionException {
+    public PhalyfusionTimeoutException(int timeoutMs) {
+        super("Phalyfusion did not finish in " + timeoutMs + " ms");
+    }
+}
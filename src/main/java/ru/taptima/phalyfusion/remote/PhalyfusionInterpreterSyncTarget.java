@@ -0,0 +1,124 @@
+package ru.taptima.phalyfusion.remote;
+
+import com.google.gson.stream.JsonWriter;
+import com.intellij.execution.ExecutionException;
+import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.util.PathUtil;
+import com.jetbrains.php.config.interpreters.PhpSdkFileTransfer;
+import com.jetbrains.php.tools.quality.QualityToolAnnotatorInfo;
+import com.jetbrains.php.tools.quality.QualityToolProcessCreator;
+import org.jetbrains.annotations.NotNull;
+import ru.taptima.phalyfusion.PhalyfusionOutputCollector;
+import ru.taptima.phalyfusion.PhalyfusionValidationInspection;
+import ru.taptima.phalyfusion.QualityToolUtil;
+import ru.taptima.phalyfusion.configuration.PhalyfusionConfiguration;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.List;
+
+/**
+ * Keeps the synced copy on the host of a remote interpreter. Delta is transferred as a temporary JSON bundle
+ * and applied by a small PHP script launched with the interpreter itself, so no other tools are needed on the host
+ */
+public class PhalyfusionInterpreterSyncTarget implements PhalyfusionRemoteSync.Target {
+    private static final String TEMP_FOLDER = "phalyfusion_sync";
+    private static final String SCRIPT_NAME = "phalyfusion-sync.php";
+    private static final String BUNDLE_NAME = "phalyfusion_sync.json";
+    // Estimated size of the bundle besides the content
+    private static final int BUNDLE_OVERHEAD = 64 * 1024;
+
+    private final QualityToolAnnotatorInfo<PhalyfusionValidationInspection> myAnnotatorInfo;
+    private final PhalyfusionConfiguration myConfiguration;
+    private final String myRoot;
+
+    public PhalyfusionInterpreterSyncTarget(@NotNull QualityToolAnnotatorInfo<PhalyfusionValidationInspection> annotatorInfo,
+                                            @NotNull PhalyfusionConfiguration configuration, @NotNull String root) {
+        myAnnotatorInfo = annotatorInfo;
+        myConfiguration = configuration;
+        myRoot = FileUtil.toSystemIndependentName(root);
+    }
+
+    @Override
+    public @NotNull String getRoot() {
+        return myRoot;
+    }
+
+    @Override
+    public boolean apply(@NotNull PhalyfusionRemoteSync.Delta delta) throws ExecutionException {
+        var project = myAnnotatorInfo.getProject();
+        int timeout = myAnnotatorInfo.getTimeout();
+        PhpSdkFileTransfer transfer = QualityToolUtil.getSdkFileTransfer(myAnnotatorInfo);
+
+        try {
+            String script = transfer.transferTempFile(project, TEMP_FOLDER, SCRIPT_NAME, loadScript(), timeout / 2);
+            String bundle = transfer.transferTempFile(project, TEMP_FOLDER, BUNDLE_NAME, createBundle(delta), timeout / 2);
+            if (script == null || bundle == null) {
+                throw new ExecutionException("Can not transfer files to the interpreter host");
+            }
+
+            // The script is launched by the interpreter in place of Phalyfusion
+            PhalyfusionConfiguration scriptConfiguration = myConfiguration.clone();
+            scriptConfiguration.setToolPath(script);
+            var scriptInfo = new QualityToolAnnotatorInfo<>(myAnnotatorInfo.getPsiFile(), myAnnotatorInfo.getInspection(),
+                    project, scriptConfiguration, false);
+            var collector = new PhalyfusionOutputCollector(scriptInfo);
+            QualityToolProcessCreator.runToolProcess(scriptInfo, null, collector, PathUtil.getParentPath(script), transfer, null, List.of(bundle));
+
+            String output = collector.getOutput().trim();
+            if (output.endsWith("RESYNC")) {
+                return false;
+            }
+            if (!output.endsWith("OK")) {
+                throw new ExecutionException("Can not sync project to " + myRoot + ": " + output);
+            }
+            return true;
+        } finally {
+            transfer.delete(project, timeout / 2, false);
+        }
+    }
+
+    /**
+     * Transfer takes the content as a string, so the bundle is built in a buffer sized for the base64 content of the delta
+     */
+    @NotNull
+    private String createBundle(@NotNull PhalyfusionRemoteSync.Delta delta) throws ExecutionException {
+        var buffer = new StringWriter((int) Math.min(Integer.MAX_VALUE, delta.getUploadsSize() * 4 / 3 + BUNDLE_OVERHEAD));
+        try (var writer = new JsonWriter(buffer)) {
+            writer.beginObject();
+            writer.name("root").value(myRoot);
+            writer.name("expect").value(delta.getExpectedId());
+            writer.name("clear").value(delta.isClear());
+            writer.name("mark").value(delta.getMarkId());
+            writer.name("delete").beginArray();
+            for (String path : delta.getDeletions()) {
+                writer.value(path);
+            }
+            writer.endArray();
+            writer.name("put").beginObject();
+            for (var upload : delta.getUploads().entrySet()) {
+                writer.name(upload.getKey()).value(Base64.getEncoder().encodeToString(upload.getValue()));
+            }
+            writer.endObject();
+            writer.endObject();
+        } catch (IOException e) {
+            throw new ExecutionException("Can not create sync bundle", e);
+        }
+        return buffer.toString();
+    }
+
+    @NotNull
+    private static String loadScript() throws ExecutionException {
+        try (InputStream stream = PhalyfusionInterpreterSyncTarget.class.getResourceAsStream("/remote/" + SCRIPT_NAME)) {
+            if (stream == null) {
+                throw new ExecutionException("Sync script is not found");
+            }
+            return new String(stream.readAllBytes(), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new ExecutionException("Can not load sync script", e);
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package ru.taptima.phalyfusion.remote;
+
+import com.intellij.execution.ExecutionException;
+import com.intellij.openapi.util.io.FileUtil;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Keeps the synced copy in a local directory. Stands in for the interpreter host, e.g. when sync is checked without a remote interpreter
+ */
+public class PhalyfusionLocalSyncTarget implements PhalyfusionRemoteSync.Target {
+    private final Path myRoot;
+
+    public PhalyfusionLocalSyncTarget(@NotNull Path root) {
+        myRoot = root.toAbsolutePath().normalize();
+    }
+
+    @Override
+    public @NotNull String getRoot() {
+        return FileUtil.toSystemIndependentName(myRoot.toString());
+    }
+
+    @Override
+    public boolean apply(@NotNull PhalyfusionRemoteSync.Delta delta) throws ExecutionException {
+        try {
+            Files.createDirectories(myRoot);
+            Path marker = myRoot.resolve(PhalyfusionRemoteSync.MARKER_NAME);
+            if (delta.getExpectedId() != null
+                    && (!Files.isRegularFile(marker) || !delta.getExpectedId().equals(Files.readString(marker, StandardCharsets.UTF_8).trim()))) {
+                return false;
+            }
+            if (delta.isClear()) {
+                Files.deleteIfExists(marker);
+            }
+
+            for (String path : delta.getDeletions()) {
+                Files.deleteIfExists(resolve(path));
+            }
+            for (var upload : delta.getUploads().entrySet()) {
+                Path file = resolve(upload.getKey());
+                Files.createDirectories(file.getParent());
+                Files.write(file, upload.getValue());
+            }
+
+            if (delta.getMarkId() != null) {
+                Files.writeString(marker, delta.getMarkId(), StandardCharsets.UTF_8);
+            }
+        } catch (IOException e) {
+            throw new ExecutionException("Can not sync project to " + myRoot + ": " + e.getMessage(), e);
+        }
+        return true;
+    }
+
+    @NotNull
+    private Path resolve(@NotNull String relativePath) throws ExecutionException {
+        Path file = myRoot.resolve(relativePath).normalize();
+        if (!file.startsWith(myRoot) || file.equals(myRoot)) {
+            throw new ExecutionException("Path is out of the synced copy: " + relativePath);
+        }
+        return file;
+    }
+}
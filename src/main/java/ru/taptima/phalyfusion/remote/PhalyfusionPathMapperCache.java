@@ -0,0 +1,127 @@
+package ru.taptima.phalyfusion.remote;
+
+import com.intellij.execution.ExecutionException;
+import com.intellij.openapi.components.ServiceManager;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.project.ProjectUtil;
+import com.intellij.openapi.util.text.StringUtil;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.jetbrains.php.config.interpreters.PhpInterpreter;
+import com.jetbrains.php.config.interpreters.PhpInterpretersManagerImpl;
+import com.jetbrains.php.config.interpreters.PhpSdkAdditionalData;
+import com.jetbrains.php.run.remote.PhpRemoteInterpreterManager;
+import com.jetbrains.php.util.pathmapper.PhpPathMapper;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Path mappers and remote working directories of remote interpreters keyed by interpreter id.
+ * Interpreter settings are replaced with new instances when they are changed, so an entry is valid
+ * as long as the interpreter still has the same settings instance it was created for.
+ * Mappings may be edited in place too, so entries expire after a while and all of them are dropped before every batch run.
+ */
+public class PhalyfusionPathMapperCache {
+    private static final Logger LOG = Logger.getInstance(PhalyfusionPathMapperCache.class);
+    private static final long ENTRY_TTL_MS = 60_000;
+
+    private static class Entry {
+        private final PhpSdkAdditionalData myData;
+        private final PhpPathMapper myPathMapper;
+        private final long myCreatedAt = System.currentTimeMillis();
+        private volatile String myWorkingDirectory;
+
+        Entry(@NotNull PhpSdkAdditionalData data, @NotNull PhpPathMapper pathMapper) {
+            myData = data;
+            myPathMapper = pathMapper;
+        }
+
+        boolean isValid(@Nullable PhpSdkAdditionalData data) {
+            return myData == data && System.currentTimeMillis() - myCreatedAt < ENTRY_TTL_MS;
+        }
+    }
+
+    private final Project myProject;
+    private final Map<String, Entry> myEntries = new ConcurrentHashMap<>();
+
+    public PhalyfusionPathMapperCache(@NotNull Project project) {
+        myProject = project;
+    }
+
+    public static PhalyfusionPathMapperCache getInstance(@NotNull Project project) {
+        return ServiceManager.getService(project, PhalyfusionPathMapperCache.class);
+    }
+
+    /**
+     * Path mapper of remote interpreter or null for local one
+     */
+    @Nullable
+    public PhpPathMapper getPathMapper(@Nullable String interpreterId) {
+        Entry entry = getEntry(interpreterId);
+        return entry != null ? entry.myPathMapper : null;
+    }
+
+    /**
+     * @return project directory on the interpreter host or null for local interpreter
+     */
+    @Nullable
+    public String getRemoteWorkingDirectory(@Nullable String interpreterId) {
+        Entry entry = getEntry(interpreterId);
+        if (entry == null) {
+            return null;
+        }
+
+        if (entry.myWorkingDirectory == null) {
+            VirtualFile projectDir = ProjectUtil.guessProjectDir(myProject);
+            if (projectDir == null) {
+                return null;
+            }
+            entry.myWorkingDirectory = entry.myPathMapper.getRemoteFilePath(projectDir);
+        }
+        return entry.myWorkingDirectory;
+    }
+
+    /**
+     * Drops all entries, so changed interpreter settings are applied
+     */
+    public void invalidate() {
+        myEntries.clear();
+    }
+
+    @Nullable
+    private Entry getEntry(@Nullable String interpreterId) {
+        if (StringUtil.isEmpty(interpreterId)) {
+            return null;
+        }
+
+        PhpInterpreter interpreter = PhpInterpretersManagerImpl.getInstance(myProject).findInterpreterById(interpreterId);
+        if (interpreter == null || !interpreter.isRemote()) {
+            myEntries.remove(interpreterId);
+            return null;
+        }
+
+        PhpSdkAdditionalData data = interpreter.getPhpSdkAdditionalData();
+        Entry entry = myEntries.get(interpreterId);
+        if (entry != null && entry.isValid(data)) {
+            return entry;
+        }
+
+        PhpRemoteInterpreterManager manager = PhpRemoteInterpreterManager.getInstance();
+        if (manager == null || data == null) {
+            return null;
+        }
+
+        try {
+            entry = new Entry(data, manager.createPathMapper(myProject, data).createPathMapper(myProject));
+        } catch (ExecutionException e) {
+            LOG.info("Can not create path mapper for interpreter " + interpreter.getName(), e);
+            return null;
+        }
+
+        myEntries.put(interpreterId, entry);
+        return entry;
+    }
+}
@@ -13,6 +13,7 @@ import org.jetbrains.annotations.Nullable;
 @Tag("phalyfusion_by_interpreter")
 public class PhalyfusionRemoteConfiguration extends PhalyfusionConfiguration implements PhpSdkDependentConfiguration {
     private String myInterpreterId;
+    private String mySyncDirectory = "";
 
     @Attribute("interpreter_id")
     @Nullable
@@ -24,6 +25,19 @@ public class PhalyfusionRemoteConfiguration extends PhalyfusionConfiguration imp
         this.myInterpreterId = interpreterId;
     }
 
+    /**
+     * Directory on the interpreter host the project is synced to before launch. Empty if the host shares the project mount
+     */
+    @Attribute("sync_directory")
+    @NotNull
+    public String getSyncDirectory() {
+        return StringUtil.notNullize(this.mySyncDirectory);
+    }
+
+    public void setSyncDirectory(@Nullable String syncDirectory) {
+        this.mySyncDirectory = syncDirectory;
+    }
+
     @NotNull
     public String getPresentableName(@Nullable Project project) {
         return getDefaultName(PhpInterpretersManagerImpl.getInstance(project).findInterpreterName(this.getInterpreterId()));
@@ -45,6 +59,7 @@ public class PhalyfusionRemoteConfiguration extends PhalyfusionConfiguration imp
     public PhalyfusionRemoteConfiguration clone() {
         PhalyfusionRemoteConfiguration settings = new PhalyfusionRemoteConfiguration();
         settings.myInterpreterId = this.myInterpreterId;
+        settings.mySyncDirectory = this.mySyncDirectory;
         this.clone(settings);
         return settings;
     }
@@ -0,0 +1,426 @@
+package ru.taptima.phalyfusion.remote;
+
+import com.intellij.execution.ExecutionException;
+import com.intellij.openapi.application.PathManager;
+import com.intellij.openapi.components.ServiceManager;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.openapi.util.io.FileUtilRt;
+import com.intellij.openapi.util.text.StringUtil;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.jetbrains.php.tools.quality.QualityToolAnnotatorInfo;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import ru.taptima.phalyfusion.PhalyfusionValidationInspection;
+import ru.taptima.phalyfusion.configuration.PhalyfusionConfiguration;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * Keeps a copy of the project in a directory on the interpreter host for interpreters which do not share the project mount.
+ * Manifest with content hashes of the files the copy already has is stored locally, so only changed files are uploaded
+ * before a run and the copy is reused between runs. The copy is marked with an id of its manifest: when the mark does not
+ * match, e.g. the directory was cleaned up on the host, the whole project is uploaded again.
+ */
+public class PhalyfusionRemoteSync {
+    private static final Logger LOG = Logger.getInstance(PhalyfusionRemoteSync.class);
+    private static final int VERSION = 1;
+    public static final String MARKER_NAME = ".phalyfusion-sync";
+    // Size of uploaded content per single delta, deltas are applied one by one to bound memory
+    private static final long MAX_DELTA_BYTES = 4L * 1024 * 1024;
+
+    /**
+     * Part of changes applied to the copy at once
+     */
+    public static class Delta {
+        private final String myExpectedId;
+        private final boolean isClear;
+        private final String myMarkId;
+        private final Map<String, byte[]> myUploads = new LinkedHashMap<>();
+        private final List<String> myDeletions = new ArrayList<>();
+        private long myUploadsSize = 0;
+
+        Delta(@Nullable String expectedId, boolean clear, @Nullable String markId) {
+            myExpectedId = expectedId;
+            isClear = clear;
+            myMarkId = markId;
+        }
+
+        /**
+         * @return id the copy should be marked with before changes are applied, null if the copy is not checked
+         */
+        @Nullable
+        public String getExpectedId() {
+            return myExpectedId;
+        }
+
+        /**
+         * @return true if the mark of the copy should be removed before changes are applied
+         */
+        public boolean isClear() {
+            return isClear;
+        }
+
+        /**
+         * @return id to mark the copy with after changes are applied or null
+         */
+        @Nullable
+        public String getMarkId() {
+            return myMarkId;
+        }
+
+        /**
+         * @return content of changed files by paths relative to the root of the copy
+         */
+        @NotNull
+        public Map<String, byte[]> getUploads() {
+            return myUploads;
+        }
+
+        /**
+         * @return paths of deleted files relative to the root of the copy
+         */
+        @NotNull
+        public List<String> getDeletions() {
+            return myDeletions;
+        }
+
+        /**
+         * @return size of uploaded content
+         */
+        public long getUploadsSize() {
+            return myUploadsSize;
+        }
+
+        @NotNull
+        private Delta copyChanges(@NotNull Delta other) {
+            myUploads.putAll(other.myUploads);
+            myDeletions.addAll(other.myDeletions);
+            myUploadsSize = other.myUploadsSize;
+            return this;
+        }
+    }
+
+    /**
+     * Host which keeps the copy
+     */
+    public interface Target {
+        /**
+         * @return path of the copy on the host
+         */
+        @NotNull
+        String getRoot();
+
+        /**
+         * @return false if the copy is not marked with expected id, nothing is changed then
+         */
+        boolean apply(@NotNull Delta delta) throws ExecutionException;
+    }
+
+    private static class ManifestEntry {
+        private long myLength;
+        private long myTimeStamp;
+        private long myHash;
+
+        ManifestEntry(long length, long timeStamp, long hash) {
+            myLength = length;
+            myTimeStamp = timeStamp;
+            myHash = hash;
+        }
+    }
+
+    private static class Manifest {
+        private final String myId;
+        private final String myRoot;
+        private final Map<String, ManifestEntry> myEntries = new HashMap<>();
+
+        Manifest(@NotNull String id, @NotNull String root) {
+            myId = id;
+            myRoot = root;
+        }
+    }
+
+    private final Project myProject;
+    // Roots of the copies which are up to date by interpreter ids
+    private final Map<String, String> myRoots = new ConcurrentHashMap<>();
+
+    public PhalyfusionRemoteSync(@NotNull Project project) {
+        myProject = project;
+    }
+
+    public static PhalyfusionRemoteSync getInstance(@NotNull Project project) {
+        return ServiceManager.getService(project, PhalyfusionRemoteSync.class);
+    }
+
+    /**
+     * Uploads changed files before the tool is launched with the interpreter of the configuration.
+     * Nothing is done if the project is not synced for the configuration
+     *
+     * @param files      files to sync, collected only if the project is synced
+     * @param isComplete true if the files are all files of the project, files missing among them are deleted from the copy
+     */
+    public void sync(@NotNull QualityToolAnnotatorInfo<PhalyfusionValidationInspection> annotatorInfo,
+                     @NotNull PhalyfusionConfiguration configuration, @NotNull Supplier<? extends Collection<VirtualFile>> files,
+                     boolean isComplete) throws ExecutionException {
+        String interpreterId = configuration.getInterpreterId();
+        if (StringUtil.isEmpty(interpreterId)) {
+            return;
+        }
+
+        String syncDirectory = configuration instanceof PhalyfusionRemoteConfiguration
+                ? ((PhalyfusionRemoteConfiguration) configuration).getSyncDirectory() : null;
+        if (StringUtil.isEmptyOrSpaces(syncDirectory)) {
+            myRoots.remove(interpreterId);
+            return;
+        }
+
+        sync(interpreterId, new PhalyfusionInterpreterSyncTarget(annotatorInfo, configuration, syncDirectory.trim()), files.get(), isComplete);
+    }
+
+    /**
+     * Partial sync only updates an existing copy: a copy created from a part of the files would lack e.g. phalyfusion.neon and vendor,
+     * so without a copy the project is not synced until the next complete sync
+     *
+     * @return number of uploaded files
+     */
+    public synchronized int sync(@NotNull String interpreterId, @NotNull Target target, @NotNull Collection<VirtualFile> files,
+                                 boolean isComplete) throws ExecutionException {
+        String basePath = myProject.getBasePath();
+        if (basePath == null) {
+            throw new ExecutionException("Project directory is unknown");
+        }
+
+        String root = StringUtil.trimEnd(target.getRoot(), "/");
+        Manifest manifest = loadManifest(interpreterId);
+        if (manifest == null || !manifest.myRoot.equals(root) || manifest.myEntries.isEmpty()) {
+            if (!isComplete) {
+                myRoots.remove(interpreterId);
+                return 0;
+            }
+            manifest = new Manifest(UUID.randomUUID().toString(), root);
+        }
+
+        int uploaded = sync(interpreterId, target, files, isComplete, basePath, manifest);
+        if (uploaded < 0 && !isComplete) {
+            LOG.info("Synced copy of the project at " + root + " is outdated and will be uploaded again by the next complete sync");
+            FileUtil.delete(getManifestFile(interpreterId));
+            myRoots.remove(interpreterId);
+            return 0;
+        }
+        if (uploaded < 0) {
+            LOG.info("Synced copy of the project at " + root + " is outdated and will be uploaded again");
+            uploaded = sync(interpreterId, target, files, isComplete, basePath, new Manifest(UUID.randomUUID().toString(), root));
+        }
+        if (uploaded < 0) {
+            throw new ExecutionException("Can not sync project to " + root);
+        }
+
+        myRoots.put(interpreterId, root);
+        return uploaded;
+    }
+
+    /**
+     * Deltas are applied as soon as they are full, so at most one delta of content is kept in memory.
+     * Only the last delta of a full upload marks the copy
+     *
+     * @return number of uploaded files or -1 if the copy does not match the manifest
+     */
+    private int sync(@NotNull String interpreterId, @NotNull Target target, @NotNull Collection<VirtualFile> files, boolean isComplete,
+                     @NotNull String basePath, @NotNull Manifest manifest) throws ExecutionException {
+        boolean isFull = manifest.myEntries.isEmpty();
+        String expectedId = isFull ? null : manifest.myId;
+        // Entries of files uploaded by the current delta, they get into the manifest when the delta is applied
+        Map<String, ManifestEntry> pending = new HashMap<>();
+        Delta delta = new Delta(expectedId, isFull, null);
+        Set<String> paths = new HashSet<>();
+        int uploaded = 0;
+        boolean isMarked = false;
+
+        try {
+            for (VirtualFile file : files) {
+                String path = getRelativePath(basePath, file.getPath());
+                if (path == null || !file.isValid() || file.isDirectory() || FileUtilRt.isTooLarge(file.getLength())) {
+                    continue;
+                }
+                paths.add(path);
+
+                ManifestEntry entry = manifest.myEntries.get(path);
+                if (entry != null && entry.myLength == file.getLength() && entry.myTimeStamp == file.getTimeStamp()) {
+                    continue;
+                }
+
+                byte[] content;
+                try {
+                    content = file.contentsToByteArray();
+                } catch (IOException e) {
+                    LOG.info("Can not read " + file.getPath(), e);
+                    continue;
+                }
+
+                long hash = hash(content);
+                if (entry != null && entry.myHash == hash) {
+                    // Only time stamp is changed
+                    entry.myLength = file.getLength();
+                    entry.myTimeStamp = file.getTimeStamp();
+                    continue;
+                }
+
+                if (delta.myUploadsSize > 0 && delta.myUploadsSize + content.length > MAX_DELTA_BYTES) {
+                    if (!apply(target, delta, pending, manifest)) {
+                        return -1;
+                    }
+                    uploaded += delta.myUploads.size();
+                    delta = new Delta(expectedId, false, null);
+                }
+                delta.myUploads.put(path, content);
+                delta.myUploadsSize += content.length;
+                pending.put(path, new ManifestEntry(file.getLength(), file.getTimeStamp(), hash));
+            }
+
+            if (isComplete) {
+                for (String path : manifest.myEntries.keySet()) {
+                    if (!paths.contains(path)) {
+                        delta.myDeletions.add(path);
+                    }
+                }
+            }
+
+            if (isFull) {
+                delta = new Delta(delta.myExpectedId, delta.isClear, manifest.myId).copyChanges(delta);
+            } else if (delta.myUploads.isEmpty() && delta.myDeletions.isEmpty() && uploaded == 0) {
+                // Nothing is changed, the copy is checked by the next run with changes
+                return 0;
+            }
+
+            if (!apply(target, delta, pending, manifest)) {
+                return -1;
+            }
+            uploaded += delta.myUploads.size();
+            isMarked = isFull;
+            return uploaded;
+        } finally {
+            // A partially uploaded full copy is not marked, so it is not worth remembering
+            if (!isFull || isMarked) {
+                saveManifest(interpreterId, manifest);
+            }
+        }
+    }
+
+    /**
+     * @return false if the copy does not match the manifest
+     */
+    private static boolean apply(@NotNull Target target, @NotNull Delta delta, @NotNull Map<String, ManifestEntry> pending,
+                                 @NotNull Manifest manifest) throws ExecutionException {
+        if (!target.apply(delta)) {
+            return false;
+        }
+
+        for (String path : delta.myUploads.keySet()) {
+            manifest.myEntries.put(path, pending.remove(path));
+        }
+        for (String path : delta.myDeletions) {
+            manifest.myEntries.remove(path);
+        }
+        return true;
+    }
+
+    /**
+     * @return root of the synced copy for the interpreter or null if the project is not synced
+     */
+    @Nullable
+    public String getSyncRoot(@Nullable String interpreterId) {
+        return StringUtil.isEmpty(interpreterId) ? null : myRoots.get(interpreterId);
+    }
+
+    /**
+     * @return path of the file in the synced copy or null if the project is not synced or the file is out of the project
+     */
+    @Nullable
+    public String toRemotePath(@Nullable String interpreterId, @NotNull String localPath) {
+        String root = getSyncRoot(interpreterId);
+        String relativePath = myProject.getBasePath() == null ? null : getRelativePath(myProject.getBasePath(), localPath);
+        return root == null || relativePath == null ? null : root + "/" + relativePath;
+    }
+
+    /**
+     * @return local path of the file of the synced copy or null if the path is out of the copy
+     */
+    @Nullable
+    public String toLocalPath(@NotNull String root, @NotNull CharSequence remotePath) {
+        String relativePath = getRelativePath(root, remotePath.toString());
+        return relativePath == null || myProject.getBasePath() == null ? null : myProject.getBasePath() + "/" + relativePath;
+    }
+
+    @Nullable
+    private static String getRelativePath(@NotNull String basePath, @NotNull String path) {
+        String base = StringUtil.trimEnd(FileUtil.toSystemIndependentName(basePath), "/") + "/";
+        String file = FileUtil.toSystemIndependentName(path);
+        return file.startsWith(base) && file.length() > base.length() ? file.substring(base.length()) : null;
+    }
+
+    private static long hash(@NotNull byte[] content) {
+        try {
+            return ByteBuffer.wrap(MessageDigest.getInstance("SHA-256").digest(content)).getLong();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @NotNull
+    private File getManifestFile(@NotNull String interpreterId) {
+        return new File(PathManager.getSystemPath() + "/phalyfusion/" + myProject.getLocationHash() + "/sync/"
+                + FileUtil.sanitizeFileName(interpreterId) + ".manifest");
+    }
+
+    @Nullable
+    private Manifest loadManifest(@NotNull String interpreterId) {
+        File file = getManifestFile(interpreterId);
+        if (!file.isFile()) {
+            return null;
+        }
+
+        try (var input = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (input.readInt() != VERSION) {
+                return null;
+            }
+
+            var manifest = new Manifest(input.readUTF(), input.readUTF());
+            int count = input.readInt();
+            for (int i = 0; i < count; i++) {
+                manifest.myEntries.put(input.readUTF(), new ManifestEntry(input.readLong(), input.readLong(), input.readLong()));
+            }
+            return manifest;
+        } catch (IOException e) {
+            LOG.warn("Phalyfusion sync manifest is corrupted and will be dropped", e);
+            return null;
+        }
+    }
+
+    private void saveManifest(@NotNull String interpreterId, @NotNull Manifest manifest) {
+        File file = getManifestFile(interpreterId);
+        try {
+            FileUtil.createParentDirs(file);
+            try (var output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+                output.writeInt(VERSION);
+                output.writeUTF(manifest.myId);
+                output.writeUTF(manifest.myRoot);
+                output.writeInt(manifest.myEntries.size());
+                for (var entry : manifest.myEntries.entrySet()) {
+                    output.writeUTF(entry.getKey());
+                    output.writeLong(entry.getValue().myLength);
+                    output.writeLong(entry.getValue().myTimeStamp);
+                    output.writeLong(entry.getValue().myHash);
+                }
+            }
+        } catch (IOException e) {
+            LOG.warn("Can not save Phalyfusion sync manifest", e);
+        }
+    }
+}
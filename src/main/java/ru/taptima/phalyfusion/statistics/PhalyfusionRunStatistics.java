@@ -0,0 +1,218 @@
+package ru.taptima.phalyfusion.statistics;
+
+import com.google.gson.stream.JsonWriter;
+import com.intellij.util.containers.ContainerUtil;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Durations and counters of a single batch Phalyfusion run.
+ * Phase durations are wall clock time of the inspection thread, shard durations are measured in parallel
+ */
+public class PhalyfusionRunStatistics {
+    public static final String PHASE_SCOPE = "scope";
+    public static final String PHASE_CACHE_LOOKUP = "cache lookup";
+    public static final String PHASE_DEPENDENCIES = "dependencies";
+    public static final String PHASE_REMOTE_SYNC = "remote sync";
+    public static final String PHASE_ANALYSIS = "analysis";
+    public static final String PHASE_REPORT = "report";
+    public static final String PHASE_CACHE_STORE = "cache store";
+
+    private final long myStartedAt = System.currentTimeMillis();
+    private final long myStartNanos = System.nanoTime();
+    private final Map<String, Long> myPhases = Collections.synchronizedMap(new LinkedHashMap<>());
+    private final List<PhalyfusionShardStatistics> myShards = ContainerUtil.createLockFreeCopyOnWriteList();
+    private final AtomicLong myRetainedMessages = new AtomicLong();
+    private final AtomicLong myPeakRetainedMessages = new AtomicLong();
+    private volatile long myDurationNanos = -1;
+    private volatile int myScopeFilesCount;
+    private volatile int myCachedFilesCount;
+    private volatile int myAnalysedFilesCount;
+    private volatile long myCachedMessagesCount;
+
+    /**
+     * @return start time to be passed to {@link #endPhase(String, long)}
+     */
+    public long startPhase() {
+        return System.nanoTime();
+    }
+
+    /**
+     * Adds time passed since the phase start. Durations of a phase which happens several times are summed up
+     */
+    public void endPhase(@NotNull String phase, long startNanos) {
+        myPhases.merge(phase, System.nanoTime() - startNanos, Long::sum);
+    }
+
+    @NotNull
+    public PhalyfusionShardStatistics createShard(int filesCount) {
+        var shard = new PhalyfusionShardStatistics(filesCount, this);
+        myShards.add(shard);
+        return shard;
+    }
+
+    public void messagesRetained(long count) {
+        long retained = myRetainedMessages.addAndGet(count);
+        myPeakRetainedMessages.accumulateAndGet(retained, Math::max);
+    }
+
+    public void messagesReleased(long count) {
+        myRetainedMessages.addAndGet(-count);
+    }
+
+    public void setScopeFilesCount(int count) {
+        myScopeFilesCount = count;
+    }
+
+    public void setCachedFiles(int filesCount, long messagesCount) {
+        myCachedFilesCount = filesCount;
+        myCachedMessagesCount = messagesCount;
+    }
+
+    public void setAnalysedFilesCount(int count) {
+        myAnalysedFilesCount = count;
+    }
+
+    public void finish() {
+        myDurationNanos = System.nanoTime() - myStartNanos;
+    }
+
+    public long getStartedAt() {
+        return myStartedAt;
+    }
+
+    public long getDurationMs() {
+        return toMillis(myDurationNanos >= 0 ? myDurationNanos : System.nanoTime() - myStartNanos);
+    }
+
+    public int getScopeFilesCount() {
+        return myScopeFilesCount;
+    }
+
+    public int getCachedFilesCount() {
+        return myCachedFilesCount;
+    }
+
+    public int getAnalysedFilesCount() {
+        return myAnalysedFilesCount;
+    }
+
+    /**
+     * @return predicted duration of the longest shard
+     */
+    public long getPredictedMakespanMs() {
+        long makespan = 0;
+        for (var shard : myShards) {
+            makespan = Math.max(makespan, shard.getPredictedNanos());
+        }
+        return toMillis(makespan);
+    }
+
+    /**
+     * @return duration of the longest shard, shards run in parallel
+     */
+    public long getActualMakespanMs() {
+        long makespan = 0;
+        for (var shard : myShards) {
+            makespan = Math.max(makespan, shard.getDurationNanos());
+        }
+        return toMillis(makespan);
+    }
+
+    public int getShardsCount() {
+        return myShards.size();
+    }
+
+    public long getMessagesCount() {
+        long count = myCachedMessagesCount;
+        for (var shard : myShards) {
+            count += shard.getMessagesCount();
+        }
+        return count;
+    }
+
+    public long getOutputChars() {
+        long chars = 0;
+        for (var shard : myShards) {
+            chars += shard.getOutputChars();
+        }
+        return chars;
+    }
+
+    public long getSpilledBytes() {
+        long bytes = 0;
+        for (var shard : myShards) {
+            bytes += shard.getSpilledBytes();
+        }
+        return bytes;
+    }
+
+    public long getPeakRetainedMessages() {
+        return myPeakRetainedMessages.get();
+    }
+
+    /**
+     * Run phases followed by phases of shards summed up over all shards, in milliseconds
+     */
+    @NotNull
+    public Map<String, Long> getPhaseDurations() {
+        Map<String, Long> durations = new LinkedHashMap<>();
+        synchronized (myPhases) {
+            myPhases.forEach((phase, nanos) -> durations.put(phase, toMillis(nanos)));
+        }
+
+        long spawn = 0;
+        long process = 0;
+        long parse = 0;
+        for (var shard : myShards) {
+            spawn += shard.getSpawnNanos();
+            process += shard.getProcessNanos();
+            parse += shard.getParseNanos();
+        }
+        durations.put("process spawn (all shards)", toMillis(spawn));
+        durations.put("analysers (all shards)", toMillis(process));
+        durations.put("output parsing (all shards)", toMillis(parse));
+        return durations;
+    }
+
+    @NotNull
+    public List<PhalyfusionShardStatistics> getShards() {
+        return myShards;
+    }
+
+    public void write(@NotNull JsonWriter writer) throws IOException {
+        writer.beginObject();
+        writer.name("startedAt").value(myStartedAt);
+        writer.name("durationMs").value(getDurationMs());
+        writer.name("scopeFiles").value(myScopeFilesCount);
+        writer.name("cachedFiles").value(myCachedFilesCount);
+        writer.name("analysedFiles").value(myAnalysedFilesCount);
+        writer.name("messages").value(getMessagesCount());
+        writer.name("outputChars").value(getOutputChars());
+        writer.name("spilledBytes").value(getSpilledBytes());
+        writer.name("peakRetainedMessages").value(getPeakRetainedMessages());
+        writer.name("predictedMakespanMs").value(getPredictedMakespanMs());
+        writer.name("actualMakespanMs").value(getActualMakespanMs());
+
+        writer.name("phasesMs").beginObject();
+        for (var entry : getPhaseDurations().entrySet()) {
+            writer.name(entry.getKey()).value(entry.getValue());
+        }
+        writer.endObject();
+
+        writer.name("shards").beginArray();
+        for (var shard : myShards) {
+            shard.write(writer);
+        }
+        writer.endArray();
+        writer.endObject();
+    }
+
+    static long toMillis(long nanos) {
+        return TimeUnit.NANOSECONDS.toMillis(nanos);
+    }
+}
@@ -0,0 +1,170 @@
+package ru.taptima.phalyfusion.statistics;
+
+import com.google.gson.stream.JsonWriter;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Statistics of a single Phalyfusion launch. Counters are updated by the process output reader thread,
+ * durations are updated by the thread which runs the shard
+ */
+public class PhalyfusionShardStatistics {
+    private final int myFilesCount;
+    private final PhalyfusionRunStatistics myRun;
+    private final AtomicLong mySpawnNanos = new AtomicLong();
+    private final AtomicLong myProcessNanos = new AtomicLong();
+    private final AtomicLong myParseNanos = new AtomicLong();
+    private final AtomicLong myOutputChars = new AtomicLong();
+    private final AtomicLong mySpilledBytes = new AtomicLong();
+    private final AtomicLong myMessagesCount = new AtomicLong();
+    private final AtomicLong myFoldedCount = new AtomicLong();
+    private volatile long myDurationNanos;
+    private volatile long myPredictedNanos;
+    private volatile boolean isBisected = false;
+
+    /**
+     * Statistics which are not a part of any run, e.g. of on-fly analysis
+     */
+    public PhalyfusionShardStatistics() {
+        this(0, null);
+    }
+
+    PhalyfusionShardStatistics(int filesCount, @Nullable PhalyfusionRunStatistics run) {
+        myFilesCount = filesCount;
+        myRun = run;
+    }
+
+    public void addSpawnTime(long nanos) {
+        mySpawnNanos.addAndGet(nanos);
+    }
+
+    /**
+     * Time from the process start till its exit, i.e. time spent by analysers
+     */
+    public void addProcessTime(long nanos) {
+        myProcessNanos.addAndGet(nanos);
+    }
+
+    public void addParseTime(long nanos, int chars) {
+        myParseNanos.addAndGet(nanos);
+        myOutputChars.addAndGet(chars);
+    }
+
+    /**
+     * Output which was not parsed in time and was spilled to disk
+     */
+    public void addSpilledBytes(long bytes) {
+        mySpilledBytes.addAndGet(bytes);
+    }
+
+    public void messageAdded() {
+        messagesAdded(1);
+    }
+
+    public void messagesAdded(int count) {
+        myMessagesCount.addAndGet(count);
+        if (myRun != null) {
+            myRun.messagesRetained(count);
+        }
+    }
+
+    /**
+     * Message of one analyser was folded into the equivalent message of another one
+     */
+    public void messageFolded() {
+        myFoldedCount.incrementAndGet();
+    }
+
+    /**
+     * Adds times, output size and folded messages of another launch, its messages are counted when they are moved
+     */
+    public void addTimes(@NotNull PhalyfusionShardStatistics other) {
+        mySpawnNanos.addAndGet(other.getSpawnNanos());
+        myProcessNanos.addAndGet(other.getProcessNanos());
+        myParseNanos.addAndGet(other.getParseNanos());
+        myOutputChars.addAndGet(other.getOutputChars());
+        mySpilledBytes.addAndGet(other.getSpilledBytes());
+        myFoldedCount.addAndGet(other.getFoldedCount());
+    }
+
+    public void setDurationNanos(long nanos) {
+        myDurationNanos = nanos;
+    }
+
+    /**
+     * Duration predicted from analysis cost of the shard files during previous runs
+     */
+    public void setPredictedNanos(long nanos) {
+        myPredictedNanos = nanos;
+    }
+
+    /**
+     * Launch of the shard failed and its files were split, so the duration includes failed launches
+     */
+    public void setBisected() {
+        isBisected = true;
+    }
+
+    public boolean isBisected() {
+        return isBisected;
+    }
+
+    public int getFilesCount() {
+        return myFilesCount;
+    }
+
+    public long getOutputChars() {
+        return myOutputChars.get();
+    }
+
+    public long getSpilledBytes() {
+        return mySpilledBytes.get();
+    }
+
+    public long getMessagesCount() {
+        return myMessagesCount.get();
+    }
+
+    public long getFoldedCount() {
+        return myFoldedCount.get();
+    }
+
+    long getSpawnNanos() {
+        return mySpawnNanos.get();
+    }
+
+    long getProcessNanos() {
+        return myProcessNanos.get();
+    }
+
+    long getParseNanos() {
+        return myParseNanos.get();
+    }
+
+    public long getDurationNanos() {
+        return myDurationNanos;
+    }
+
+    long getPredictedNanos() {
+        return myPredictedNanos;
+    }
+
+    void write(@NotNull JsonWriter writer) throws IOException {
+        writer.beginObject();
+        writer.name("files").value(myFilesCount);
+        writer.name("durationMs").value(PhalyfusionRunStatistics.toMillis(myDurationNanos));
+        writer.name("predictedMs").value(PhalyfusionRunStatistics.toMillis(myPredictedNanos));
+        writer.name("spawnMs").value(PhalyfusionRunStatistics.toMillis(getSpawnNanos()));
+        writer.name("processMs").value(PhalyfusionRunStatistics.toMillis(getProcessNanos()));
+        writer.name("parseMs").value(PhalyfusionRunStatistics.toMillis(getParseNanos()));
+        writer.name("outputChars").value(getOutputChars());
+        writer.name("spilledBytes").value(getSpilledBytes());
+        writer.name("messages").value(getMessagesCount());
+        writer.name("foldedMessages").value(getFoldedCount());
+        writer.name("bisected").value(isBisected);
+        writer.endObject();
+    }
+}
@@ -0,0 +1,94 @@
+package ru.taptima.phalyfusion.statistics;
+
+import com.google.gson.stream.JsonWriter;
+import com.intellij.openapi.Disposable;
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.components.ServiceManager;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.util.Disposer;
+import com.intellij.util.containers.ContainerUtil;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * Keeps statistics of the last batch runs of the project
+ */
+public class PhalyfusionStatistics {
+    private static final int MAX_RUNS = 50;
+
+    public interface Listener {
+        /**
+         * Called in EDT
+         */
+        void statisticsChanged();
+    }
+
+    private final Project myProject;
+    private final Deque<PhalyfusionRunStatistics> myRuns = new ArrayDeque<>();
+    private final List<Listener> myListeners = ContainerUtil.createLockFreeCopyOnWriteList();
+
+    public PhalyfusionStatistics(@NotNull Project project) {
+        myProject = project;
+    }
+
+    public static PhalyfusionStatistics getInstance(@NotNull Project project) {
+        return ServiceManager.getService(project, PhalyfusionStatistics.class);
+    }
+
+    public void addRun(@NotNull PhalyfusionRunStatistics run) {
+        synchronized (myRuns) {
+            myRuns.addFirst(run);
+            while (myRuns.size() > MAX_RUNS) {
+                myRuns.removeLast();
+            }
+        }
+        fireChanged();
+    }
+
+    public void clear() {
+        synchronized (myRuns) {
+            myRuns.clear();
+        }
+        fireChanged();
+    }
+
+    /**
+     * @return runs starting from the latest one
+     */
+    @NotNull
+    public List<PhalyfusionRunStatistics> getRuns() {
+        synchronized (myRuns) {
+            return new ArrayList<>(myRuns);
+        }
+    }
+
+    public void addListener(@NotNull Listener listener, @NotNull Disposable parentDisposable) {
+        myListeners.add(listener);
+        Disposer.register(parentDisposable, () -> myListeners.remove(listener));
+    }
+
+    public void export(@NotNull Writer writer) throws IOException {
+        try (JsonWriter jsonWriter = new JsonWriter(writer)) {
+            jsonWriter.setIndent("  ");
+            jsonWriter.beginArray();
+            for (var run : getRuns()) {
+                run.write(jsonWriter);
+            }
+            jsonWriter.endArray();
+        }
+    }
+
+    private void fireChanged() {
+        ApplicationManager.getApplication().invokeLater(() -> {
+            for (Listener listener : myListeners) {
+                listener.statisticsChanged();
+            }
+        }, myProject.getDisposed());
+    }
+}
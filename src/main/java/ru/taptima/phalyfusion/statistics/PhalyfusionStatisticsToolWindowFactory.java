@@ -0,0 +1,213 @@
+package ru.taptima.phalyfusion.statistics;
+
+import com.intellij.icons.AllIcons;
+import com.intellij.notification.Notification;
+import com.intellij.notification.NotificationType;
+import com.intellij.notification.Notifications;
+import com.intellij.openapi.Disposable;
+import com.intellij.openapi.actionSystem.*;
+import com.intellij.openapi.fileChooser.FileChooserFactory;
+import com.intellij.openapi.fileChooser.FileSaverDescriptor;
+import com.intellij.openapi.project.DumbAware;
+import com.intellij.openapi.project.DumbAwareAction;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.ui.SimpleToolWindowPanel;
+import com.intellij.openapi.vfs.VirtualFileWrapper;
+import com.intellij.openapi.wm.ToolWindow;
+import com.intellij.openapi.wm.ToolWindowFactory;
+import com.intellij.ui.JBSplitter;
+import com.intellij.ui.ScrollPaneFactory;
+import com.intellij.ui.content.Content;
+import com.intellij.ui.content.ContentFactory;
+import com.intellij.ui.table.JBTable;
+import org.jetbrains.annotations.NotNull;
+
+import javax.swing.*;
+import javax.swing.table.AbstractTableModel;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * "Phalyfusion Statistics" tool window with durations and counters of the last batch runs
+ */
+public class PhalyfusionStatisticsToolWindowFactory implements ToolWindowFactory, DumbAware {
+    private static final String GROUP_ID = "PHP External Quality Tools";
+
+    @Override
+    public void createToolWindowContent(@NotNull Project project, @NotNull ToolWindow toolWindow) {
+        var panel = new StatisticsPanel(project);
+        Content content = ContentFactory.SERVICE.getInstance().createContent(panel, null, false);
+        content.setDisposer(panel);
+        toolWindow.getContentManager().addContent(content);
+    }
+
+    private static class StatisticsPanel extends SimpleToolWindowPanel implements Disposable {
+        private static final String[] COLUMNS = {"Started", "Duration, ms", "Files", "Cached", "Analysed", "Shards",
+                "Messages", "Output chars", "Peak retained messages"};
+
+        private final Project myProject;
+        private final RunsTableModel myModel = new RunsTableModel();
+        private final JBTable myTable = new JBTable(myModel);
+        private final JTextArea myDetails = new JTextArea();
+
+        StatisticsPanel(@NotNull Project project) {
+            super(true, true);
+            myProject = project;
+
+            myTable.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+            myTable.getSelectionModel().addListSelectionListener(e -> updateDetails());
+            myDetails.setEditable(false);
+
+            var splitter = new JBSplitter(false, 0.6f);
+            splitter.setFirstComponent(ScrollPaneFactory.createScrollPane(myTable));
+            splitter.setSecondComponent(ScrollPaneFactory.createScrollPane(myDetails));
+            setContent(splitter);
+
+            var group = new DefaultActionGroup();
+            group.add(new DumbAwareAction("Export as JSON", "Export statistics of all runs as JSON", AllIcons.ToolbarDecorator.Export) {
+                @Override
+                public void actionPerformed(@NotNull AnActionEvent e) {
+                    export();
+                }
+            });
+            group.add(new DumbAwareAction("Clear", "Clear statistics", AllIcons.Actions.GC) {
+                @Override
+                public void actionPerformed(@NotNull AnActionEvent e) {
+                    PhalyfusionStatistics.getInstance(myProject).clear();
+                }
+            });
+            ActionToolbar toolbar = ActionManager.getInstance().createActionToolbar("PhalyfusionStatistics", group, false);
+            toolbar.setTargetComponent(this);
+            setToolbar(toolbar.getComponent());
+
+            var statistics = PhalyfusionStatistics.getInstance(project);
+            statistics.addListener(this::refresh, this);
+            refresh();
+        }
+
+        private void refresh() {
+            myModel.setRuns(PhalyfusionStatistics.getInstance(myProject).getRuns());
+            if (myModel.getRowCount() > 0) {
+                // The latest run is the first row
+                myTable.getSelectionModel().setSelectionInterval(0, 0);
+            }
+            updateDetails();
+        }
+
+        private void updateDetails() {
+            int row = myTable.getSelectedRow();
+            if (row < 0 || row >= myModel.getRowCount()) {
+                myDetails.setText("");
+                return;
+            }
+
+            var run = myModel.getRun(row);
+            var text = new StringBuilder("Phases, ms:\n");
+            run.getPhaseDurations().forEach((phase, duration) -> text.append("  ").append(phase).append(": ").append(duration).append('\n'));
+
+            text.append("\nShards makespan, ms: predicted ").append(run.getPredictedMakespanMs())
+                    .append(", actual ").append(run.getActualMakespanMs()).append('\n');
+            text.append("\nShards:\n");
+            int idx = 1;
+            for (var shard : run.getShards()) {
+                text.append("  #").append(idx++)
+                        .append(": files ").append(shard.getFilesCount())
+                        .append(", duration ").append(PhalyfusionRunStatistics.toMillis(shard.getDurationNanos())).append(" ms")
+                        .append(", predicted ").append(PhalyfusionRunStatistics.toMillis(shard.getPredictedNanos())).append(" ms")
+                        .append(", spawn ").append(PhalyfusionRunStatistics.toMillis(shard.getSpawnNanos())).append(" ms")
+                        .append(", analysers ").append(PhalyfusionRunStatistics.toMillis(shard.getProcessNanos())).append(" ms")
+                        .append(", parsing ").append(PhalyfusionRunStatistics.toMillis(shard.getParseNanos())).append(" ms")
+                        .append(", output chars ").append(shard.getOutputChars())
+                        .append(", spilled bytes ").append(shard.getSpilledBytes())
+                        .append(", messages ").append(shard.getMessagesCount())
+                        .append(", folded ").append(shard.getFoldedCount())
+                        .append('\n');
+            }
+
+            myDetails.setText(text.toString());
+            myDetails.setCaretPosition(0);
+        }
+
+        private void export() {
+            var descriptor = new FileSaverDescriptor("Export Phalyfusion Statistics", "Save statistics as JSON", "json");
+            VirtualFileWrapper wrapper = FileChooserFactory.getInstance().createSaveFileDialog(descriptor, myProject)
+                    .save(null, "phalyfusion-statistics.json");
+            if (wrapper == null) {
+                return;
+            }
+
+            try (Writer writer = new OutputStreamWriter(new FileOutputStream(wrapper.getFile()), StandardCharsets.UTF_8)) {
+                PhalyfusionStatistics.getInstance(myProject).export(writer);
+            } catch (IOException e) {
+                Notifications.Bus.notify(new Notification(GROUP_ID, "Phalyfusion",
+                        "Can not export statistics: " + e.getMessage(), NotificationType.ERROR, null), myProject);
+            }
+        }
+
+        @Override
+        public void dispose() {
+        }
+    }
+
+    private static class RunsTableModel extends AbstractTableModel {
+        private final SimpleDateFormat myDateFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
+        private List<PhalyfusionRunStatistics> myRuns = new ArrayList<>();
+
+        void setRuns(@NotNull List<PhalyfusionRunStatistics> runs) {
+            myRuns = runs;
+            fireTableDataChanged();
+        }
+
+        @NotNull
+        PhalyfusionRunStatistics getRun(int row) {
+            return myRuns.get(row);
+        }
+
+        @Override
+        public int getRowCount() {
+            return myRuns.size();
+        }
+
+        @Override
+        public int getColumnCount() {
+            return StatisticsPanel.COLUMNS.length;
+        }
+
+        @Override
+        public String getColumnName(int column) {
+            return StatisticsPanel.COLUMNS[column];
+        }
+
+        @Override
+        public Object getValueAt(int row, int column) {
+            var run = myRuns.get(row);
+            switch (column) {
+                case 0:
+                    return myDateFormat.format(new Date(run.getStartedAt()));
+                case 1:
+                    return run.getDurationMs();
+                case 2:
+                    return run.getScopeFilesCount();
+                case 3:
+                    return run.getCachedFilesCount();
+                case 4:
+                    return run.getAnalysedFilesCount();
+                case 5:
+                    return run.getShardsCount();
+                case 6:
+                    return run.getMessagesCount();
+                case 7:
+                    return run.getOutputChars();
+                default:
+                    return run.getPeakRetainedMessages();
+            }
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package ru.taptima.phalyfusion.store;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Dictionary of a batch run shared by all its processors. Message texts and analyser names get dense ids,
+ * so packed messages keep ids instead of strings and a text repeated thousands of times is held once.
+ * Texts are kept without the analyser prefix, the same text of different analysers is stored once too.
+ * Shards parse output in parallel, so known values are looked up without locking and only new ones take a lock
+ */
+public class PhalyfusionMessagePool {
+    private final Dictionary myTexts = new Dictionary();
+    private final Dictionary myAnalyzers = new Dictionary();
+    private final Map<String, String> myStrings = new ConcurrentHashMap<>();
+
+    /**
+     * Values by ids. A value is stored before its id is published through the map, and grown arrays are copies
+     * made under the lock, so a reader which got an id always sees the value
+     */
+    private static class Dictionary {
+        private final Map<String, Integer> myIds = new ConcurrentHashMap<>();
+        private volatile String[] myValues = new String[64];
+        private int mySize = 0;
+
+        int intern(@NotNull String value) {
+            Integer id = myIds.get(value);
+            return id != null ? id : add(value);
+        }
+
+        private synchronized int add(@NotNull String value) {
+            Integer id = myIds.get(value);
+            if (id != null) {
+                return id;
+            }
+
+            if (mySize == myValues.length) {
+                myValues = Arrays.copyOf(myValues, mySize * 2);
+            }
+            myValues[mySize] = value;
+            myIds.put(value, mySize);
+            return mySize++;
+        }
+
+        @NotNull
+        String get(int id) {
+            return myValues[id];
+        }
+
+        int size() {
+            return myIds.size();
+        }
+    }
+
+    public int internText(@NotNull String text) {
+        return myTexts.intern(text);
+    }
+
+    @NotNull
+    public String getText(int textId) {
+        return myTexts.get(textId);
+    }
+
+    public int internAnalyzer(@NotNull String analyzer) {
+        return myAnalyzers.intern(analyzer);
+    }
+
+    @NotNull
+    public String getAnalyzer(int analyzerId) {
+        return myAnalyzers.get(analyzerId);
+    }
+
+    /**
+     * @return canonical instance of the string, e.g. of a full message text kept by the result cache
+     */
+    @NotNull
+    public String intern(@NotNull String value) {
+        String canonical = myStrings.putIfAbsent(value, value);
+        return canonical != null ? canonical : value;
+    }
+
+    public int getTextsCount() {
+        return myTexts.size();
+    }
+}
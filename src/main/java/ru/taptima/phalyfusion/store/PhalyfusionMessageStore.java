@@ -0,0 +1,132 @@
+package ru.taptima.phalyfusion.store;
+
+import com.jetbrains.php.tools.quality.QualityToolMessage;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Arrays;
+
+/**
+ * Messages of a processor kept as packed records in parallel primitive arrays, 29 bytes per message and no objects.
+ * Texts and analysers are ids in the {@link PhalyfusionMessagePool} of the run, analysers folded into a message
+ * are bits of a mask, so only analysers with ids below {@link #MAX_FOLDED_ANALYZERS} can be folded
+ */
+public class PhalyfusionMessageStore {
+    public static final int MAX_FOLDED_ANALYZERS = 64;
+    private static final QualityToolMessage.Severity[] SEVERITIES = QualityToolMessage.Severity.values();
+
+    private int[] myFileIds = new int[16];
+    private int[] myLines = new int[16];
+    private int[] myColumns = new int[16];
+    private int[] myTextIds = new int[16];
+    // -1 for messages without analyser prefix
+    private int[] myAnalyzerIds = new int[16];
+    private long[] myFoldedAnalyzers = new long[16];
+    private byte[] mySeverities = new byte[16];
+    private int mySize = 0;
+
+    /**
+     * @return index of the added record
+     */
+    public int add(int fileId, int line, int column, @NotNull QualityToolMessage.Severity severity, int analyzerId, int textId) {
+        if (mySize == myFileIds.length) {
+            grow(mySize * 2);
+        }
+
+        myFileIds[mySize] = fileId;
+        myLines[mySize] = line;
+        myColumns[mySize] = column;
+        myTextIds[mySize] = textId;
+        myAnalyzerIds[mySize] = analyzerId;
+        myFoldedAnalyzers[mySize] = 0;
+        mySeverities[mySize] = (byte) severity.ordinal();
+        return mySize++;
+    }
+
+    public int size() {
+        return mySize;
+    }
+
+    public int getFileId(int index) {
+        return myFileIds[index];
+    }
+
+    public int getLine(int index) {
+        return myLines[index];
+    }
+
+    public int getColumn(int index) {
+        return myColumns[index];
+    }
+
+    public int getTextId(int index) {
+        return myTextIds[index];
+    }
+
+    public int getAnalyzerId(int index) {
+        return myAnalyzerIds[index];
+    }
+
+    @NotNull
+    public QualityToolMessage.Severity getSeverity(int index) {
+        return SEVERITIES[mySeverities[index]];
+    }
+
+    /**
+     * @return mask of folded analyser ids
+     */
+    public long getFoldedAnalyzers(int index) {
+        return myFoldedAnalyzers[index];
+    }
+
+    public boolean isReportedBy(int index, int analyzerId) {
+        return analyzerId >= 0 && (myAnalyzerIds[index] == analyzerId
+                || analyzerId < MAX_FOLDED_ANALYZERS && (myFoldedAnalyzers[index] & 1L << analyzerId) != 0);
+    }
+
+    /**
+     * @return false if the analyser can not be folded
+     */
+    public boolean addFoldedAnalyzer(int index, int analyzerId) {
+        if (analyzerId < 0 || analyzerId >= MAX_FOLDED_ANALYZERS) {
+            return false;
+        }
+
+        if (myAnalyzerIds[index] != analyzerId) {
+            myFoldedAnalyzers[index] |= 1L << analyzerId;
+        }
+        return true;
+    }
+
+    /**
+     * Appends records of another store which uses the same pool
+     *
+     * @param fileIds ids of files of this processor by ids of the other one
+     */
+    public void addAll(@NotNull PhalyfusionMessageStore other, @NotNull int[] fileIds) {
+        if (mySize + other.mySize > myFileIds.length) {
+            grow(Math.max(mySize + other.mySize, mySize * 2));
+        }
+
+        for (int i = 0; i < other.mySize; i++) {
+            int fileId = other.myFileIds[i];
+            myFileIds[mySize + i] = fileId >= 0 ? fileIds[fileId] : -1;
+        }
+        System.arraycopy(other.myLines, 0, myLines, mySize, other.mySize);
+        System.arraycopy(other.myColumns, 0, myColumns, mySize, other.mySize);
+        System.arraycopy(other.myTextIds, 0, myTextIds, mySize, other.mySize);
+        System.arraycopy(other.myAnalyzerIds, 0, myAnalyzerIds, mySize, other.mySize);
+        System.arraycopy(other.myFoldedAnalyzers, 0, myFoldedAnalyzers, mySize, other.mySize);
+        System.arraycopy(other.mySeverities, 0, mySeverities, mySize, other.mySize);
+        mySize += other.mySize;
+    }
+
+    private void grow(int capacity) {
+        myFileIds = Arrays.copyOf(myFileIds, capacity);
+        myLines = Arrays.copyOf(myLines, capacity);
+        myColumns = Arrays.copyOf(myColumns, capacity);
+        myTextIds = Arrays.copyOf(myTextIds, capacity);
+        myAnalyzerIds = Arrays.copyOf(myAnalyzerIds, capacity);
+        myFoldedAnalyzers = Arrays.copyOf(myFoldedAnalyzers, capacity);
+        mySeverities = Arrays.copyOf(mySeverities, capacity);
+    }
+}
@@ -0,0 +1,81 @@
+package ru.taptima.phalyfusion.vcs;
+
+import com.intellij.openapi.vfs.VirtualFile;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Files changed against the diff base with their changed line ranges.
+ * Ranges are stored as flat sorted pairs of 1-based start line and exclusive end line.
+ * Files without ranges (e.g. new files) are treated as changed entirely.
+ */
+public class PhalyfusionChangedLines {
+    private final Map<VirtualFile, int[]> myRanges = new HashMap<>();
+
+    public void addFile(@NotNull VirtualFile file) {
+        myRanges.put(file, null);
+    }
+
+    /**
+     * @param ranges flat pairs of 1-based start line and exclusive end line
+     */
+    public void addFile(@NotNull VirtualFile file, @NotNull int[] ranges) {
+        int[] sorted = Arrays.copyOf(ranges, ranges.length);
+        sortPairs(sorted);
+        myRanges.put(file, sorted);
+    }
+
+    @NotNull
+    public Set<VirtualFile> getFiles() {
+        return myRanges.keySet();
+    }
+
+    public boolean isEmpty() {
+        return myRanges.isEmpty();
+    }
+
+    public boolean contains(@NotNull VirtualFile file, int lineNum) {
+        if (!myRanges.containsKey(file)) {
+            return false;
+        }
+
+        int[] ranges = myRanges.get(file);
+        if (ranges == null) {
+            return true;
+        }
+
+        int low = 0;
+        int high = ranges.length / 2 - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (lineNum < ranges[mid * 2]) {
+                high = mid - 1;
+            } else if (lineNum >= ranges[mid * 2 + 1]) {
+                low = mid + 1;
+            } else {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static void sortPairs(@NotNull int[] ranges) {
+        // Ranges usually come sorted from the diff, insertion sort keeps it cheap for this case
+        for (int i = 2; i < ranges.length; i += 2) {
+            int start = ranges[i];
+            int end = ranges[i + 1];
+            int j = i - 2;
+            while (j >= 0 && ranges[j] > start) {
+                ranges[j + 2] = ranges[j];
+                ranges[j + 3] = ranges[j + 1];
+                j -= 2;
+            }
+            ranges[j + 2] = start;
+            ranges[j + 3] = end;
+        }
+    }
+}
@@ -0,0 +1,205 @@
+package ru.taptima.phalyfusion.vcs;
+
+import com.intellij.diff.comparison.ComparisonManager;
+import com.intellij.diff.comparison.ComparisonPolicy;
+import com.intellij.diff.fragments.LineFragment;
+import com.intellij.execution.ExecutionException;
+import com.intellij.execution.configurations.GeneralCommandLine;
+import com.intellij.execution.process.ProcessOutput;
+import com.intellij.execution.util.ExecUtil;
+import com.intellij.openapi.application.ReadAction;
+import com.intellij.openapi.progress.ProgressIndicator;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.util.text.StringUtil;
+import com.intellij.openapi.vcs.FilePath;
+import com.intellij.openapi.vcs.VcsException;
+import com.intellij.openapi.vcs.changes.Change;
+import com.intellij.openapi.vcs.changes.ChangeListManager;
+import com.intellij.openapi.vcs.changes.ContentRevision;
+import com.intellij.openapi.vfs.LocalFileSystem;
+import com.intellij.openapi.vfs.VfsUtilCore;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.util.ArrayUtil;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import ru.taptima.phalyfusion.PhalyfusionAnnotator;
+import ru.taptima.phalyfusion.blacklist.PhalyfusionBlackList;
+import ru.taptima.phalyfusion.blacklist.PhalyfusionBlackListMatcher;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Collects PHP files changed against the diff base together with their changed line ranges.
+ * Working tree and changelists are compared through the IDE VCS layer, git refs are compared with "git diff"
+ * of the working tree against the ref.
+ */
+public class PhalyfusionDiffCollector {
+    private static final int GIT_TIMEOUT_MS = 60000;
+
+    private PhalyfusionDiffCollector() {
+    }
+
+    @NotNull
+    public static PhalyfusionChangedLines collectChanges(@NotNull Project project, @NotNull Collection<Change> changes,
+                                                         @NotNull ProgressIndicator indicator) throws VcsException {
+        PhalyfusionBlackListMatcher matcher = PhalyfusionBlackList.getInstance(project).getMatcher();
+        PhalyfusionChangedLines changedLines = new PhalyfusionChangedLines();
+
+        for (Change change : changes) {
+            indicator.checkCanceled();
+            VirtualFile file = change.getVirtualFile();
+            if (file == null || !ReadAction.compute(() -> PhalyfusionAnnotator.isFileSuitable(file, matcher))) {
+                continue;
+            }
+
+            ContentRevision before = change.getBeforeRevision();
+            String beforeContent = before == null ? null : before.getContent();
+            if (beforeContent == null) {
+                changedLines.addFile(file);
+                continue;
+            }
+
+            String afterContent;
+            try {
+                afterContent = VfsUtilCore.loadText(file);
+            } catch (IOException e) {
+                throw new VcsException(e);
+            }
+
+            List<LineFragment> fragments = ComparisonManager.getInstance()
+                    .compareLines(beforeContent, afterContent, ComparisonPolicy.DEFAULT, indicator);
+            List<Integer> ranges = new ArrayList<>();
+            for (LineFragment fragment : fragments) {
+                // Pure deletions do not have lines in the current content
+                if (fragment.getEndLine2() > fragment.getStartLine2()) {
+                    ranges.add(fragment.getStartLine2() + 1);
+                    ranges.add(fragment.getEndLine2() + 1);
+                }
+            }
+
+            if (!ranges.isEmpty()) {
+                changedLines.addFile(file, ArrayUtil.toIntArray(ranges));
+            }
+        }
+
+        return changedLines;
+    }
+
+    /**
+     * All local changes including unversioned files
+     */
+    @NotNull
+    public static PhalyfusionChangedLines collectWorkingTree(@NotNull Project project, @NotNull ProgressIndicator indicator) throws VcsException {
+        ChangeListManager changeListManager = ChangeListManager.getInstance(project);
+        PhalyfusionChangedLines changedLines = collectChanges(project, changeListManager.getAllChanges(), indicator);
+        PhalyfusionBlackListMatcher matcher = PhalyfusionBlackList.getInstance(project).getMatcher();
+
+        for (FilePath path : changeListManager.getUnversionedFilesPaths()) {
+            VirtualFile file = path.getVirtualFile();
+            if (file != null && ReadAction.compute(() -> PhalyfusionAnnotator.isFileSuitable(file, matcher))) {
+                changedLines.addFile(file);
+            }
+        }
+
+        return changedLines;
+    }
+
+    @NotNull
+    public static PhalyfusionChangedLines collectGitRef(@NotNull Project project, @NotNull String ref,
+                                                       @NotNull ProgressIndicator indicator) throws ExecutionException {
+        String basePath = project.getBasePath();
+        if (basePath == null) {
+            throw new ExecutionException("Project has no base directory");
+        }
+
+        String root = runGit(basePath, "rev-parse", "--show-toplevel").trim();
+        indicator.checkCanceled();
+        String diff = runGit(root, "-c", "core.quotePath=false", "diff", "-U0", "--no-color", "--no-ext-diff",
+                "--no-renames", ref, "--");
+        indicator.checkCanceled();
+
+        return parseUnifiedDiff(project, root, diff);
+    }
+
+    @NotNull
+    private static PhalyfusionChangedLines parseUnifiedDiff(@NotNull Project project, @NotNull String root, @NotNull String diff) {
+        PhalyfusionBlackListMatcher matcher = PhalyfusionBlackList.getInstance(project).getMatcher();
+        PhalyfusionChangedLines changedLines = new PhalyfusionChangedLines();
+        VirtualFile file = null;
+        List<Integer> ranges = new ArrayList<>();
+
+        for (String line : StringUtil.splitByLines(diff)) {
+            if (line.startsWith("+++ ")) {
+                addFile(changedLines, file, ranges);
+                file = findFile(root, line.substring(4), matcher);
+                ranges.clear();
+            } else if (line.startsWith("@@ ") && file != null) {
+                int[] hunk = parseHunkTarget(line);
+                if (hunk != null && hunk[1] > 0) {
+                    ranges.add(hunk[0]);
+                    ranges.add(hunk[0] + hunk[1]);
+                }
+            }
+        }
+        addFile(changedLines, file, ranges);
+
+        return changedLines;
+    }
+
+    private static void addFile(@NotNull PhalyfusionChangedLines changedLines, @Nullable VirtualFile file, @NotNull List<Integer> ranges) {
+        if (file != null && !ranges.isEmpty()) {
+            changedLines.addFile(file, ArrayUtil.toIntArray(ranges));
+        }
+    }
+
+    @Nullable
+    private static VirtualFile findFile(@NotNull String root, @NotNull String diffPath, @NotNull PhalyfusionBlackListMatcher matcher) {
+        String path = StringUtil.unquoteString(diffPath.trim());
+        if (!path.startsWith("b/")) {
+            // Deleted file, "/dev/null"
+            return null;
+        }
+
+        VirtualFile file = LocalFileSystem.getInstance().refreshAndFindFileByPath(root + "/" + path.substring(2));
+        if (file == null || !ReadAction.compute(() -> PhalyfusionAnnotator.isFileSuitable(file, matcher))) {
+            return null;
+        }
+        return file;
+    }
+
+    /**
+     * @return start line and lines count of the new side of the hunk header "@@ -a,b +c,d @@"
+     */
+    @Nullable
+    static int[] parseHunkTarget(@NotNull String header) {
+        int plus = header.indexOf(" +");
+        if (plus < 0) {
+            return null;
+        }
+
+        int end = header.indexOf(' ', plus + 2);
+        String target = end < 0 ? header.substring(plus + 2) : header.substring(plus + 2, end);
+        int comma = target.indexOf(',');
+        int start = StringUtil.parseInt(comma < 0 ? target : target.substring(0, comma), -1);
+        int count = comma < 0 ? 1 : StringUtil.parseInt(target.substring(comma + 1), -1);
+        return start < 0 || count < 0 ? null : new int[]{start, count};
+    }
+
+    @NotNull
+    private static String runGit(@NotNull String workDirectory, @NotNull String... parameters) throws ExecutionException {
+        GeneralCommandLine commandLine = new GeneralCommandLine("git")
+                .withParameters(parameters)
+                .withWorkDirectory(workDirectory);
+        ProcessOutput output = ExecUtil.execAndGetOutput(commandLine, GIT_TIMEOUT_MS);
+        if (output.isTimeout()) {
+            throw new ExecutionException(commandLine.getCommandLineString() + " did not finish in " + GIT_TIMEOUT_MS + " ms");
+        }
+        if (output.getExitCode() != 0) {
+            throw new ExecutionException(commandLine.getCommandLineString() + " failed: " + output.getStderr().trim());
+        }
+        return output.getStdout();
+    }
+}
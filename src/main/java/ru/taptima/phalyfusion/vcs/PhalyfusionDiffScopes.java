@@ -0,0 +1,33 @@
+package ru.taptima.phalyfusion.vcs;
+
+import com.intellij.analysis.AnalysisScope;
+import com.intellij.openapi.components.ServiceManager;
+import com.intellij.openapi.project.Project;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * Changed line ranges of analysis scopes created by the diff action.
+ * Global inspection reports only messages on changed lines for registered scopes.
+ * Entries are dropped together with the scope.
+ */
+public class PhalyfusionDiffScopes {
+    private final Map<AnalysisScope, PhalyfusionChangedLines> myScopes = Collections.synchronizedMap(new WeakHashMap<>());
+
+    public static PhalyfusionDiffScopes getInstance(@NotNull Project project) {
+        return ServiceManager.getService(project, PhalyfusionDiffScopes.class);
+    }
+
+    public void register(@NotNull AnalysisScope scope, @NotNull PhalyfusionChangedLines changedLines) {
+        myScopes.put(scope, changedLines);
+    }
+
+    @Nullable
+    public PhalyfusionChangedLines getChangedLines(@NotNull AnalysisScope scope) {
+        return myScopes.get(scope);
+    }
+}
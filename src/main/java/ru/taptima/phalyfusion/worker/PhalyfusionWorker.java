@@ -0,0 +1,143 @@
+package ru.taptima.phalyfusion.worker;
+
+import com.intellij.execution.ExecutionException;
+import com.intellij.execution.configurations.GeneralCommandLine;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.util.concurrency.AppExecutorUtil;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import ru.taptima.phalyfusion.process.PhalyfusionTimeoutException;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Long-lived Phalyfusion process which analyses files on request.
+ *
+ * Protocol is line-delimited. Request:
+ * <pre>
+ * ANALYSE 2
+ * /path/to/First.php
+ * /path/to/Second.php
+ * </pre>
+ * Response is a "checkstyle" report followed by "DONE" line. Worker may respond with "ERROR message" line instead of the report.
+ * "QUIT" request stops the worker.
+ */
+public class PhalyfusionWorker {
+    private static final Logger LOG = Logger.getInstance(PhalyfusionWorker.class);
+
+    static final String WORKER_COMMAND = "worker";
+    static final String ANALYSE_REQUEST = "ANALYSE";
+    static final String QUIT_REQUEST = "QUIT";
+    static final String DONE_RESPONSE = "DONE";
+    static final String ERROR_RESPONSE = "ERROR ";
+
+    private final Process myProcess;
+    private final Writer myInput;
+    private final BufferedReader myOutput;
+    private final long myConfigurationStamp;
+    private volatile long myLastUsed;
+    private volatile boolean isTimedOut;
+
+    private PhalyfusionWorker(@NotNull Process process, long configurationStamp) {
+        myProcess = process;
+        myInput = new BufferedWriter(new OutputStreamWriter(process.getOutputStream(), StandardCharsets.UTF_8));
+        myOutput = new BufferedReader(new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8));
+        myConfigurationStamp = configurationStamp;
+        myLastUsed = System.currentTimeMillis();
+    }
+
+    @NotNull
+    public static PhalyfusionWorker start(@NotNull String toolPath, @Nullable String workingDir, long configurationStamp) throws ExecutionException {
+        GeneralCommandLine commandLine = new GeneralCommandLine(toolPath, WORKER_COMMAND, "--format=checkstyle")
+                .withWorkDirectory(workingDir)
+                .withCharset(StandardCharsets.UTF_8);
+        Process process = commandLine.createProcess();
+
+        AppExecutorUtil.getAppExecutorService().execute(() -> {
+            try (var errors = new BufferedReader(new InputStreamReader(process.getErrorStream(), StandardCharsets.UTF_8))) {
+                String line;
+                while ((line = errors.readLine()) != null) {
+                    LOG.debug("Phalyfusion worker: " + line);
+                }
+            } catch (IOException ignored) {
+            }
+        });
+
+        return new PhalyfusionWorker(process, configurationStamp);
+    }
+
+    /**
+     * @return lines of the report. The worker is destroyed if it does not respond in time
+     * @throws IOException if the worker crashed, so it should be restarted
+     * @throws PhalyfusionTimeoutException if the worker was destroyed because it did not respond in time
+     * @throws ExecutionException if the worker responded with an error, it is still usable
+     */
+    @NotNull
+    public synchronized List<String> analyse(@NotNull String[] paths, int timeoutMs) throws IOException, ExecutionException {
+        myLastUsed = System.currentTimeMillis();
+        isTimedOut = false;
+        var watchdog = AppExecutorUtil.getAppScheduledExecutorService().schedule(() -> {
+            isTimedOut = true;
+            destroy();
+        }, timeoutMs, TimeUnit.MILLISECONDS);
+        try {
+            myInput.write(ANALYSE_REQUEST + " " + paths.length + "\n");
+            for (String path : paths) {
+                myInput.write(path);
+                myInput.write('\n');
+            }
+            myInput.flush();
+
+            List<String> lines = new ArrayList<>();
+            String line;
+            while ((line = myOutput.readLine()) != null) {
+                if (DONE_RESPONSE.equals(line)) {
+                    return lines;
+                }
+                if (line.startsWith(ERROR_RESPONSE)) {
+                    throw new ExecutionException(line.substring(ERROR_RESPONSE.length()));
+                }
+                lines.add(line);
+            }
+
+            throw new IOException("Phalyfusion worker terminated");
+        } catch (IOException e) {
+            if (isTimedOut) {
+                throw new PhalyfusionTimeoutException(timeoutMs);
+            }
+            throw e;
+        } finally {
+            watchdog.cancel(false);
+            myLastUsed = System.currentTimeMillis();
+        }
+    }
+
+    public boolean isAlive() {
+        return myProcess.isAlive();
+    }
+
+    public long getLastUsed() {
+        return myLastUsed;
+    }
+
+    public long getConfigurationStamp() {
+        return myConfigurationStamp;
+    }
+
+    public void destroy() {
+        if (!myProcess.isAlive()) {
+            return;
+        }
+
+        try {
+            myInput.write(QUIT_REQUEST + "\n");
+            myInput.flush();
+        } catch (IOException ignored) {
+        }
+        myProcess.destroy();
+    }
+}
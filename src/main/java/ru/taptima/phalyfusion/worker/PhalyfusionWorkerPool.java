@@ -0,0 +1,140 @@
+package ru.taptima.phalyfusion.worker;
+
+import com.intellij.execution.ExecutionException;
+import com.intellij.openapi.Disposable;
+import com.intellij.openapi.components.ServiceManager;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.project.Project;
+import com.intellij.util.concurrency.AppExecutorUtil;
+import com.jetbrains.php.tools.quality.QualityToolMessageProcessor;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import ru.taptima.phalyfusion.configuration.PhalyfusionConfiguration;
+import ru.taptima.phalyfusion.process.PhalyfusionTimeoutException;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps one warm Phalyfusion worker per configuration for on-fly analysis.
+ * Worker is restarted when it crashes or phalyfusion.neon changes and is stopped after idle timeout.
+ */
+public class PhalyfusionWorkerPool implements Disposable {
+    private static final Logger LOG = Logger.getInstance(PhalyfusionWorkerPool.class);
+    private static final long IDLE_TIMEOUT_MS = TimeUnit.MINUTES.toMillis(5);
+    private static final long IDLE_CHECK_PERIOD_MS = TimeUnit.MINUTES.toMillis(1);
+
+    private final Project myProject;
+    private final Map<String, PhalyfusionWorker> myWorkers = new HashMap<>();
+    private final ScheduledFuture<?> myIdleChecker;
+
+    public PhalyfusionWorkerPool(@NotNull Project project) {
+        myProject = project;
+        myIdleChecker = AppExecutorUtil.getAppScheduledExecutorService().scheduleWithFixedDelay(this::retireIdleWorkers,
+                IDLE_CHECK_PERIOD_MS, IDLE_CHECK_PERIOD_MS, TimeUnit.MILLISECONDS);
+    }
+
+    public static PhalyfusionWorkerPool getInstance(@NotNull Project project) {
+        return ServiceManager.getService(project, PhalyfusionWorkerPool.class);
+    }
+
+    /**
+     * Analyses files by the worker of the configuration and passes its report to the processor.
+     * Crashed worker is restarted once. Timeout and error of the worker are final, the worker is kept after an error
+     *
+     * @return false if the files were not analysed, so the tool should be launched in usual way
+     */
+    public boolean analyse(@NotNull PhalyfusionConfiguration configuration, @NotNull String[] paths,
+                           @NotNull QualityToolMessageProcessor messageProcessor, int timeoutMs) throws ExecutionException {
+        String key = configuration.getId() + ":" + configuration.getToolPath();
+        for (int attempt = 0; attempt < 2; attempt++) {
+            PhalyfusionWorker worker = acquire(key, configuration.getToolPath());
+            if (worker == null) {
+                return false;
+            }
+
+            List<String> lines;
+            try {
+                lines = worker.analyse(paths, timeoutMs);
+            } catch (IOException e) {
+                LOG.info("Phalyfusion worker crashed, restarting", e);
+                release(key, worker);
+                continue;
+            } catch (PhalyfusionTimeoutException e) {
+                release(key, worker);
+                throw e;
+            }
+
+            for (String line : lines) {
+                messageProcessor.parseLine(line);
+            }
+            messageProcessor.done();
+            return true;
+        }
+
+        return false;
+    }
+
+    @Nullable
+    private synchronized PhalyfusionWorker acquire(@NotNull String key, @NotNull String toolPath) {
+        long stamp = getConfigurationStamp();
+        PhalyfusionWorker worker = myWorkers.get(key);
+        if (worker != null && worker.isAlive() && worker.getConfigurationStamp() == stamp) {
+            return worker;
+        }
+
+        if (worker != null) {
+            worker.destroy();
+            myWorkers.remove(key);
+        }
+
+        try {
+            worker = PhalyfusionWorker.start(toolPath, myProject.getBasePath(), stamp);
+        } catch (ExecutionException e) {
+            LOG.warn("Can not start Phalyfusion worker", e);
+            return null;
+        }
+
+        myWorkers.put(key, worker);
+        return worker;
+    }
+
+    private synchronized void release(@NotNull String key, @NotNull PhalyfusionWorker worker) {
+        worker.destroy();
+        myWorkers.remove(key, worker);
+    }
+
+    private synchronized void retireIdleWorkers() {
+        long now = System.currentTimeMillis();
+        var iterator = myWorkers.values().iterator();
+        while (iterator.hasNext()) {
+            var worker = iterator.next();
+            if (!worker.isAlive() || now - worker.getLastUsed() > IDLE_TIMEOUT_MS) {
+                worker.destroy();
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * Workers read phalyfusion.neon on start, so they are restarted when it changes
+     */
+    private long getConfigurationStamp() {
+        File neonConfig = new File(myProject.getBasePath() + "/" + "phalyfusion.neon");
+        return neonConfig.lastModified() * 31 + neonConfig.length();
+    }
+
+    @Override
+    public synchronized void dispose() {
+        myIdleChecker.cancel(false);
+        for (var worker : myWorkers.values()) {
+            worker.destroy();
+        }
+        myWorkers.clear();
+    }
+}
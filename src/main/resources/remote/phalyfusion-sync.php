@@ -0,0 +1,60 @@
+<?php
+// Applies a bundle of changes to the copy of the project synced by Phalyfusion plugin.
+// Prints OK when changes are applied, RESYNC when the copy is not marked with the expected id.
+
+function fail($message)
+{
+    echo "ERROR: $message\n";
+    exit(1);
+}
+
+function resolvePath($root, $path)
+{
+    if ($path === '' || $path[0] === '/' || in_array('..', explode('/', $path), true)) {
+        fail("path is out of the synced copy: $path");
+    }
+    return $root . '/' . $path;
+}
+
+$bundle = json_decode(file_get_contents($argv[1]), true);
+if (!is_array($bundle)) {
+    fail('can not read bundle ' . $argv[1]);
+}
+
+$root = rtrim($bundle['root'], '/');
+$marker = $root . '/.phalyfusion-sync';
+if (!is_dir($root) && !mkdir($root, 0777, true)) {
+    fail("can not create $root");
+}
+
+if ($bundle['expect'] !== null && (!is_file($marker) || trim(file_get_contents($marker)) !== $bundle['expect'])) {
+    echo "RESYNC\n";
+    exit(0);
+}
+if ($bundle['clear'] && is_file($marker)) {
+    unlink($marker);
+}
+
+foreach ($bundle['delete'] as $path) {
+    $file = resolvePath($root, $path);
+    if (is_file($file) && !unlink($file)) {
+        fail("can not delete $file");
+    }
+}
+
+foreach ($bundle['put'] as $path => $content) {
+    $file = resolvePath($root, $path);
+    $dir = dirname($file);
+    if (!is_dir($dir) && !mkdir($dir, 0777, true)) {
+        fail("can not create $dir");
+    }
+    if (file_put_contents($file, base64_decode($content)) === false) {
+        fail("can not write $file");
+    }
+}
+
+if ($bundle['mark'] !== null) {
+    file_put_contents($marker, $bundle['mark']);
+}
+
+echo "OK\n";
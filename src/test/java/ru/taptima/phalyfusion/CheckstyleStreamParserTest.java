@@ -0,0 +1,89 @@
+package ru.taptima.phalyfusion;
+
+import org.jetbrains.annotations.NotNull;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class CheckstyleStreamParserTest {
+    private static final String REPORT = "PHP Warning:  Module already loaded\n"
+            + "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+            + "<!-- generated by <phalyfusion> -->\n"
+            + "<checkstyle>\n"
+            + " <file name=\"/project/src/Very/Long/\n"
+            + "Name.php\">\n"
+            + "  <error line=\"12\" column=\"1\" severity=\"error\" message=\"phpstan: Call to &lt;undefined&gt; method 'a' &amp; &quot;b&quot;\" />\n"
+            + "  <error line='3' severity='warning' message='psalm: Wrapped\r\nmessage with > inside' />\n"
+            + " </file>\n"
+            + " <file name=\"/project/src/Empty.php\"/>\n"
+            + "</checkstyle>\n";
+
+    private static final List<String> EVENTS = List.of(
+            "file /project/src/Very/Long/Name.php",
+            "error 12 phpstan: Call to <undefined> method 'a' & \"b\"",
+            "error 3 psalm: Wrapped message with > inside",
+            "end",
+            "file /project/src/Empty.php",
+            "end"
+    );
+
+    @Test
+    public void testWholeReport() {
+        Recorder recorder = new Recorder();
+        CheckstyleStreamParser parser = new CheckstyleStreamParser(recorder);
+        parser.feed(REPORT);
+
+        assertEquals(EVENTS, recorder.myEvents);
+        assertTrue(parser.isRootFound());
+        assertEquals("PHP Warning:  Module already loaded", parser.getUnrecognizedOutput());
+        assertEquals(REPORT.length(), parser.getCharsCount());
+    }
+
+    @Test
+    public void testReportSplitAtEveryPosition() {
+        for (int i = 0; i <= REPORT.length(); i++) {
+            Recorder recorder = new Recorder();
+            CheckstyleStreamParser parser = new CheckstyleStreamParser(recorder);
+            parser.feed(REPORT.substring(0, i));
+            parser.feed(REPORT.substring(i));
+
+            assertEquals("Split at " + i, EVENTS, recorder.myEvents);
+            assertTrue(parser.isRootFound());
+        }
+    }
+
+    @Test
+    public void testReportFedByChars() {
+        Recorder recorder = new Recorder();
+        CheckstyleStreamParser parser = new CheckstyleStreamParser(recorder);
+        for (int i = 0; i < REPORT.length(); i++) {
+            parser.feed(REPORT.subSequence(i, i + 1));
+        }
+
+        assertEquals(EVENTS, recorder.myEvents);
+        assertEquals("PHP Warning:  Module already loaded", parser.getUnrecognizedOutput());
+    }
+
+    private static class Recorder implements CheckstyleStreamParser.Listener {
+        private final List<String> myEvents = new ArrayList<>();
+
+        @Override
+        public void fileStarted(@NotNull CheckstyleStreamParser.Tag tag) {
+            myEvents.add("file " + tag.getJoinedAttribute("name"));
+        }
+
+        @Override
+        public void fileFinished() {
+            myEvents.add("end");
+        }
+
+        @Override
+        public void messageFound(@NotNull CheckstyleStreamParser.Tag tag) {
+            myEvents.add("error " + tag.getIntAttribute("line", -1) + " " + tag.getAttribute("message"));
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package ru.taptima.phalyfusion;
+
+import com.intellij.openapi.util.text.StringUtil;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.psi.PsiFile;
+import com.intellij.testFramework.fixtures.BasePlatformTestCase;
+import com.jetbrains.php.tools.quality.QualityToolAnnotatorInfo;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import ru.taptima.phalyfusion.baseline.PhalyfusionFingerprinter;
+import ru.taptima.phalyfusion.baseline.PhalyfusionLongHashSet;
+import ru.taptima.phalyfusion.configuration.PhalyfusionConfiguration;
+import ru.taptima.phalyfusion.store.PhalyfusionMessagePool;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Feeds checkstyle reports to the processor with objects and with packed messages
+ */
+public class PhalyfusionMessageProcessorTest extends BasePlatformTestCase {
+    private static final String PHPSTAN_FIRST = "phpstan: Parameter #1 $x of method Foo::bar() expects int, string given.";
+    private static final String PHPSTAN_SECOND = "phpstan: Parameter #2 $y of method Foo::bar() expects string, int given.";
+    private static final String PSALM_FIRST = "psalm: InvalidArgument: Argument 1 of Foo::bar expects int, string provided";
+
+    private PsiFile myFile;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        myFile = myFixture.configureByText("Foo.php", "<?php\n$foo->bar('1', 2);\n");
+    }
+
+    public void testEquivalentOfOtherAnalyserIsFolded() {
+        for (boolean isPacked : new boolean[]{false, true}) {
+            assertEquals(List.of("2 " + PHPSTAN_FIRST + " (also reported by psalm)"),
+                    process(isPacked, null, PHPSTAN_FIRST, PSALM_FIRST));
+        }
+    }
+
+    public void testMessagesOfSameAnalyserAreNotFolded() {
+        for (boolean isPacked : new boolean[]{false, true}) {
+            assertEquals(List.of("2 " + PHPSTAN_FIRST, "2 " + PHPSTAN_SECOND),
+                    process(isPacked, null, PHPSTAN_FIRST, PHPSTAN_SECOND));
+        }
+    }
+
+    public void testEquivalentOfBaselinedMessageIsDropped() {
+        for (boolean isPacked : new boolean[]{false, true}) {
+            assertEquals(List.of(), process(isPacked, baseline(PHPSTAN_FIRST), PHPSTAN_FIRST, PSALM_FIRST));
+        }
+    }
+
+    public void testSameAnalyserIsReportedAfterBaselinedMessage() {
+        for (boolean isPacked : new boolean[]{false, true}) {
+            assertEquals(List.of("2 " + PHPSTAN_SECOND), process(isPacked, baseline(PHPSTAN_FIRST), PHPSTAN_FIRST, PHPSTAN_SECOND));
+        }
+    }
+
+    public void testMessagesOverLimitAreSuppressed() {
+        for (boolean isPacked : new boolean[]{false, true}) {
+            var processor = createProcessor(isPacked, null);
+            processor.setMaxMessagesPerFile(1);
+            feed(processor, PHPSTAN_FIRST, PHPSTAN_SECOND, "phpstan: Undefined variable: $a");
+
+            assertEquals(List.of("2 " + PHPSTAN_FIRST, "1 2 more messages suppressed"), getMessages(processor));
+        }
+    }
+
+    public void testAdoptedMessagesAreMovedAsTheyAre() {
+        for (boolean isPacked : new boolean[]{false, true}) {
+            var launchProcessor = createProcessor(isPacked, baseline(PHPSTAN_FIRST));
+            launchProcessor.setMaxMessagesPerFile(1);
+            feed(launchProcessor, PHPSTAN_FIRST, PHPSTAN_SECOND, "phpstan: Undefined variable: $a", "phpstan: Undefined variable: $b");
+
+            var shardProcessor = createProcessor(isPacked, baseline(PHPSTAN_FIRST));
+            shardProcessor.setMaxMessagesPerFile(1);
+            shardProcessor.adoptMessages(launchProcessor);
+
+            assertEquals(List.of("2 " + PHPSTAN_SECOND, "1 2 more messages suppressed"), getMessages(shardProcessor));
+        }
+    }
+
+    @NotNull
+    private PhalyfusionLongHashSet baseline(@NotNull String messageText) {
+        var baseline = new PhalyfusionLongHashSet();
+        baseline.add(new PhalyfusionFingerprinter(getProject()).fingerprint(myFile.getVirtualFile(), 2, messageText));
+        return baseline;
+    }
+
+    @NotNull
+    private List<String> process(boolean isPacked, @Nullable PhalyfusionLongHashSet baseline, @NotNull String... messages) {
+        var processor = createProcessor(isPacked, baseline);
+        feed(processor, messages);
+        return getMessages(processor);
+    }
+
+    @NotNull
+    private PhalyfusionMessageProcessor createProcessor(boolean isPacked, @Nullable PhalyfusionLongHashSet baseline) {
+        var annotatorInfo = new QualityToolAnnotatorInfo<>(myFile, new PhalyfusionValidationInspection(), getProject(),
+                new PhalyfusionConfiguration(), false);
+        var processor = new PhalyfusionMessageProcessor(annotatorInfo, new VirtualFile[]{myFile.getVirtualFile()});
+        if (isPacked) {
+            processor.setMessagePool(new PhalyfusionMessagePool());
+        }
+        processor.setBaseline(baseline, false);
+        return processor;
+    }
+
+    private void feed(@NotNull PhalyfusionMessageProcessor processor, @NotNull String... messages) {
+        processor.parseLine("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<checkstyle>\n");
+        processor.parseLine(" <file name=\"" + myFile.getVirtualFile().getPath() + "\">\n");
+        for (String message : messages) {
+            processor.parseLine("  <error line=\"2\" column=\"1\" severity=\"error\" message=\"" + StringUtil.escapeXmlEntities(message) + "\" />\n");
+        }
+        processor.parseLine(" </file>\n</checkstyle>\n");
+        processor.done();
+    }
+
+    @NotNull
+    private static List<String> getMessages(@NotNull PhalyfusionMessageProcessor processor) {
+        List<String> messages = new ArrayList<>();
+        processor.forEachFileMessage(message -> messages.add(message.getLineNum() + " " + message.getMessageText()));
+        return messages;
+    }
+}
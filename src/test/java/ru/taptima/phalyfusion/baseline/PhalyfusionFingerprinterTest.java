@@ -0,0 +1,67 @@
+package ru.taptima.phalyfusion.baseline;
+
+import com.intellij.openapi.command.WriteCommandAction;
+import com.intellij.openapi.editor.Document;
+import com.intellij.openapi.fileEditor.FileDocumentManager;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.testFramework.fixtures.BasePlatformTestCase;
+import org.jetbrains.annotations.NotNull;
+
+public class PhalyfusionFingerprinterTest extends BasePlatformTestCase {
+    private static final String MESSAGE = "phpstan: Undefined variable: $a";
+
+    public void testFingerprintDoesNotDependOnLineNumber() {
+        VirtualFile file = createFile("<?php\necho $a;\n");
+        long before = fingerprint(file, 2, MESSAGE);
+
+        setText(file, "<?php\n\n// comment\necho $a;\n");
+
+        assertEquals(before, fingerprint(file, 4, MESSAGE));
+    }
+
+    public void testWhitespaceAndNumbersAreNormalized() {
+        VirtualFile file = createFile("<?php\n  echo   $a;\t\n");
+        long fingerprint = fingerprint(file, 2, "phpstan: Method Foo::bar() invoked with 2 parameters, 1 required.");
+
+        setText(file, "<?php\necho $a;\n");
+
+        assertEquals(fingerprint, fingerprint(file, 2, " phpstan:  Method Foo::bar() invoked with 3 parameters, 10 required. "));
+    }
+
+    public void testMessageAndLineTextAreDistinguished() {
+        VirtualFile file = createFile("<?php\necho $a;\necho $b;\n");
+        var fingerprinter = new PhalyfusionFingerprinter(getProject());
+        long fingerprint = fingerprinter.fingerprint(file, 2, MESSAGE);
+
+        assertFalse(fingerprint == fingerprinter.fingerprint(file, 3, MESSAGE));
+        assertFalse(fingerprint == fingerprinter.fingerprint(file, 2, "psalm: Undefined variable: $a"));
+        assertFalse(fingerprint == fingerprinter.fingerprint(file, 2, "phpstan: Undefined variable: $b"));
+    }
+
+    public void testLineOutOfFileUsesMessageOnly() {
+        VirtualFile file = createFile("<?php\necho $a;\n");
+
+        long fingerprint = fingerprint(file, 100, MESSAGE);
+
+        assertEquals(fingerprint, fingerprint(file, 0, MESSAGE));
+        assertFalse(fingerprint == fingerprint(file, 2, MESSAGE));
+    }
+
+    @NotNull
+    private VirtualFile createFile(@NotNull String text) {
+        return myFixture.configureByText("Foo.php", text).getVirtualFile();
+    }
+
+    private void setText(@NotNull VirtualFile file, @NotNull String text) {
+        Document document = FileDocumentManager.getInstance().getDocument(file);
+        assertNotNull(document);
+        WriteCommandAction.runWriteCommandAction(getProject(), () -> document.setText(text));
+    }
+
+    /**
+     * Fingerprinter keeps the text of the last file, so a new one sees the current text
+     */
+    private long fingerprint(@NotNull VirtualFile file, int line, @NotNull String messageText) {
+        return new PhalyfusionFingerprinter(getProject()).fingerprint(file, line, messageText);
+    }
+}
@@ -0,0 +1,74 @@
+package ru.taptima.phalyfusion.baseline;
+
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class PhalyfusionLongHashSetTest {
+    @Test
+    public void zeroIsStoredAsValue() {
+        var set = new PhalyfusionLongHashSet();
+
+        assertFalse(set.contains(0));
+        assertTrue(set.add(0));
+        assertFalse(set.add(0));
+        assertTrue(set.contains(0));
+        assertEquals(1, set.size());
+        assertArrayEquals(new long[]{0}, set.toSortedArray());
+    }
+
+    @Test
+    public void valuesWithEqualLowBitsAreKept() {
+        var set = new PhalyfusionLongHashSet(4);
+        for (long i = 1; i <= 100; i++) {
+            assertTrue(set.add(i << 32));
+        }
+
+        assertEquals(100, set.size());
+        for (long i = 1; i <= 100; i++) {
+            assertTrue(set.contains(i << 32));
+            assertFalse(set.add(i << 32));
+        }
+        assertFalse(set.contains(101L << 32));
+    }
+
+    @Test
+    public void behavesAsHashSet() {
+        var random = new Random(42);
+        var set = new PhalyfusionLongHashSet();
+        Set<Long> expected = new HashSet<>();
+        for (int i = 0; i < 10_000; i++) {
+            long value = random.nextInt(5_000) - 2_500L;
+            assertEquals(expected.add(value), set.add(value));
+        }
+
+        assertEquals(expected.size(), set.size());
+        for (long value = -3_000; value < 3_000; value++) {
+            assertEquals(expected.contains(value), set.contains(value));
+        }
+        assertArrayEquals(expected.stream().mapToLong(Long::longValue).sorted().toArray(), set.toSortedArray());
+    }
+
+    @Test
+    public void addAllMergesSets() {
+        var first = new PhalyfusionLongHashSet();
+        first.add(1);
+        first.add(-5);
+        var second = new PhalyfusionLongHashSet();
+        second.add(0);
+        second.add(1);
+        second.add(Long.MAX_VALUE);
+
+        first.addAll(second);
+
+        assertArrayEquals(new long[]{-5, 0, 1, Long.MAX_VALUE}, first.toSortedArray());
+        assertTrue(new PhalyfusionLongHashSet().isEmpty());
+    }
+}
@@ -0,0 +1,77 @@
+package ru.taptima.phalyfusion.batch;
+
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.testFramework.LightVirtualFile;
+import com.intellij.testFramework.fixtures.BasePlatformTestCase;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public class PhalyfusionShardedExecutorTest extends BasePlatformTestCase {
+    private final Map<VirtualFile, Long> myCosts = new HashMap<>();
+
+    public void testExpensiveFilesAreSpreadFirst() {
+        VirtualFile[] files = createFiles(5, 4, 3, 3, 3);
+
+        var plan = new PhalyfusionShardedExecutor(2).plan(files, myCosts::get);
+
+        assertEquals(2, plan.getShards().size());
+        assertOrderedEquals(plan.getShards().get(0), files[0], files[3]);
+        assertOrderedEquals(plan.getShards().get(1), files[1], files[2], files[4]);
+        assertEquals(8, plan.getPredictedCost(0));
+        assertEquals(10, plan.getPredictedCost(1));
+        assertEquals(10, plan.getPredictedMakespan());
+    }
+
+    public void testShardsDoNotExceedFiles() {
+        VirtualFile[] files = createFiles(1, 2);
+
+        var plan = new PhalyfusionShardedExecutor(4).plan(files, myCosts::get);
+
+        assertEquals(2, plan.getShards().size());
+        assertOrderedEquals(plan.getShards().get(0), files[1]);
+        assertOrderedEquals(plan.getShards().get(1), files[0]);
+    }
+
+    public void testSingleShardKeepsOrder() {
+        VirtualFile[] files = createFiles(1, 3, 2);
+
+        var plan = new PhalyfusionShardedExecutor(0).plan(files, myCosts::get);
+
+        assertEquals(1, plan.getShards().size());
+        assertOrderedEquals(plan.getShards().get(0), files);
+        assertEquals(6, plan.getPredictedMakespan());
+    }
+
+    public void testNoFiles() {
+        var plan = new PhalyfusionShardedExecutor(4).plan(VirtualFile.EMPTY_ARRAY, myCosts::get);
+
+        assertEmpty(plan.getShards());
+        assertEquals(0, plan.getPredictedMakespan());
+    }
+
+    public void testSeparateShards() {
+        VirtualFile[] files = createFiles(1, 3, 2);
+
+        var plan = new PhalyfusionShardedExecutor(2).planSeparately(files, myCosts::get);
+
+        List<VirtualFile[]> shards = plan.getShards();
+        assertEquals(3, shards.size());
+        for (int i = 0; i < files.length; i++) {
+            assertOrderedEquals(shards.get(i), files[i]);
+        }
+        assertEquals(3, plan.getPredictedMakespan());
+    }
+
+    @NotNull
+    private VirtualFile[] createFiles(long... costs) {
+        VirtualFile[] files = new VirtualFile[costs.length];
+        for (int i = 0; i < costs.length; i++) {
+            files[i] = new LightVirtualFile("File" + i + ".php");
+            myCosts.put(files[i], costs[i]);
+        }
+        return files;
+    }
+}
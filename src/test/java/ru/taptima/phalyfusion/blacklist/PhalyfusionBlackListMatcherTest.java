@@ -0,0 +1,70 @@
+package ru.taptima.phalyfusion.blacklist;
+
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class PhalyfusionBlackListMatcherTest {
+    @Test
+    public void plainPathExcludesItselfAndDescendants() {
+        var matcher = PhalyfusionBlackListMatcher.compile(List.of("/project/tests/", "file:///project/generated"));
+
+        assertTrue(matcher.isExcluded("/project/tests"));
+        assertTrue(matcher.isExcluded("/project/tests/Unit/FooTest.php"));
+        assertTrue(matcher.isExcluded("/project/generated/Proxy.php"));
+        assertFalse(matcher.isExcluded("/project/testsuite/Foo.php"));
+        assertFalse(matcher.isExcluded("/project"));
+        assertFalse(matcher.isExcluded("/project/src/tests.php"));
+    }
+
+    @Test
+    public void relativeGlobMatchesAtAnyLevel() {
+        var matcher = PhalyfusionBlackListMatcher.compile(List.of("*.blade.php", "generated/*"));
+
+        assertTrue(matcher.isExcluded("/project/views/index.blade.php"));
+        assertTrue(matcher.isExcluded("/project/src/generated/Proxy.php"));
+        assertFalse(matcher.isExcluded("/project/views/index.php"));
+        assertFalse(matcher.isExcluded("/project/src/generated"));
+    }
+
+    @Test
+    public void starAndQuestionMarkStayInSegment() {
+        var matcher = PhalyfusionBlackListMatcher.compile(List.of("/project/src/*/Fixtures", "/project/v?"));
+
+        assertTrue(matcher.isExcluded("/project/src/Foo/Fixtures/Bar.php"));
+        assertFalse(matcher.isExcluded("/project/src/Foo/Bar/Fixtures/Baz.php"));
+        assertTrue(matcher.isExcluded("/project/v1/Foo.php"));
+        assertFalse(matcher.isExcluded("/project/v12/Foo.php"));
+    }
+
+    @Test
+    public void doubleStarMatchesAnyDirectories() {
+        var matcher = PhalyfusionBlackListMatcher.compile(List.of("/project/**/Fixtures"));
+
+        assertTrue(matcher.isExcluded("/project/Fixtures/Foo.php"));
+        assertTrue(matcher.isExcluded("/project/tests/Unit/Fixtures/Foo.php"));
+        assertFalse(matcher.isExcluded("/project/tests/Unit/Foo.php"));
+    }
+
+    @Test
+    public void trailingDoubleStarMatchesDirectoryItself() {
+        var matcher = PhalyfusionBlackListMatcher.compile(List.of("vendor/**", "/project/var/**"));
+
+        assertTrue(matcher.isExcluded("/project/vendor"));
+        assertTrue(matcher.isExcluded("/project/vendor/foo/bar/Baz.php"));
+        assertTrue(matcher.isExcluded("/project/modules/vendor"));
+        assertTrue(matcher.isExcluded("/project/var"));
+        assertTrue(matcher.isExcluded("/project/var/cache/Container.php"));
+        assertFalse(matcher.isExcluded("/project/vendors/Foo.php"));
+        assertFalse(matcher.isExcluded("/project/src/var"));
+    }
+
+    @Test
+    public void emptyListExcludesNothing() {
+        assertFalse(PhalyfusionBlackListMatcher.EMPTY.isExcluded("/project/src/Foo.php"));
+        assertFalse(PhalyfusionBlackListMatcher.compile(List.of("", "  ")).isExcluded("/project/src/Foo.php"));
+    }
+}
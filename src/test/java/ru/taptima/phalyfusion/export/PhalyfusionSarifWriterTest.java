@@ -0,0 +1,83 @@
+package ru.taptima.phalyfusion.export;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.jetbrains.php.tools.quality.QualityToolMessage;
+import org.jetbrains.annotations.NotNull;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class PhalyfusionSarifWriterTest {
+    @Test
+    public void segmentsOfUriAreEncoded() {
+        assertEquals("src/Foo.php", PhalyfusionSarifWriter.toUri("src/Foo.php"));
+        assertEquals("src/My%20Dir/100%25/%23a%3Fb.php", PhalyfusionSarifWriter.toUri("src/My Dir/100%/#a?b.php"));
+        assertEquals("src/%D0%A4%D0%B0%D0%B9%D0%BB.php", PhalyfusionSarifWriter.toUri("src/\u0424\u0430\u0439\u043b.php"));
+        assertEquals("C:/php/a%3Ab.php", PhalyfusionSarifWriter.toUri("C:/php/a:b.php"));
+        assertEquals("/usr/share/php/Foo.php", PhalyfusionSarifWriter.toUri("/usr/share/php/Foo.php"));
+    }
+
+    @Test
+    public void absolutePaths() {
+        assertTrue(PhalyfusionSarifWriter.isAbsolute("/usr/share/php/Foo.php"));
+        assertTrue(PhalyfusionSarifWriter.isAbsolute("C:/php/Foo.php"));
+        assertFalse(PhalyfusionSarifWriter.isAbsolute("src/Foo.php"));
+        assertFalse(PhalyfusionSarifWriter.isAbsolute("1:/Foo.php"));
+    }
+
+    @Test
+    public void resultKeepsPlainMessageAndListsFoldedAnalyzers() throws IOException {
+        JsonObject result = writeSingle("src/My Dir/Foo.php", "phpstan: Undefined variable: $a", new String[]{"psalm", "phan"});
+
+        assertEquals("phpstan", result.get("ruleId").getAsString());
+        assertEquals("error", result.get("level").getAsString());
+        assertEquals("Undefined variable: $a", result.getAsJsonObject("message").get("text").getAsString());
+
+        JsonObject location = result.getAsJsonArray("locations").get(0).getAsJsonObject().getAsJsonObject("physicalLocation");
+        JsonObject artifact = location.getAsJsonObject("artifactLocation");
+        assertEquals("src/My%20Dir/Foo.php", artifact.get("uri").getAsString());
+        assertEquals("%SRCROOT%", artifact.get("uriBaseId").getAsString());
+        assertEquals(8, location.getAsJsonObject("region").get("startLine").getAsInt());
+
+        JsonObject properties = result.getAsJsonObject("properties");
+        assertEquals("phpstan", properties.get("analyzer").getAsString());
+        assertEquals(2, properties.getAsJsonArray("alsoReportedBy").size());
+        assertEquals("psalm", properties.getAsJsonArray("alsoReportedBy").get(0).getAsString());
+        assertEquals("phan", properties.getAsJsonArray("alsoReportedBy").get(1).getAsString());
+    }
+
+    @Test
+    public void fileOutOfProjectHasNoBase() throws IOException {
+        JsonObject result = writeSingle("/usr/share/php/Foo.php", "Syntax error", null);
+
+        assertFalse(result.has("ruleId"));
+        assertFalse(result.has("properties"));
+        JsonObject artifact = result.getAsJsonArray("locations").get(0).getAsJsonObject()
+                .getAsJsonObject("physicalLocation").getAsJsonObject("artifactLocation");
+        assertEquals("file:///usr/share/php/Foo.php", artifact.get("uri").getAsString());
+        assertFalse(artifact.has("uriBaseId"));
+    }
+
+    @NotNull
+    private static JsonObject writeSingle(@NotNull String path, @NotNull String messageText, String[] foldedAnalyzers) throws IOException {
+        File target = new File(Files.createTempDirectory("phalyfusion").toFile(), "report.sarif");
+        try (var writer = PhalyfusionReportWriter.create(target)) {
+            writer.write(path, 8, QualityToolMessage.Severity.ERROR, messageText, foldedAnalyzers);
+            writer.complete();
+        }
+
+        JsonObject log = JsonParser.parseString(new String(Files.readAllBytes(target.toPath()), StandardCharsets.UTF_8)).getAsJsonObject();
+        assertEquals("2.1.0", log.get("version").getAsString());
+        var results = log.getAsJsonArray("runs").get(0).getAsJsonObject().getAsJsonArray("results");
+        assertEquals(1, results.size());
+        return results.get(0).getAsJsonObject();
+    }
+}
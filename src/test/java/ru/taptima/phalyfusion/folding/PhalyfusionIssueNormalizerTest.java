@@ -0,0 +1,55 @@
+package ru.taptima.phalyfusion.folding;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+public class PhalyfusionIssueNormalizerTest {
+    @Test
+    public void undefinedVariableOfAllAnalysers() {
+        long key = PhalyfusionIssueNormalizer.getIssueKey(3, "Undefined variable: $a");
+
+        assertNotEquals(0, key);
+        assertEquals(key, PhalyfusionIssueNormalizer.getIssueKey(3, "UndefinedVariable: Cannot find referenced variable $a"));
+        assertEquals(key, PhalyfusionIssueNormalizer.getIssueKey(3, "PhanUndeclaredVariable Variable $a is undeclared"));
+        assertNotEquals(key, PhalyfusionIssueNormalizer.getIssueKey(4, "Undefined variable: $a"));
+        assertNotEquals(key, PhalyfusionIssueNormalizer.getIssueKey(3, "Undefined variable: $b"));
+        assertNotEquals(key, PhalyfusionIssueNormalizer.getIssueKey(3, "Undefined variable: $A"));
+    }
+
+    @Test
+    public void membersAreComparedByLastNamespaceSegmentIgnoringCase() {
+        long key = PhalyfusionIssueNormalizer.getIssueKey(7, "Call to an undefined method App\\Foo::Bar().");
+
+        assertNotEquals(0, key);
+        assertEquals(key, PhalyfusionIssueNormalizer.getIssueKey(7, "UndefinedMethod: Method \\App\\Foo::bar does not exist"));
+        assertNotEquals(key, PhalyfusionIssueNormalizer.getIssueKey(7, "Call to an undefined method App\\Foo::baz()."));
+        assertNotEquals(key, PhalyfusionIssueNormalizer.getIssueKey(7, "Access to an undefined property App\\Foo::$bar."));
+    }
+
+    @Test
+    public void argumentTypeIsKeyedByCalledMethod() {
+        long key = PhalyfusionIssueNormalizer.getIssueKey(12, "Parameter #1 $x of method Foo::bar() expects int, string given.");
+
+        assertNotEquals(0, key);
+        assertEquals(key, PhalyfusionIssueNormalizer.getIssueKey(12, "InvalidArgument: Argument 1 of Foo::bar expects int, string provided"));
+        assertNotEquals(key, PhalyfusionIssueNormalizer.getIssueKey(12, "Method Foo::bar() invoked with 3 parameters, 1 required."));
+    }
+
+    @Test
+    public void missingClassIsKeyedBySubject() {
+        long key = PhalyfusionIssueNormalizer.getIssueKey(1, "Class App\\Models\\User not found.");
+
+        assertNotEquals(0, key);
+        assertEquals(key, PhalyfusionIssueNormalizer.getIssueKey(1, "UndefinedClass: Class, interface or enum named App\\Models\\User does not exist"));
+        assertEquals(PhalyfusionIssueNormalizer.getIssueKey(1, "Function foo not found."),
+                PhalyfusionIssueNormalizer.getIssueKey(1, "UndefinedFunction: Function named foo does not exist"));
+    }
+
+    @Test
+    public void unknownMessagesAreNotFolded() {
+        assertEquals(0, PhalyfusionIssueNormalizer.getIssueKey(1, "Strict comparison using === between int and string will always evaluate to false."));
+        assertEquals(0, PhalyfusionIssueNormalizer.getIssueKey(1, "Undefined variable"));
+    }
+}
@@ -0,0 +1,125 @@
+package ru.taptima.phalyfusion.process;
+
+import org.jetbrains.annotations.NotNull;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class PhalyfusionOutputPipeTest {
+    @Test
+    public void bytesFittingBufferAreNotSpilled() throws IOException {
+        try (var pipe = new PhalyfusionOutputPipe(16)) {
+            pipe.write(ByteBuffer.wrap(bytes(0, 10)));
+            pipe.finish();
+
+            assertArrayEquals(bytes(0, 10), readAll(pipe, 4));
+            assertEquals(0, pipe.getSpilledBytes());
+        }
+    }
+
+    @Test
+    public void overflowIsSpilledAndReadInOrder() throws IOException {
+        try (var pipe = new PhalyfusionOutputPipe(8)) {
+            pipe.write(ByteBuffer.wrap(bytes(0, 6)));
+            ByteBuffer target = ByteBuffer.allocate(4);
+            assertEquals(4, pipe.read(target));
+
+            // Wraps around the memory buffer and spills the rest
+            pipe.write(ByteBuffer.wrap(bytes(6, 30)));
+            pipe.finish();
+
+            ByteArrayOutputStream output = new ByteArrayOutputStream();
+            output.write(target.array(), 0, 4);
+            output.write(readAll(pipe, 5));
+            assertArrayEquals(bytes(0, 30), output.toByteArray());
+            assertEquals(18, pipe.getSpilledBytes());
+        }
+    }
+
+    @Test
+    public void spillFileIsReusedAfterDrain() throws IOException {
+        try (var pipe = new PhalyfusionOutputPipe(4)) {
+            pipe.write(ByteBuffer.wrap(bytes(0, 10)));
+            assertArrayEquals(bytes(0, 10), read(pipe, 10));
+            pipe.write(ByteBuffer.wrap(bytes(10, 20)));
+            pipe.finish();
+
+            assertArrayEquals(bytes(10, 20), readAll(pipe, 3));
+            assertEquals(12, pipe.getSpilledBytes());
+        }
+    }
+
+    @Test
+    public void closedPipeDropsBytes() throws IOException {
+        var pipe = new PhalyfusionOutputPipe(4);
+        pipe.write(ByteBuffer.wrap(bytes(0, 10)));
+        pipe.close();
+
+        ByteBuffer source = ByteBuffer.wrap(bytes(0, 10));
+        pipe.write(source);
+        assertEquals(0, source.remaining());
+        assertEquals(-1, pipe.read(ByteBuffer.allocate(4)));
+    }
+
+    @Test
+    public void concurrentWriterAndReader() throws Exception {
+        byte[] data = new byte[1 << 20];
+        new Random(42).nextBytes(data);
+
+        try (var pipe = new PhalyfusionOutputPipe(1024)) {
+            var reader = CompletableFuture.supplyAsync(() -> {
+                try {
+                    return readAll(pipe, 777);
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+            });
+
+            var random = new Random(7);
+            for (int start = 0; start < data.length; ) {
+                int count = Math.min(data.length - start, 1 + random.nextInt(5000));
+                pipe.write(ByteBuffer.wrap(data, start, count));
+                start += count;
+            }
+            pipe.finish();
+
+            assertArrayEquals(data, reader.get());
+        }
+    }
+
+    @NotNull
+    private static byte[] readAll(@NotNull PhalyfusionOutputPipe pipe, int chunkSize) throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        ByteBuffer target = ByteBuffer.allocate(chunkSize);
+        while (pipe.read(target) >= 0) {
+            output.write(target.array(), 0, target.position());
+            target.clear();
+        }
+        return output.toByteArray();
+    }
+
+    @NotNull
+    private static byte[] read(@NotNull PhalyfusionOutputPipe pipe, int count) throws IOException {
+        ByteBuffer target = ByteBuffer.allocate(count);
+        while (target.hasRemaining()) {
+            pipe.read(target);
+        }
+        return target.array();
+    }
+
+    @NotNull
+    private static byte[] bytes(int from, int to) {
+        byte[] bytes = new byte[to - from];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) (from + i);
+        }
+        return bytes;
+    }
+}
@@ -0,0 +1,136 @@
+package ru.taptima.phalyfusion.remote;
+
+import com.intellij.execution.ExecutionException;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.testFramework.HeavyPlatformTestCase;
+import com.intellij.testFramework.VfsTestUtil;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * Syncs files of the project to a local directory, which stands in for the interpreter host
+ */
+public class PhalyfusionRemoteSyncTest extends HeavyPlatformTestCase {
+    private static final String INTERPRETER_ID = "phalyfusion-test-interpreter";
+
+    private PhalyfusionRemoteSync mySync;
+    private PhalyfusionLocalSyncTarget myTarget;
+    private Path myRoot;
+    private VirtualFile myFirst;
+    private VirtualFile mySecond;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mySync = new PhalyfusionRemoteSync(getProject());
+        myRoot = createTempDirectory().toPath().resolve("copy");
+        myTarget = new PhalyfusionLocalSyncTarget(myRoot);
+        myFirst = VfsTestUtil.createFile(getOrCreateProjectBaseDir(), "First.php", "<?php\necho 1;\n");
+        mySecond = VfsTestUtil.createFile(getOrCreateProjectBaseDir(), "src/Second.php", "<?php\necho 2;\n");
+    }
+
+    public void testFirstSyncUploadsAndMarksCopy() throws Exception {
+        assertEquals(2, sync(true, myFirst, mySecond));
+
+        assertEquals("<?php\necho 1;\n", read("First.php"));
+        assertEquals("<?php\necho 2;\n", read("src/Second.php"));
+        assertFalse(readMarker().isEmpty());
+        assertEquals(myTarget.getRoot(), mySync.getSyncRoot(INTERPRETER_ID));
+        assertEquals(myTarget.getRoot() + "/src/Second.php", mySync.toRemotePath(INTERPRETER_ID, mySecond.getPath()));
+    }
+
+    public void testOnlyChangedFilesAreUploaded() throws Exception {
+        sync(true, myFirst, mySecond);
+        String marker = readMarker();
+
+        setFileText(myFirst, "<?php\necho 'changed';\n");
+        assertEquals(1, sync(true, myFirst, mySecond));
+        assertEquals("<?php\necho 'changed';\n", read("First.php"));
+        assertEquals(marker, readMarker());
+
+        assertEquals(0, sync(true, myFirst, mySecond));
+    }
+
+    public void testFileWithChangedTimeStampOnlyIsNotUploaded() throws Exception {
+        sync(true, myFirst, mySecond);
+        Files.writeString(myRoot.resolve("First.php"), "<?php\necho 'edited on host';\n");
+
+        setFileText(myFirst, "<?php\necho 1;\n");
+        assertEquals(0, sync(true, myFirst, mySecond));
+        assertEquals("<?php\necho 'edited on host';\n", read("First.php"));
+    }
+
+    public void testMissingFilesAreDeletedByCompleteSync() throws Exception {
+        sync(true, myFirst, mySecond);
+
+        setFileText(myFirst, "<?php\necho 'changed';\n");
+        assertEquals(1, sync(false, myFirst));
+        assertTrue(Files.isRegularFile(myRoot.resolve("src/Second.php")));
+
+        assertEquals(0, sync(true, myFirst));
+        assertFalse(Files.exists(myRoot.resolve("src/Second.php")));
+        assertTrue(Files.isRegularFile(myRoot.resolve("First.php")));
+    }
+
+    public void testCopyWithoutMarkerIsUploadedAgain() throws Exception {
+        sync(true, myFirst, mySecond);
+        String marker = readMarker();
+        Files.delete(myRoot.resolve(PhalyfusionRemoteSync.MARKER_NAME));
+        Files.delete(myRoot.resolve("src/Second.php"));
+
+        setFileText(myFirst, "<?php\necho 'changed';\n");
+        assertEquals(2, sync(true, myFirst, mySecond));
+        assertEquals("<?php\necho 'changed';\n", read("First.php"));
+        assertEquals("<?php\necho 2;\n", read("src/Second.php"));
+        assertFalse(marker.equals(readMarker()));
+    }
+
+    public void testCopyWithForeignMarkerIsUploadedAgain() throws Exception {
+        sync(true, myFirst, mySecond);
+        Files.writeString(myRoot.resolve(PhalyfusionRemoteSync.MARKER_NAME), "foreign");
+
+        setFileText(mySecond, "<?php\necho 'changed';\n");
+        assertEquals(2, sync(true, myFirst, mySecond));
+        assertEquals("<?php\necho 'changed';\n", read("src/Second.php"));
+        assertFalse("foreign".equals(readMarker()));
+    }
+
+    public void testPartialSyncDoesNotCreateCopy() throws Exception {
+        assertEquals(0, sync(false, myFirst));
+
+        assertFalse(Files.exists(myRoot.resolve("First.php")));
+        assertNull(mySync.getSyncRoot(INTERPRETER_ID));
+    }
+
+    public void testPartialSyncDropsOutdatedCopy() throws Exception {
+        sync(true, myFirst, mySecond);
+        Files.delete(myRoot.resolve(PhalyfusionRemoteSync.MARKER_NAME));
+
+        setFileText(myFirst, "<?php\necho 'changed';\n");
+        assertEquals(0, sync(false, myFirst));
+        assertNull(mySync.getSyncRoot(INTERPRETER_ID));
+        assertEquals("<?php\necho 1;\n", read("First.php"));
+
+        assertEquals(2, sync(true, myFirst, mySecond));
+        assertEquals(myTarget.getRoot(), mySync.getSyncRoot(INTERPRETER_ID));
+    }
+
+    private int sync(boolean isComplete, @NotNull VirtualFile... files) throws ExecutionException {
+        return mySync.sync(INTERPRETER_ID, myTarget, List.of(files), isComplete);
+    }
+
+    @NotNull
+    private String read(@NotNull String relativePath) throws IOException {
+        return Files.readString(myRoot.resolve(relativePath), StandardCharsets.UTF_8);
+    }
+
+    @NotNull
+    private String readMarker() throws IOException {
+        return read(PhalyfusionRemoteSync.MARKER_NAME).trim();
+    }
+}
@@ -0,0 +1,50 @@
+package ru.taptima.phalyfusion.vcs;
+
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.testFramework.fixtures.BasePlatformTestCase;
+
+import java.util.Arrays;
+import java.util.Set;
+
+public class PhalyfusionChangedLinesTest extends BasePlatformTestCase {
+    public void testLinesOfRangesAreContained() {
+        VirtualFile file = myFixture.addFileToProject("Foo.php", "<?php\n").getVirtualFile();
+        var changedLines = new PhalyfusionChangedLines();
+        changedLines.addFile(file, new int[]{20, 21, 3, 6, 10, 12});
+
+        assertFalse(changedLines.contains(file, 2));
+        assertTrue(changedLines.contains(file, 3));
+        assertTrue(changedLines.contains(file, 5));
+        assertFalse(changedLines.contains(file, 6));
+        assertFalse(changedLines.contains(file, 9));
+        assertTrue(changedLines.contains(file, 10));
+        assertTrue(changedLines.contains(file, 11));
+        assertFalse(changedLines.contains(file, 12));
+        assertTrue(changedLines.contains(file, 20));
+        assertFalse(changedLines.contains(file, 21));
+    }
+
+    public void testFileWithoutRangesIsChangedEntirely() {
+        VirtualFile changed = myFixture.addFileToProject("New.php", "<?php\n").getVirtualFile();
+        VirtualFile unchanged = myFixture.addFileToProject("Old.php", "<?php\n").getVirtualFile();
+        var changedLines = new PhalyfusionChangedLines();
+        assertTrue(changedLines.isEmpty());
+
+        changedLines.addFile(changed);
+
+        assertFalse(changedLines.isEmpty());
+        assertEquals(Set.of(changed), changedLines.getFiles());
+        assertTrue(changedLines.contains(changed, 1));
+        assertTrue(changedLines.contains(changed, 1000));
+        assertFalse(changedLines.contains(unchanged, 1));
+    }
+
+    public void testPassedRangesAreNotModified() {
+        VirtualFile file = myFixture.addFileToProject("Foo.php", "<?php\n").getVirtualFile();
+        int[] ranges = {8, 9, 1, 2};
+
+        new PhalyfusionChangedLines().addFile(file, ranges);
+
+        assertTrue(Arrays.equals(new int[]{8, 9, 1, 2}, ranges));
+    }
+}
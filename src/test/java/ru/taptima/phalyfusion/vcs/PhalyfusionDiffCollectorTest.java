@@ -0,0 +1,31 @@
+package ru.taptima.phalyfusion.vcs;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertNull;
+
+public class PhalyfusionDiffCollectorTest {
+    @Test
+    public void hunkWithCounts() {
+        assertArrayEquals(new int[]{12, 3}, PhalyfusionDiffCollector.parseHunkTarget("@@ -10,2 +12,3 @@ function foo()"));
+        assertArrayEquals(new int[]{12, 3}, PhalyfusionDiffCollector.parseHunkTarget("@@ -10,2 +12,3 @@"));
+    }
+
+    @Test
+    public void hunkOfSingleLine() {
+        assertArrayEquals(new int[]{7, 1}, PhalyfusionDiffCollector.parseHunkTarget("@@ -7 +7 @@"));
+    }
+
+    @Test
+    public void hunkOfDeletion() {
+        assertArrayEquals(new int[]{4, 0}, PhalyfusionDiffCollector.parseHunkTarget("@@ -5,2 +4,0 @@"));
+    }
+
+    @Test
+    public void malformedHunk() {
+        assertNull(PhalyfusionDiffCollector.parseHunkTarget("@@ -5,2 @@"));
+        assertNull(PhalyfusionDiffCollector.parseHunkTarget("@@ -5,2 +x,1 @@"));
+        assertNull(PhalyfusionDiffCollector.parseHunkTarget("@@ -5,2 +4,y @@"));
+    }
+}
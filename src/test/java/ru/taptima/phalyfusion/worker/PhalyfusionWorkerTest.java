@@ -0,0 +1,161 @@
+package ru.taptima.phalyfusion.worker;
+
+import com.intellij.execution.ExecutionException;
+import com.intellij.execution.configurations.PathEnvironmentVariableUtil;
+import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.testFramework.fixtures.BasePlatformTestCase;
+import org.jetbrains.annotations.NotNull;
+import ru.taptima.phalyfusion.CheckstyleStreamParser;
+import ru.taptima.phalyfusion.process.PhalyfusionTimeoutException;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Runs the worker protocol against tools/phalyfusion-stub-worker.php, which reports lines containing "TODO"
+ * and fails on files with STUB_ERROR, STUB_CRASH or STUB_HANG.
+ * Skipped when php is not on PATH
+ */
+public class PhalyfusionWorkerTest extends BasePlatformTestCase {
+    private static final String STUB_PATH = "tools/phalyfusion-stub-worker.php";
+    private static final int TIMEOUT_MS = 30_000;
+
+    private PhalyfusionWorker myWorker;
+
+    @Override
+    protected boolean shouldRunTest() {
+        return super.shouldRunTest() && PathEnvironmentVariableUtil.findInPath("php") != null;
+    }
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        myWorker = PhalyfusionWorker.start(new File(STUB_PATH).getAbsolutePath(), null, 1);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        try {
+            myWorker.destroy();
+        } catch (Throwable e) {
+            addSuppressedException(e);
+        } finally {
+            super.tearDown();
+        }
+    }
+
+    public void testReportOfRequestedFiles() throws Exception {
+        String first = createPhpFile("<?php\n// TODO first\necho 1;\n");
+        String second = createPhpFile("<?php\necho 2;\n");
+
+        assertEquals(List.of("file " + first, "error 2 stub: // TODO first", "end", "file " + second, "end"),
+                parse(myWorker.analyse(new String[]{first, second}, TIMEOUT_MS)));
+    }
+
+    public void testWorkerServesSeveralRequests() throws Exception {
+        String first = createPhpFile("<?php\n// TODO first\n");
+        String second = createPhpFile("<?php\necho 2;\n// TODO second & <more>\n");
+
+        assertEquals(List.of("file " + first, "error 2 stub: // TODO first", "end"),
+                parse(myWorker.analyse(new String[]{first}, TIMEOUT_MS)));
+        assertTrue(myWorker.isAlive());
+        assertEquals(List.of("file " + second, "error 3 stub: // TODO second & <more>", "end"),
+                parse(myWorker.analyse(new String[]{second}, TIMEOUT_MS)));
+    }
+
+    public void testMissingFileIsReportedEmpty() throws Exception {
+        File directory = FileUtil.createTempDirectory("phalyfusion", null, true);
+        String path = FileUtil.toSystemIndependentName(new File(directory, "Missing.php").getPath());
+
+        assertEquals(List.of("file " + path, "end"), parse(myWorker.analyse(new String[]{path}, TIMEOUT_MS)));
+    }
+
+    public void testErrorKeepsWorker() throws Exception {
+        String failing = createPhpFile("<?php\n// STUB_ERROR\n");
+        String next = createPhpFile("<?php\n// TODO next\n");
+
+        try {
+            myWorker.analyse(new String[]{failing}, TIMEOUT_MS);
+            fail("Error response must be reported");
+        } catch (PhalyfusionTimeoutException e) {
+            fail("Error response is not a timeout");
+        } catch (ExecutionException e) {
+            assertEquals("Stub error", e.getMessage());
+        }
+
+        assertTrue(myWorker.isAlive());
+        assertEquals(List.of("file " + next, "error 2 stub: // TODO next", "end"),
+                parse(myWorker.analyse(new String[]{next}, TIMEOUT_MS)));
+    }
+
+    public void testCrashIsNotTimeout() throws Exception {
+        String crashing = createPhpFile("<?php\n// STUB_CRASH\n");
+
+        try {
+            myWorker.analyse(new String[]{crashing}, TIMEOUT_MS);
+            fail("Crashed worker must not respond");
+        } catch (IOException ignored) {
+        }
+    }
+
+    public void testHangingWorkerTimesOut() throws Exception {
+        String hanging = createPhpFile("<?php\n// STUB_HANG\n");
+
+        try {
+            myWorker.analyse(new String[]{hanging}, 500);
+            fail("Hanging worker must time out");
+        } catch (PhalyfusionTimeoutException ignored) {
+        }
+    }
+
+    public void testDestroyedWorkerFails() throws Exception {
+        myWorker.destroy();
+        for (int i = 0; i < 100 && myWorker.isAlive(); i++) {
+            Thread.sleep(50);
+        }
+
+        assertFalse(myWorker.isAlive());
+        try {
+            myWorker.analyse(new String[]{"/project/Missing.php"}, TIMEOUT_MS);
+            fail("Destroyed worker must not respond");
+        } catch (IOException ignored) {
+        }
+    }
+
+    @NotNull
+    private String createPhpFile(@NotNull String content) throws IOException {
+        File file = FileUtil.createTempFile("Worker", ".php", true);
+        FileUtil.writeToFile(file, content);
+        return FileUtil.toSystemIndependentName(file.getPath());
+    }
+
+    @NotNull
+    private static List<String> parse(@NotNull List<String> lines) {
+        List<String> events = new ArrayList<>();
+        CheckstyleStreamParser parser = new CheckstyleStreamParser(new CheckstyleStreamParser.Listener() {
+            @Override
+            public void fileStarted(@NotNull CheckstyleStreamParser.Tag tag) {
+                events.add("file " + tag.getJoinedAttribute("name"));
+            }
+
+            @Override
+            public void fileFinished() {
+                events.add("end");
+            }
+
+            @Override
+            public void messageFound(@NotNull CheckstyleStreamParser.Tag tag) {
+                events.add("error " + tag.getIntAttribute("line", -1) + " " + tag.getAttribute("message"));
+            }
+        });
+        for (String line : lines) {
+            parser.feed(line);
+            parser.feed("\n");
+        }
+
+        assertTrue(parser.isRootFound());
+        return events;
+    }
+}
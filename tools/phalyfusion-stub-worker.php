@@ -0,0 +1,70 @@
+#!/usr/bin/env php
+<?php
+/**
+ * Stub of "phalyfusion worker" for testing the worker protocol without real analysers.
+ * Set it as Phalyfusion path and enable worker mode. Every line containing "TODO" is reported as a warning.
+ * A file containing "STUB_ERROR" is answered with "ERROR" line, "STUB_CRASH" makes the worker exit, "STUB_HANG" makes it hang.
+ *
+ * Request:  "ANALYSE <count>" followed by <count> file paths, one per line. "QUIT" stops the worker.
+ * Response: "checkstyle" report followed by "DONE" line or "ERROR <message>" line.
+ */
+
+if (($argv[1] ?? '') !== 'worker') {
+    fwrite(STDERR, "Usage: phalyfusion-stub-worker.php worker --format=checkstyle\n");
+    exit(1);
+}
+
+function xml(string $value): string
+{
+    return htmlspecialchars($value, ENT_QUOTES | ENT_XML1, 'UTF-8');
+}
+
+while (($request = fgets(STDIN)) !== false) {
+    $request = rtrim($request, "\r\n");
+    if ($request === 'QUIT') {
+        break;
+    }
+
+    if (!preg_match('/^ANALYSE (\d+)$/', $request, $matches)) {
+        echo "ERROR Unknown request: " . $request . "\n";
+        continue;
+    }
+
+    $paths = [];
+    for ($i = 0; $i < (int) $matches[1]; $i++) {
+        $paths[] = rtrim((string) fgets(STDIN), "\r\n");
+    }
+
+    $contents = [];
+    foreach ($paths as $path) {
+        $contents[$path] = is_readable($path) ? file_get_contents($path) : '';
+        if (strpos($contents[$path], 'STUB_CRASH') !== false) {
+            exit(2);
+        }
+        if (strpos($contents[$path], 'STUB_HANG') !== false) {
+            sleep(3600);
+        }
+    }
+    foreach ($contents as $content) {
+        if (strpos($content, 'STUB_ERROR') !== false) {
+            echo "ERROR Stub error\n";
+            fflush(STDOUT);
+            continue 2;
+        }
+    }
+
+    echo "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<checkstyle>\n";
+    foreach ($paths as $path) {
+        echo ' <file name="' . xml($path) . "\">\n";
+        $lines = is_readable($path) ? file($path) : [];
+        foreach ($lines as $idx => $line) {
+            if (strpos($line, 'TODO') !== false) {
+                echo '  <error line="' . ($idx + 1) . '" column="1" severity="warning" message="stub: '
+                    . xml(trim($line)) . "\" />\n";
+            }
+        }
+        echo " </file>\n";
+    }
+    echo "</checkstyle>\nDONE\n";
+    fflush(STDOUT);
+}